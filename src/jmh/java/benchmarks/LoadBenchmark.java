@@ -0,0 +1,100 @@
+package benchmarks;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.DirectedWeightedPseudograph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a generated edge-list file into {@code InstanaTracer} against reading the same file line by line
+ * into a JGraphT graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"RANDOM_SPARSE", "SCALE_FREE", "DENSE", "CHAIN"})
+    public Topology topology;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int nodes;
+
+    Path file;
+
+    /**
+     * Writes the generated graph to a temporary file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("topology", ".txt");
+        topology.generate(nodes).write(file);
+    }
+
+    /**
+     * Deletes the temporary file.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    /**
+     * Loads the file into a new tracer.
+     *
+     * @return the loaded tracer
+     */
+    @Benchmark
+    public Object load() {
+        Tracer tracer = new Tracer();
+        tracer.readGraphFromFile(file.toString());
+        return tracer;
+    }
+
+    /**
+     * Reads the file into a new JGraphT graph.
+     *
+     * @return the loaded graph
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public Graph<String, DefaultWeightedEdge> loadJGraphT() throws IOException {
+        Graph<String, DefaultWeightedEdge> graph = new DirectedWeightedPseudograph<>(DefaultWeightedEdge.class);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                graph.addVertex(fields[0]);
+                graph.addVertex(fields[1]);
+                DefaultWeightedEdge edge = graph.addEdge(fields[0], fields[1]);
+                graph.setEdgeWeight(edge, Integer.parseInt(fields[2]));
+            }
+        }
+        return graph;
+    }
+}
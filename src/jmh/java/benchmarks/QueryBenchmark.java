@@ -0,0 +1,272 @@
+package benchmarks;
+
+import org.jgrapht.Graph;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.AllDirectedPaths;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.DirectedWeightedPseudograph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every query of {@code InstanaTracer} against the equivalent JGraphT algorithm on the same generated graph.
+ * Each invocation runs one query on the next of a fixed set of random node pairs.
+ * <p>
+ * The JGraphT counting baselines enumerate paths with {@link AllDirectedPaths}, which grows exponentially with the
+ * limit; keep the hop and latency limits small when running them on dense topologies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int PAIRS = 64;
+
+    @Param({"RANDOM_SPARSE", "SCALE_FREE", "DENSE", "CHAIN"})
+    public Topology topology;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int nodes;
+
+    @Param({"3"})
+    public int maxHops;
+
+    @Param({"30"})
+    public int maxLatency;
+
+    Tracer tracer;
+    Tracer indexedTracer;
+    Graph<String, DefaultWeightedEdge> reference;
+    String[] sources;
+    String[] targets;
+    String[][] traces;
+    int next;
+
+    /**
+     * Generates the graph and loads it into the tracer and the JGraphT reference.
+     *
+     * @throws IOException if the generated file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Topology.Edges edges = topology.generate(nodes);
+        Path file = Files.createTempFile("topology", ".txt");
+        try {
+            edges.write(file);
+            tracer = new Tracer();
+            tracer.readGraphFromFile(file.toString());
+            indexedTracer = new Tracer();
+            indexedTracer.readGraphFromFile(file.toString());
+            indexedTracer.indexLatencies(false);
+        } finally {
+            Files.delete(file);
+        }
+
+        reference = new DirectedWeightedPseudograph<>(DefaultWeightedEdge.class);
+        for (int node = 0; node < nodes; node++) {
+            reference.addVertex(Topology.name(node));
+        }
+        for (int i = 0; i < edges.size; i++) {
+            DefaultWeightedEdge edge = reference.addEdge(Topology.name(edges.from[i]), Topology.name(edges.to[i]));
+            reference.setEdgeWeight(edge, edges.latency[i]);
+        }
+
+        Random random = new Random(17);
+        sources = new String[PAIRS];
+        targets = new String[PAIRS];
+        traces = new String[PAIRS][];
+        for (int i = 0; i < PAIRS; i++) {
+            int edge = random.nextInt(edges.size);
+            int source = edges.from[edge];
+            int target = random.nextInt(nodes);
+            sources[i] = Topology.name(source);
+            targets[i] = Topology.name(target == source ? (target + 1) % nodes : target);
+            traces[i] = new String[]{Topology.name(source), Topology.name(edges.to[edge])};
+        }
+    }
+
+    /**
+     * Releases the graphs between trials so that large sizes do not pile up in the heap.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tracer = null;
+        indexedTracer = null;
+        reference = null;
+    }
+
+    private int pair() {
+        int pair = next;
+        next = (pair + 1) % PAIRS;
+        return pair;
+    }
+
+    /**
+     * Calculates the latency of a one-edge trace.
+     *
+     * @return the trace latency
+     */
+    @Benchmark
+    public String traceLatency() {
+        return tracer.calculateTraceLatency(traces[pair()]);
+    }
+
+    /**
+     * Sums the edge weights of a one-edge trace in JGraphT.
+     *
+     * @return the trace latency, or -1 if the trace does not exist
+     */
+    @Benchmark
+    public double traceLatencyJGraphT() {
+        String[] trace = traces[pair()];
+        double latency = 0;
+        for (int i = 1; i < trace.length; i++) {
+            DefaultWeightedEdge edge = reference.getEdge(trace[i - 1], trace[i]);
+            if (edge == null) {
+                return -1;
+            }
+            latency += reference.getEdgeWeight(edge);
+        }
+        return latency;
+    }
+
+    /**
+     * Finds the shortest latency between two nodes.
+     *
+     * @return the shortest latency
+     */
+    @Benchmark
+    public String shortestLatency() {
+        int pair = pair();
+        return tracer.shortestLatency(sources[pair], targets[pair]);
+    }
+
+    /**
+     * Finds the shortest latency between two nodes through a sparse latency index.
+     *
+     * @return the shortest latency
+     */
+    @Benchmark
+    public String shortestLatencyIndexed() {
+        int pair = pair();
+        return indexedTracer.shortestLatency(sources[pair], targets[pair]);
+    }
+
+    /**
+     * Finds the shortest latency between two nodes with JGraphT Dijkstra.
+     *
+     * @return the shortest latency, or -1 if the target is unreachable
+     */
+    @Benchmark
+    public double shortestLatencyJGraphT() {
+        int pair = pair();
+        GraphPath<String, DefaultWeightedEdge> path =
+                new DijkstraShortestPath<>(reference).getPath(sources[pair], targets[pair]);
+        return path == null ? -1 : path.getWeight();
+    }
+
+    /**
+     * Counts the traces with at most {@code maxHops} hops.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countMaxHops() {
+        int pair = pair();
+        return tracer.countTracesMaxHops(sources[pair], targets[pair], maxHops);
+    }
+
+    /**
+     * Counts the traces with at most {@code maxHops} hops by enumerating them in JGraphT.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countMaxHopsJGraphT() {
+        int pair = pair();
+        return allPaths(sources[pair], targets[pair], maxHops).size();
+    }
+
+    /**
+     * Counts the traces with exactly {@code maxHops + 1} hops.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countExactHops() {
+        int pair = pair();
+        return tracer.countTracesExactHops(sources[pair], targets[pair], maxHops + 1);
+    }
+
+    /**
+     * Counts the traces with exactly {@code maxHops + 1} hops by enumerating them in JGraphT.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countExactHopsJGraphT() {
+        int pair = pair();
+        int count = 0;
+        for (GraphPath<String, DefaultWeightedEdge> path : allPaths(sources[pair], targets[pair], maxHops + 1)) {
+            if (path.getLength() == maxHops + 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the traces with a latency below {@code maxLatency}.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countMaxLatency() {
+        int pair = pair();
+        return tracer.countTracesWithMaxLatency(sources[pair], targets[pair], maxLatency);
+    }
+
+    /**
+     * Counts the traces with a latency below {@code maxLatency} by enumerating them in JGraphT.
+     *
+     * @return the number of traces
+     */
+    @Benchmark
+    public int countMaxLatencyJGraphT() {
+        int pair = pair();
+        int count = 0;
+        int hops = (maxLatency - 1) / Topology.MIN_LATENCY;
+        for (GraphPath<String, DefaultWeightedEdge> path : allPaths(sources[pair], targets[pair], hops)) {
+            if (path.getWeight() < maxLatency) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<GraphPath<String, DefaultWeightedEdge>> allPaths(String source, String target, int hops) {
+        return new AllDirectedPaths<>(reference).getAllPaths(source, target, false, hops);
+    }
+}
@@ -0,0 +1,178 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic service topologies used by the benchmarks. Nodes are named {@code n0} to {@code n<nodes-1>} and every
+ * edge gets a latency between {@link #MIN_LATENCY} and {@link #MAX_LATENCY}.
+ */
+public enum Topology {
+
+    /**
+     * Uniformly random edges, four per node on average.
+     */
+    RANDOM_SPARSE {
+        @Override
+        void generate(int nodes, Random random, Edges edges) {
+            for (int i = 0; i < 4 * nodes; i++) {
+                edges.add(random.nextInt(nodes), random.nextInt(nodes), latency(random));
+            }
+        }
+    },
+
+    /**
+     * Preferential attachment: every new node links to three existing nodes picked proportionally to their degree, in
+     * a random direction, so a few hub services carry most of the edges.
+     */
+    SCALE_FREE {
+        @Override
+        void generate(int nodes, Random random, Edges edges) {
+            int[] endpoints = new int[2 * 3 * nodes + 2];
+            int endpointCount = 0;
+            endpoints[endpointCount++] = 0;
+            for (int node = 1; node < nodes; node++) {
+                for (int link = 0; link < Math.min(3, node); link++) {
+                    int other = endpoints[random.nextInt(endpointCount)];
+                    if (random.nextBoolean()) {
+                        edges.add(node, other, latency(random));
+                    } else {
+                        edges.add(other, node, latency(random));
+                    }
+                    endpoints[endpointCount++] = other;
+                    endpoints[endpointCount++] = node;
+                }
+            }
+        }
+    },
+
+    /**
+     * A ring through every node plus up to 32 random edges per node, which is complete for small sizes and keeps the
+     * graph strongly connected at every size.
+     */
+    DENSE {
+        @Override
+        void generate(int nodes, Random random, Edges edges) {
+            int degree = Math.min(nodes - 1, 32);
+            for (int node = 0; node < nodes; node++) {
+                edges.add(node, (node + 1) % nodes, latency(random));
+                for (int link = 1; link < degree; link++) {
+                    int other = degree == nodes - 1 ? (node + 1 + link) % nodes : random.nextInt(nodes);
+                    edges.add(node, other, latency(random));
+                }
+            }
+        }
+    },
+
+    /**
+     * One long call chain closed into a cycle by a single edge from the last node back to the first.
+     */
+    CHAIN {
+        @Override
+        void generate(int nodes, Random random, Edges edges) {
+            for (int node = 0; node < nodes; node++) {
+                edges.add(node, (node + 1) % nodes, latency(random));
+            }
+        }
+    };
+
+    static final int MIN_LATENCY = 5;
+    static final int MAX_LATENCY = 14;
+
+    /**
+     * Generates the edges of this topology.
+     *
+     * @param nodes  the number of nodes
+     * @param random the source of randomness
+     * @param edges  the edge list receiving the edges
+     */
+    abstract void generate(int nodes, Random random, Edges edges);
+
+    /**
+     * Generates the edges of this topology with a fixed seed.
+     *
+     * @param nodes the number of nodes
+     * @return the generated edges
+     */
+    public Edges generate(int nodes) {
+        Edges edges = new Edges();
+        generate(nodes, new Random(nodes * 31L + ordinal()), edges);
+        return edges;
+    }
+
+    /**
+     * Returns the name of the given node.
+     *
+     * @param node the index of the node
+     * @return the node name
+     */
+    public static String name(int node) {
+        return "n" + node;
+    }
+
+    private static int latency(Random random) {
+        return MIN_LATENCY + random.nextInt(MAX_LATENCY - MIN_LATENCY + 1);
+    }
+
+    /**
+     * Holds generated edges as parallel primitive arrays.
+     */
+    public static final class Edges {
+        int[] from = new int[16];
+        int[] to = new int[16];
+        int[] latency = new int[16];
+        int size;
+
+        /**
+         * Adds an edge.
+         *
+         * @param source  the index of the source node
+         * @param target  the index of the target node
+         * @param weight  the latency of the edge
+         */
+        void add(int source, int target, int weight) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                latency = Arrays.copyOf(latency, size * 2);
+            }
+            from[size] = source;
+            to[size] = target;
+            latency[size] = weight;
+            size++;
+        }
+
+        /**
+         * Returns the number of edges.
+         *
+         * @return the edge count
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the edges in the delimited {@code from,to,latency} format.
+         *
+         * @param file the file to write
+         * @throws IOException if the file cannot be written
+         */
+        public void write(Path file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < size; i++) {
+                    writer.write(name(from[i]));
+                    writer.write(',');
+                    writer.write(name(to[i]));
+                    writer.write(',');
+                    writer.write(Integer.toString(latency[i]));
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls the public API of {@code InstanaTracer}. The tracer lives in the unnamed package, which classes in a named
+ * package cannot reference and JMH does not accept benchmarks in, so the calls go through constant method handles
+ * that the JIT compiles down to direct calls.
+ */
+final class Tracer {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> TYPE = load("InstanaTracer");
+
+    private static final MethodHandle NEW = constructor();
+    private static final MethodHandle READ_GRAPH = method("readGraphFromFile", void.class, String.class);
+    private static final MethodHandle INDEX_LATENCIES = method("indexLatencies", void.class, boolean.class);
+    private static final MethodHandle TRACE_LATENCY = method("calculateTraceLatency", String.class, String[].class);
+    private static final MethodHandle MAX_HOPS = method("countTracesMaxHops", int.class, String.class, String.class,
+            int.class);
+    private static final MethodHandle EXACT_HOPS = method("countTracesExactHops", int.class, String.class,
+            String.class, int.class);
+    private static final MethodHandle SHORTEST = method("shortestLatency", String.class, String.class, String.class);
+    private static final MethodHandle MAX_LATENCY = method("countTracesWithMaxLatency", int.class, String.class,
+            String.class, int.class);
+
+    private final Object tracer;
+
+    /**
+     * Constructs a Tracer wrapping a new, empty {@code InstanaTracer}.
+     */
+    Tracer() {
+        try {
+            tracer = NEW.invoke();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.readGraphFromFile}.
+     */
+    void readGraphFromFile(String filename) {
+        try {
+            READ_GRAPH.invoke(tracer, filename);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.indexLatencies}.
+     */
+    void indexLatencies(boolean dense) {
+        try {
+            INDEX_LATENCIES.invoke(tracer, dense);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.calculateTraceLatency}.
+     */
+    String calculateTraceLatency(String[] nodeNames) {
+        try {
+            return (String) TRACE_LATENCY.invoke(tracer, nodeNames);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.countTracesMaxHops}.
+     */
+    int countTracesMaxHops(String startName, String endName, int maxHops) {
+        try {
+            return (int) MAX_HOPS.invoke(tracer, startName, endName, maxHops);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.countTracesExactHops}.
+     */
+    int countTracesExactHops(String startName, String endName, int exactHops) {
+        try {
+            return (int) EXACT_HOPS.invoke(tracer, startName, endName, exactHops);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.shortestLatency}.
+     */
+    String shortestLatency(String startName, String endName) {
+        try {
+            return (String) SHORTEST.invoke(tracer, startName, endName);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Calls {@code InstanaTracer.countTracesWithMaxLatency}.
+     */
+    int countTracesWithMaxLatency(String startName, String endName, int maxLatency) {
+        try {
+            return (int) MAX_LATENCY.invoke(tracer, startName, endName, maxLatency);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor() {
+        try {
+            return LOOKUP.findConstructor(TYPE, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle method(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findVirtual(TYPE, name, MethodType.methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
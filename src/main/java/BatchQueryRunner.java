@@ -0,0 +1,399 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs a file of queries against one graph on a worker pool. Queries are grouped by kind and start node so that one
+ * search answers every query of a group: one single-source Dijkstra for all shortest-latency queries from a node, one
+ * depth sweep for all hop-count queries and one latency sweep for all latency-bounded counts. Results are returned in
+ * input order.
+ * <p>
+ * The query file holds one query per line; blank lines and lines starting with {@code #} are ignored:
+ * <pre>
+ * latency A B C        total latency of the trace A-B-C
+ * max-hops C C 3       traces from C to C with at most 3 hops
+ * exact-hops A C 4     traces from A to C with exactly 4 hops
+ * shortest A C         shortest latency from A to C
+ * max-latency C C 30   traces from C to C with a latency below 30
+ * </pre>
+ * Every group can be given its own {@link QueryContext}, so that one runaway group answers
+ * {@value #BUDGET_EXCEEDED} instead of holding a worker of the pool. A latency-bounded count answers
+ * {@value #COUNT_OVERFLOW} if it does not fit in a long and {@value #UNBOUNDED} if its traces can loop through a cycle
+ * of zero-latency edges; the other queries of its group are still answered.
+ */
+public final class BatchQueryRunner {
+
+    static final String BUDGET_EXCEEDED = "BUDGET EXCEEDED";
+
+    static final String COUNT_OVERFLOW = "COUNT OVERFLOW";
+
+    static final String UNBOUNDED = "UNBOUNDED";
+
+    private static final String NO_SUCH_TRACE = "NO SUCH TRACE";
+
+    private BatchQueryRunner() {
+    }
+
+    /**
+     * Reads the queries of the given file.
+     *
+     * @param file the path of the query file
+     * @return the queries in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Query> readQueries(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readQueries(reader);
+        }
+    }
+
+    /**
+     * Reads queries from the given reader.
+     *
+     * @param source the reader holding one query per line
+     * @return the queries in input order
+     * @throws IOException if the reader fails
+     */
+    public static List<Query> readQueries(Reader source) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        List<Query> queries = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            queries.add(Query.parse(queries.size(), trimmed, lineNumber));
+        }
+        return queries;
+    }
+
+    /**
+     * Answers the queries against the given graph on the given pool.
+     *
+     * @param graph   the graph to query
+     * @param queries the queries to answer
+     * @param pool    the pool running the query groups
+     * @return the result of every query, in query order
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static String[] run(CompiledGraph graph, List<Query> queries, ExecutorService pool)
+            throws InterruptedException {
+        return run(graph, queries, pool, () -> null);
+    }
+
+    /**
+     * Answers the queries against the given graph on the given pool, bounding every group of queries by a fresh query
+     * context. The queries of a group that runs out of budget answer {@value #BUDGET_EXCEEDED}.
+     *
+     * @param graph    the graph to query
+     * @param queries  the queries to answer
+     * @param pool     the pool running the query groups
+     * @param contexts the supplier of a context per group, which may supply null for no limits
+     * @return the result of every query, in query order
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static String[] run(CompiledGraph graph, List<Query> queries, ExecutorService pool,
+                               Supplier<QueryContext> contexts) throws InterruptedException {
+        String[] results = new String[queries.size()];
+        Map<String, List<Query>> groups = new LinkedHashMap<>();
+        for (Query query : queries) {
+            int source = query.nodes.length > 0 ? graph.id(query.nodes[0]) : -1;
+            String key = query.kind == Kind.LATENCY ? "latency" : query.kind.group + ":" + source;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(query);
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<Query> group : groups.values()) {
+            if (group.get(0).kind == Kind.LATENCY) {
+                for (int from = 0; from < group.size(); from += 256) {
+                    List<Query> slice = group.subList(from, Math.min(from + 256, group.size()));
+                    futures.add(pool.submit(() -> answerGroup(graph, slice, results, null)));
+                }
+            } else {
+                futures.add(pool.submit(() -> answerBounded(graph, group, results, contexts.get())));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Query batch failed", e.getCause());
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Answers one group of queries, marking the unanswered ones if the group runs out of budget.
+     *
+     * @param graph   the graph to query
+     * @param group   the queries of the group
+     * @param results the array receiving the results
+     * @param context the limits of the group, or null for none
+     */
+    private static void answerBounded(CompiledGraph graph, List<Query> group, String[] results,
+                                      QueryContext context) {
+        try {
+            answerGroup(graph, group, results, context);
+        } catch (QueryBudgetExceededException e) {
+            for (Query query : group) {
+                if (results[query.index] == null) {
+                    results[query.index] = BUDGET_EXCEEDED;
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers one group of queries sharing their kind and start node.
+     *
+     * @param graph   the graph to query
+     * @param group   the queries of the group
+     * @param results the array receiving the results
+     * @param context the limits of the group, or null for none
+     * @throws QueryBudgetExceededException if the group runs out of budget
+     */
+    static void answerGroup(CompiledGraph graph, List<Query> group, String[] results, QueryContext context) {
+        Kind kind = group.get(0).kind;
+        if (kind == Kind.LATENCY) {
+            for (Query query : group) {
+                results[query.index] = traceLatency(graph, query.nodes);
+            }
+            return;
+        }
+        int source = graph.id(group.get(0).nodes[0]);
+        int[] targets = new int[group.size()];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = graph.id(group.get(i).nodes[1]);
+        }
+        if (source < 0) {
+            for (Query query : group) {
+                results[query.index] = kind == Kind.SHORTEST ? NO_SUCH_TRACE : "0";
+            }
+            return;
+        }
+        switch (kind) {
+            case SHORTEST:
+                answerShortest(graph, source, group, targets, results, context);
+                break;
+            case MAX_HOPS:
+            case EXACT_HOPS:
+                answerHops(graph, source, group, targets, results, context);
+                break;
+            default:
+                answerMaxLatency(graph, source, group, targets, results, context);
+                break;
+        }
+    }
+
+    private static void answerShortest(CompiledGraph graph, int source, List<Query> group, int[] targets,
+                                       String[] results, QueryContext context) {
+        ShortestLatencyEngine engine = ShortestLatencyEngine.current();
+        int[] row = null;
+        if (group.size() > 1) {
+            row = new int[graph.nodeCount()];
+            engine.latenciesFrom(graph, source, row, context);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            int latency = ShortestLatencyEngine.UNREACHABLE;
+            if (targets[i] >= 0) {
+                latency = row != null ? row[targets[i]] : engine.shortestLatency(graph, source, targets[i], context);
+            }
+            results[group.get(i).index] = latency == ShortestLatencyEngine.UNREACHABLE
+                    ? NO_SUCH_TRACE : Integer.toString(latency);
+        }
+    }
+
+    private static void answerHops(CompiledGraph graph, int source, List<Query> group, int[] targets,
+                                   String[] results, QueryContext context) {
+        int[] minHops = new int[targets.length];
+        int[] maxHops = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            Query query = group.get(i);
+            minHops[i] = query.kind == Kind.EXACT_HOPS ? query.limit : 1;
+            maxHops[i] = targets[i] < 0 || query.limit > HopCounter.MAX_SWEEP_HOPS ? -1 : query.limit;
+        }
+        long[] counts = null;
+        try {
+            counts = HopCounter.countForLimits(graph, source, resolved(targets), minHops, maxHops, context);
+        } catch (ArithmeticException e) {
+            // fall back to arbitrary precision per query below
+        }
+        for (int i = 0; i < targets.length; i++) {
+            Query query = group.get(i);
+            if (targets[i] < 0 || query.limit < minHops[i] || query.limit < 0) {
+                results[query.index] = "0";
+            } else if (counts != null && maxHops[i] == query.limit) {
+                results[query.index] = Long.toString(counts[i]);
+            } else {
+                results[query.index] = HopCounter.countBig(graph, source, targets[i], minHops[i], query.limit,
+                        context).toString();
+            }
+        }
+    }
+
+    private static void answerMaxLatency(CompiledGraph graph, int source, List<Query> group, int[] targets,
+                                         String[] results, QueryContext context) {
+        int[] limits = new int[targets.length];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = group.get(i).limit;
+        }
+        long[] counts = null;
+        try {
+            counts = LatencyCounter.countForLimits(graph, source, resolved(targets), limits, context);
+        } catch (ArithmeticException | IllegalStateException e) {
+            // count each query alone below, so that only the failing ones lose their answer
+        }
+        for (int i = 0; i < targets.length; i++) {
+            String result;
+            if (targets[i] < 0) {
+                result = "0";
+            } else if (counts != null) {
+                result = Long.toString(counts[i]);
+            } else {
+                result = countMaxLatency(graph, source, targets[i], limits[i], context);
+            }
+            results[group.get(i).index] = result;
+        }
+    }
+
+    private static String countMaxLatency(CompiledGraph graph, int source, int target, int limit,
+                                          QueryContext context) {
+        try {
+            return Long.toString(LatencyCounter.count(graph, source, target, limit, context));
+        } catch (ArithmeticException e) {
+            return COUNT_OVERFLOW;
+        } catch (IllegalStateException e) {
+            return UNBOUNDED;
+        }
+    }
+
+    private static String traceLatency(CompiledGraph graph, String[] nodes) {
+        long latency = 0;
+        int current = nodes.length > 0 ? graph.id(nodes[0]) : -1;
+        for (int i = 1; i < nodes.length; i++) {
+            int next = graph.id(nodes[i]);
+            int edge = current < 0 || next < 0 ? -1 : graph.findEdge(current, next);
+            if (edge < 0) {
+                return NO_SUCH_TRACE;
+            }
+            latency += graph.latencies[edge];
+            current = next;
+        }
+        return Long.toString(latency);
+    }
+
+    private static int[] resolved(int[] targets) {
+        int[] resolved = targets.clone();
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = Math.max(resolved[i], 0);
+        }
+        return resolved;
+    }
+
+    /**
+     * The kinds of queries a batch can hold.
+     */
+    enum Kind {
+        LATENCY("latency", 0),
+        MAX_HOPS("max-hops", 1),
+        EXACT_HOPS("exact-hops", 1),
+        SHORTEST("shortest", 2),
+        MAX_LATENCY("max-latency", 3);
+
+        final String keyword;
+        final int group;
+
+        /**
+         * Constructs a Kind.
+         *
+         * @param keyword the keyword starting the query line
+         * @param group   the group of kinds that share one search per start node
+         */
+        Kind(String keyword, int group) {
+            this.keyword = keyword;
+            this.group = group;
+        }
+    }
+
+    /**
+     * Represents one parsed query with its position in the batch.
+     */
+    public static final class Query {
+        final int index;
+        final Kind kind;
+        final String[] nodes;
+        final int limit;
+
+        /**
+         * Constructs a Query.
+         *
+         * @param index the position of the query in the batch
+         * @param kind  the kind of the query
+         * @param nodes the node names of the query
+         * @param limit the hop or latency limit, if the kind has one
+         */
+        Query(int index, Kind kind, String[] nodes, int limit) {
+            this.index = index;
+            this.kind = kind;
+            this.nodes = nodes;
+            this.limit = limit;
+        }
+
+        /**
+         * Parses one query line.
+         *
+         * @param index      the position of the query in the batch
+         * @param line       the trimmed query line
+         * @param lineNumber the line number, used in error messages
+         * @return the parsed query
+         * @throws IllegalArgumentException if the line is not a valid query
+         */
+        static Query parse(int index, String line, int lineNumber) {
+            String[] tokens = line.split("\\s+");
+            for (Kind kind : Kind.values()) {
+                if (!kind.keyword.equals(tokens[0])) {
+                    continue;
+                }
+                if (kind == Kind.LATENCY) {
+                    if (tokens.length < 2) {
+                        break;
+                    }
+                    String[] nodes = new String[tokens.length - 1];
+                    System.arraycopy(tokens, 1, nodes, 0, nodes.length);
+                    return new Query(index, kind, nodes, 0);
+                }
+                if (tokens.length != (kind == Kind.SHORTEST ? 3 : 4)) {
+                    break;
+                }
+                int limit = 0;
+                if (kind != Kind.SHORTEST) {
+                    try {
+                        limit = Integer.parseInt(tokens[3]);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+                return new Query(index, kind, new String[]{tokens[1], tokens[2]}, limit);
+            }
+            throw new IllegalArgumentException("Malformed query at line " + lineNumber + ": " + line);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+import java.util.Arrays;
+
+/**
+ * An immutable, compact representation of the service graph. Node names are interned to dense int ids and the outgoing
+ * edges of every node are stored in compressed-sparse-row arrays, so queries run over primitive arrays instead of an
+ * object graph. The outgoing edges of node {@code u} are the indices {@code offsets[u]} until {@code offsets[u + 1]}
+ * of {@link #targets} and {@link #latencies}, in input order.
+ */
+public final class CompiledGraph {
+
+    final NameDictionary names;
+    final int[] offsets;
+    final int[] targets;
+    final int[] latencies;
+    final int minLatency;
+    final long version;
+    private volatile CompiledGraph reversed;
+
+    /**
+     * Constructs a CompiledGraph from already compiled arrays.
+     *
+     * @param names     the dictionary of node names
+     * @param offsets   the edge offsets per node, of length {@code nodeCount + 1}
+     * @param targets   the destination node of every edge
+     * @param latencies the latency of every edge
+     */
+    CompiledGraph(NameDictionary names, int[] offsets, int[] targets, int[] latencies) {
+        this(names, offsets, targets, latencies, 0);
+    }
+
+    /**
+     * Constructs a CompiledGraph from already compiled arrays with the given version.
+     *
+     * @param names     the dictionary of node names
+     * @param offsets   the edge offsets per node, of length {@code nodeCount + 1}
+     * @param targets   the destination node of every edge
+     * @param latencies the latency of every edge
+     * @param version   the version of the graph, see {@link LiveGraph}
+     */
+    CompiledGraph(NameDictionary names, int[] offsets, int[] targets, int[] latencies, long version) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.latencies = latencies;
+        this.version = version;
+        int min = Integer.MAX_VALUE;
+        for (int latency : latencies) {
+            min = Math.min(min, latency);
+        }
+        this.minLatency = min;
+    }
+
+    /**
+     * Creates a new builder for a compiled graph.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the version of this graph. Graphs published by a {@link LiveGraph} have increasing versions, a graph
+     * built directly has version 0.
+     *
+     * @return the version of the graph
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Returns the id of the node with the given name.
+     *
+     * @param name the name of the node
+     * @return the id of the node, or -1 if no such node exists
+     */
+    public int id(String name) {
+        return names.id(name);
+    }
+
+    /**
+     * Returns the name of the node with the given id.
+     *
+     * @param node the id of the node
+     * @return the name of the node
+     */
+    public String name(int node) {
+        return names.name(node);
+    }
+
+    /**
+     * Returns the index of the first outgoing edge of the given node.
+     *
+     * @param node the id of the node
+     * @return the index of the first outgoing edge
+     */
+    public int edgeStart(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * Returns the index after the last outgoing edge of the given node.
+     *
+     * @param node the id of the node
+     * @return the index after the last outgoing edge
+     */
+    public int edgeEnd(int node) {
+        return offsets[node + 1];
+    }
+
+    /**
+     * Returns the destination node of the given edge.
+     *
+     * @param edge the index of the edge
+     * @return the id of the destination node
+     */
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * Returns the latency of the given edge.
+     *
+     * @param edge the index of the edge
+     * @return the latency of the edge
+     */
+    public int latency(int edge) {
+        return latencies[edge];
+    }
+
+    /**
+     * Returns the smallest edge latency.
+     *
+     * @return the smallest edge latency, or {@link Integer#MAX_VALUE} if the graph has no edges
+     */
+    public int minLatency() {
+        return minLatency;
+    }
+
+    /**
+     * Returns the graph with every edge reversed, sharing this graph's node ids. The reversed graph is computed on
+     * first use and cached.
+     *
+     * @return the reversed graph
+     */
+    public CompiledGraph reversed() {
+        CompiledGraph result = reversed;
+        if (result == null) {
+            int n = nodeCount();
+            int[] reverseOffsets = new int[n + 1];
+            for (int target : targets) {
+                reverseOffsets[target + 1]++;
+            }
+            for (int node = 0; node < n; node++) {
+                reverseOffsets[node + 1] += reverseOffsets[node];
+            }
+            int[] next = Arrays.copyOf(reverseOffsets, n);
+            int[] reverseTargets = new int[targets.length];
+            int[] reverseLatencies = new int[targets.length];
+            for (int node = 0; node < n; node++) {
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int slot = next[targets[e]]++;
+                    reverseTargets[slot] = node;
+                    reverseLatencies[slot] = latencies[e];
+                }
+            }
+            result = new CompiledGraph(names, reverseOffsets, reverseTargets, reverseLatencies, version);
+            result.reversed = this;
+            reversed = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a graph with the same arrays under another version, keeping the reversed graph if it was already built.
+     *
+     * @param version the version of the new graph
+     * @return the graph with the given version
+     */
+    CompiledGraph withVersion(long version) {
+        CompiledGraph result = new CompiledGraph(names, offsets, targets, latencies, version);
+        CompiledGraph built = reversed;
+        if (built != null) {
+            result.attachReversed(new CompiledGraph(names, built.offsets, built.targets, built.latencies, version));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the reversed graph, for example one loaded from a {@link GraphSnapshot}, instead of building it on first use.
+     *
+     * @param result the reversed graph, with the same names and version
+     */
+    void attachReversed(CompiledGraph result) {
+        result.reversed = this;
+        reversed = result;
+    }
+
+    /**
+     * Finds the first edge from one node to another.
+     *
+     * @param from the id of the source node
+     * @param to   the id of the destination node
+     * @return the index of the edge, or -1 if no such edge exists
+     */
+    public int findEdge(int from, int to) {
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (targets[e] == to) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds a CompiledGraph from a list of edges given by node names or ids.
+     */
+    public static final class Builder {
+
+        private final NameDictionary names;
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int[] latencies = new int[16];
+        private int size;
+
+        /**
+         * Constructs a Builder with an empty name dictionary.
+         */
+        Builder() {
+            this(new NameDictionary());
+        }
+
+        /**
+         * Constructs a Builder that interns names into the given dictionary.
+         *
+         * @param names the dictionary to intern names into
+         */
+        Builder(NameDictionary names) {
+            this.names = names;
+        }
+
+        /**
+         * Returns the dictionary this builder interns names into.
+         *
+         * @return the name dictionary
+         */
+        public NameDictionary names() {
+            return names;
+        }
+
+        /**
+         * Adds an edge between two named nodes, creating the nodes if needed.
+         *
+         * @param from    the name of the source node
+         * @param to      the name of the destination node
+         * @param latency the latency of the edge
+         * @return this builder
+         */
+        public Builder addEdge(String from, String to, int latency) {
+            int source = names.intern(from);
+            int target = names.intern(to);
+            return addEdge(source, target, latency);
+        }
+
+        /**
+         * Adds an edge between two nodes already interned into this builder's dictionary.
+         *
+         * @param from    the id of the source node
+         * @param to      the id of the destination node
+         * @param latency the latency of the edge
+         * @return this builder
+         */
+        public Builder addEdge(int from, int to, int latency) {
+            if (size == sources.length) {
+                int capacity = size * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                latencies = Arrays.copyOf(latencies, capacity);
+            }
+            sources[size] = from;
+            targets[size] = to;
+            latencies[size] = latency;
+            size++;
+            return this;
+        }
+
+        /**
+         * Compiles the added edges into an immutable graph. Edges keep their input order within each node. The
+         * builder hands its dictionary over to the graph and must not be used afterwards.
+         *
+         * @return the compiled graph
+         */
+        public CompiledGraph build() {
+            int nodeCount = names.size();
+            int[] offsets = new int[nodeCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] next = Arrays.copyOf(offsets, nodeCount);
+            int[] compiledTargets = new int[size];
+            int[] compiledLatencies = new int[size];
+            for (int i = 0; i < size; i++) {
+                int slot = next[sources[i]]++;
+                compiledTargets[slot] = targets[i];
+                compiledLatencies[slot] = latencies[i];
+            }
+            return new CompiledGraph(names, offsets, compiledTargets, compiledLatencies);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the shortest latencies from one node to all others with parallel delta-stepping on the common fork/join
+ * pool. Tentative distances are grouped into buckets of width delta; the nodes of the lowest non-empty bucket are
+ * relaxed together, split into chunks that run in parallel and lower distances with compare-and-set. Nodes lowered
+ * into the same bucket are relaxed again until the bucket settles, the others wait in a ring of buckets that spans the
+ * largest edge latency. Distances are exact integers, so the result does not depend on the order in which the workers
+ * relax edges, and {@link ShortestLatencyEngine#latenciesFrom} switches to this engine above
+ * {@value #PARALLEL_MIN_NODES} nodes.
+ * <p>
+ * The result follows the semantics of {@link ShortestLatencyEngine}: the latency to a node is the smallest positive
+ * {@code dist(u) + latency(u, v)} over its incoming edges, computed in a final parallel pass over the reversed graph.
+ */
+final class DeltaSteppingEngine {
+
+    /**
+     * The node count from which single-source searches run in parallel.
+     */
+    static final int PARALLEL_MIN_NODES = 1 << 16;
+
+    private static final int CHUNK_SIZE = 512;
+    private static final int MAX_BUCKETS = 1 << 16;
+
+    private DeltaSteppingEngine() {
+    }
+
+    /**
+     * Decides whether a single-source search over the graph should run in parallel.
+     *
+     * @param graph the graph to search
+     * @return true if the graph is large enough and the common pool has more than one worker
+     */
+    static boolean preferred(CompiledGraph graph) {
+        return graph.nodeCount() >= PARALLEL_MIN_NODES && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Computes the shortest latency from the source to every node within the limits of the given query context.
+     *
+     * @param graph   the graph to search, with non-negative latencies
+     * @param source  the id of the start node
+     * @param row     the array receiving the latency per target, or {@link ShortestLatencyEngine#UNREACHABLE}
+     * @param context the limits of the query, or null for none
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    static void latenciesFrom(CompiledGraph graph, int source, int[] row, QueryContext context) {
+        int[] distances = distancesFrom(graph, source, context);
+        CompiledGraph reversed = graph.reversed();
+        int[] offsets = reversed.offsets;
+        int[] targets = reversed.targets;
+        int[] latencies = reversed.latencies;
+        IntStream.range(0, graph.nodeCount()).parallel().forEach(v -> {
+            int best = ShortestLatencyEngine.UNREACHABLE;
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int distance = distances[targets[e]];
+                if (distance != ShortestLatencyEngine.UNREACHABLE) {
+                    int reached = distance + latencies[e];
+                    if (reached > 0 && reached < best) {
+                        best = reached;
+                    }
+                }
+            }
+            row[v] = best;
+        });
+    }
+
+    /**
+     * Computes the plain shortest distance from the source to every node, which is zero at the source itself.
+     *
+     * @param graph   the graph to search, with non-negative latencies
+     * @param source  the id of the start node
+     * @param context the limits of the query, or null for none
+     * @return the distance per node, or {@link ShortestLatencyEngine#UNREACHABLE}
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    static int[] distancesFrom(CompiledGraph graph, int source, QueryContext context) {
+        int n = graph.nodeCount();
+        int maxLatency = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            maxLatency = Math.max(maxLatency, graph.latencies[e]);
+        }
+        int delta = Math.max(delta(graph), maxLatency / MAX_BUCKETS + 1);
+        AtomicIntegerArray distances = new AtomicIntegerArray(n);
+        IntStream.range(0, n).parallel().forEach(v -> distances.lazySet(v, ShortestLatencyEngine.UNREACHABLE));
+        distances.set(source, 0);
+
+        Nodes[] ring = new Nodes[maxLatency / delta + 2];
+        int[] marks = new int[n];
+        int phase = 0;
+        long bucket = 0;
+        long expanded = 0;
+        long relaxed = 0;
+        int peak = 0;
+        Nodes frontier = new Nodes();
+        frontier.add(source);
+        while (true) {
+            while (frontier.size > 0) {
+                QueryContext.charge(context, frontier.size);
+                expanded += frontier.size;
+                peak = Math.max(peak, frontier.size);
+                Nodes[] lowered = relax(graph, distances, frontier);
+                phase++;
+                Nodes next = new Nodes();
+                for (Nodes chunk : lowered) {
+                    relaxed += chunk.relaxed;
+                    for (int i = 0; i < chunk.size; i++) {
+                        int v = chunk.nodes[i];
+                        long target = distances.get(v) / delta;
+                        if (target == bucket) {
+                            if (marks[v] != phase) {
+                                marks[v] = phase;
+                                next.add(v);
+                            }
+                        } else {
+                            int slot = (int) (target % ring.length);
+                            if (ring[slot] == null) {
+                                ring[slot] = new Nodes();
+                            }
+                            ring[slot].add(v);
+                        }
+                    }
+                }
+                frontier = next;
+            }
+            phase++;
+            long settled = bucket;
+            for (long candidate = bucket + 1; candidate <= settled + ring.length && frontier.size == 0; candidate++) {
+                bucket = candidate;
+                Nodes pending = ring[(int) (candidate % ring.length)];
+                if (pending == null) {
+                    continue;
+                }
+                for (int i = 0; i < pending.size; i++) {
+                    int v = pending.nodes[i];
+                    if (distances.get(v) / delta == candidate && marks[v] != phase) {
+                        marks[v] = phase;
+                        frontier.add(v);
+                    }
+                }
+                pending.size = 0;
+            }
+            if (frontier.size == 0) {
+                break;
+            }
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+
+        int[] result = new int[n];
+        for (int v = 0; v < n; v++) {
+            result[v] = distances.get(v);
+        }
+        return result;
+    }
+
+    /**
+     * Relaxes every outgoing edge of the frontier, splitting the frontier into chunks that run in parallel.
+     *
+     * @param graph     the graph to search
+     * @param distances the tentative distances, lowered in place
+     * @param frontier  the nodes to relax
+     * @return the nodes whose distance was lowered, one list per chunk
+     */
+    private static Nodes[] relax(CompiledGraph graph, AtomicIntegerArray distances, Nodes frontier) {
+        int chunks = (frontier.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Nodes[] lowered = new Nodes[chunks];
+        if (chunks == 1) {
+            lowered[0] = relax(graph, distances, frontier, 0, frontier.size);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(chunk -> lowered[chunk] = relax(graph, distances, frontier,
+                    chunk * CHUNK_SIZE, Math.min(frontier.size, (chunk + 1) * CHUNK_SIZE)));
+        }
+        return lowered;
+    }
+
+    private static Nodes relax(CompiledGraph graph, AtomicIntegerArray distances, Nodes frontier, int from, int to) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        Nodes lowered = new Nodes();
+        for (int i = from; i < to; i++) {
+            int u = frontier.nodes[i];
+            int distance = distances.get(u);
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                int reached = distance + latencies[e];
+                int current = distances.get(v);
+                while (reached < current) {
+                    if (distances.compareAndSet(v, current, reached)) {
+                        lowered.add(v);
+                        break;
+                    }
+                    current = distances.get(v);
+                }
+            }
+            lowered.relaxed += offsets[u + 1] - offsets[u];
+        }
+        return lowered;
+    }
+
+    /**
+     * Returns the bucket width: the mean edge latency, which keeps a bucket's nodes mostly independent of each other
+     * while giving every phase enough nodes to share among the workers.
+     *
+     * @param graph the graph to search
+     * @return the bucket width, at least 1
+     */
+    static int delta(CompiledGraph graph) {
+        long total = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            total += graph.latencies[e];
+        }
+        return (int) Math.max(1, graph.edgeCount() == 0 ? 1 : total / graph.edgeCount());
+    }
+
+    /**
+     * A growable list of node ids.
+     */
+    private static final class Nodes {
+        int[] nodes = new int[16];
+        int size;
+        long relaxed;
+
+        /**
+         * Appends a node.
+         *
+         * @param node the id of the node
+         */
+        void add(int node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+    }
+}
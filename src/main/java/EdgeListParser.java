@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses edge-list files into a {@link CompiledGraph}. The file is memory-mapped and edges are parsed straight from its
+ * bytes, interning node names without creating a String per token. Two formats are accepted:
+ * <ul>
+ *     <li>the legacy format, where every edge is a token such as {@code AB5} made of two one-character node names
+ *     and a latency, separated by commas or whitespace across any number of lines;</li>
+ *     <li>the delimited format, where every line holds one {@code from,to,latency} edge with names of any length.</li>
+ * </ul>
+ * Large files are split at record boundaries and the chunks are parsed in parallel.
+ */
+public final class EdgeListParser {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+    private static final int MAX_NAME_LENGTH = 1 << 16;
+
+    private EdgeListParser() {
+    }
+
+    /**
+     * Parses the given file using all available processors.
+     *
+     * @param file the path of the edge-list file
+     * @return the compiled graph
+     * @throws IOException if the file cannot be read
+     */
+    public static CompiledGraph parse(Path file) throws IOException {
+        return parse(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parses the given file with at most the given number of threads.
+     *
+     * @param file        the path of the edge-list file
+     * @param parallelism the maximum number of chunks parsed at the same time
+     * @return the compiled graph
+     * @throws IOException if the file cannot be read
+     */
+    public static CompiledGraph parse(Path file, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            boolean delimited = isDelimited(channel);
+            long[] bounds = split(channel, size, delimited, parallelism);
+            int chunkCount = bounds.length - 1;
+
+            List<Chunk> chunks = new ArrayList<>(chunkCount);
+            if (chunkCount == 1 || parallelism <= 1) {
+                for (int i = 0; i < chunkCount; i++) {
+                    chunks.add(parseChunk(channel, bounds[i], bounds[i + 1], delimited));
+                }
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunkCount));
+                try {
+                    List<Future<Chunk>> futures = new ArrayList<>(chunkCount);
+                    for (int i = 0; i < chunkCount; i++) {
+                        long start = bounds[i];
+                        long end = bounds[i + 1];
+                        futures.add(pool.submit(() -> parseChunk(channel, start, end, delimited)));
+                    }
+                    for (Future<Chunk> future : futures) {
+                        chunks.add(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while parsing " + file, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IOException("Failed to parse " + file, e.getCause());
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+            return merge(chunks);
+        }
+    }
+
+    /**
+     * Decides the format from the first line: it is delimited if its third comma-separated field is a number.
+     *
+     * @param channel the channel of the file
+     * @return true if the file uses the delimited format
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isDelimited(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+        channel.read(head, 0);
+        int fields = 0;
+        boolean digitsOnly = true;
+        boolean seenDigit = false;
+        for (int i = 0; i < head.position(); i++) {
+            byte b = head.get(i);
+            if (b == '\n') {
+                break;
+            }
+            if (b == ',') {
+                if (fields == 2) {
+                    break;
+                }
+                fields++;
+            } else if (fields == 2 && !isBlank(b)) {
+                seenDigit |= isDigit(b);
+                digitsOnly &= isDigit(b);
+            }
+        }
+        return fields == 2 && seenDigit && digitsOnly;
+    }
+
+    /**
+     * Splits the file into chunk bounds that fall on record separators.
+     *
+     * @param channel     the channel of the file
+     * @param size        the size of the file
+     * @param delimited   whether the file uses the delimited format
+     * @param parallelism the requested parallelism
+     * @return the chunk bounds, starting at 0 and ending at the file size
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] split(FileChannel channel, long size, boolean delimited, int parallelism) throws IOException {
+        int chunkCount = (int) Math.max(Math.min(parallelism, size / MIN_CHUNK_SIZE), 1);
+        chunkCount = (int) Math.max(chunkCount, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        long[] bounds = new long[chunkCount + 1];
+        bounds[chunkCount] = size;
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        for (int i = 1; i < chunkCount; i++) {
+            long position = Math.max(size / chunkCount * i, bounds[i - 1]);
+            bounds[i] = nextSeparator(channel, window, position, size, delimited);
+        }
+        return bounds;
+    }
+
+    private static long nextSeparator(FileChannel channel, ByteBuffer window, long position, long size,
+                                      boolean delimited) throws IOException {
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n' || (!delimited && (b == ',' || isBlank(b)))) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end, boolean delimited) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        Chunk chunk = new Chunk(start);
+        if (delimited) {
+            parseDelimited(buffer, chunk);
+        } else {
+            parseLegacy(buffer, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses one {@code from,to,latency} edge per line.
+     *
+     * @param buffer the bytes of the chunk
+     * @param chunk  the chunk to add the edges to
+     */
+    private static void parseDelimited(ByteBuffer buffer, Chunk chunk) {
+        int limit = buffer.limit();
+        int position = 0;
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int first = skipBlanks(buffer, position, lineEnd);
+            if (first < lineEnd) {
+                int comma1 = indexOf(buffer, first, lineEnd, (byte) ',');
+                int comma2 = comma1 < 0 ? -1 : indexOf(buffer, comma1 + 1, lineEnd, (byte) ',');
+                if (comma2 < 0) {
+                    throw malformed(chunk, first);
+                }
+                int fromLength = copyTrimmed(buffer, first, comma1, chunk);
+                int from = chunk.names.intern(chunk.scratch, 0, fromLength);
+                int toLength = copyTrimmed(buffer, comma1 + 1, comma2, chunk);
+                int to = chunk.names.intern(chunk.scratch, 0, toLength);
+                int latency = parseLatency(buffer, comma2 + 1, lineEnd, chunk);
+                chunk.add(from, to, latency);
+            }
+            position = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Parses legacy tokens such as {@code AB5} separated by commas or whitespace.
+     *
+     * @param buffer the bytes of the chunk
+     * @param chunk  the chunk to add the edges to
+     */
+    private static void parseLegacy(ByteBuffer buffer, Chunk chunk) {
+        int limit = buffer.limit();
+        byte[] scratch = chunk.scratch;
+        int position = 0;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == ',' || isBlank(b) || b == '\n') {
+                position++;
+                continue;
+            }
+            int tokenEnd = position;
+            while (tokenEnd < limit) {
+                byte c = buffer.get(tokenEnd);
+                if (c == ',' || isBlank(c) || c == '\n') {
+                    break;
+                }
+                tokenEnd++;
+            }
+            int fromLength = utf8Length(b);
+            int toStart = position + fromLength;
+            int toLength = toStart < tokenEnd ? utf8Length(buffer.get(toStart)) : 0;
+            if (toLength == 0 || toStart + toLength >= tokenEnd) {
+                throw malformed(chunk, position);
+            }
+            for (int i = 0; i < fromLength; i++) {
+                scratch[i] = buffer.get(position + i);
+            }
+            int from = chunk.names.intern(scratch, 0, fromLength);
+            for (int i = 0; i < toLength; i++) {
+                scratch[i] = buffer.get(toStart + i);
+            }
+            int to = chunk.names.intern(scratch, 0, toLength);
+            chunk.add(from, to, parseLatency(buffer, toStart + toLength, tokenEnd, chunk));
+            position = tokenEnd;
+        }
+    }
+
+    private static int parseLatency(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        start = skipBlanks(buffer, start, end);
+        while (end > start && isBlank(buffer.get(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            throw malformed(chunk, start);
+        }
+        long latency = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                throw malformed(chunk, i);
+            }
+            latency = latency * 10 + (b - '0');
+            if (latency > Integer.MAX_VALUE) {
+                throw malformed(chunk, start);
+            }
+        }
+        return (int) latency;
+    }
+
+    private static int copyTrimmed(ByteBuffer buffer, int start, int end, Chunk chunk) {
+        start = skipBlanks(buffer, start, end);
+        while (end > start && isBlank(buffer.get(end - 1))) {
+            end--;
+        }
+        int length = end - start;
+        if (length == 0 || length > MAX_NAME_LENGTH) {
+            throw malformed(chunk, start);
+        }
+        if (length > chunk.scratch.length) {
+            chunk.scratch = new byte[Math.max(length, chunk.scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            chunk.scratch[i] = buffer.get(start + i);
+        }
+        return length;
+    }
+
+    private static CompiledGraph merge(List<Chunk> chunks) {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        NameDictionary names = builder.names();
+        for (Chunk chunk : chunks) {
+            int[] globalIds = new int[chunk.names.size()];
+            for (int id = 0; id < globalIds.length; id++) {
+                globalIds[id] = names.intern(chunk.names, id);
+            }
+            for (int i = 0; i < chunk.size; i++) {
+                builder.addEdge(globalIds[chunk.sources[i]], globalIds[chunk.targets[i]], chunk.latencies[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int skipBlanks(ByteBuffer buffer, int position, int end) {
+        while (position < end && isBlank(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int utf8Length(byte lead) {
+        if ((lead & 0x80) == 0) {
+            return 1;
+        } else if ((lead & 0xe0) == 0xc0) {
+            return 2;
+        } else if ((lead & 0xf0) == 0xe0) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static IllegalArgumentException malformed(Chunk chunk, int position) {
+        return new IllegalArgumentException("Malformed edge at byte " + (chunk.offset + position));
+    }
+
+    /**
+     * Holds the edges parsed from one chunk, with node ids local to the chunk's own dictionary.
+     */
+    static class Chunk {
+        final long offset;
+        final NameDictionary names = new NameDictionary();
+        int[] sources = new int[64];
+        int[] targets = new int[64];
+        int[] latencies = new int[64];
+        int size;
+        byte[] scratch = new byte[64];
+
+        /**
+         * Constructs a Chunk starting at the given file offset.
+         *
+         * @param offset the offset of the chunk in the file
+         */
+        Chunk(long offset) {
+            this.offset = offset;
+        }
+
+        /**
+         * Adds an edge to the chunk.
+         *
+         * @param from    the local id of the source node
+         * @param to      the local id of the destination node
+         * @param latency the latency of the edge
+         */
+        void add(int from, int to, int latency) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            sources[size] = from;
+            targets[size] = to;
+            latencies[size] = latency;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads and evaluates a list of graph files on a bounded number of threads. At most {@code inFlight} graphs are parsed
+ * or evaluated at the same time, so memory stays capped no matter how many files are given. The output of every file
+ * is buffered and printed in file order once the file is done, so the output is the same as a sequential run.
+ * <p>
+ * Throughput is reported on a separate stream, if one is given, one line per file and one line for the whole run, so
+ * that timings do not mix with the deterministic output.
+ */
+public final class FilePipeline {
+
+    private final int inFlight;
+    private final Evaluator evaluator;
+
+    /**
+     * Constructs a FilePipeline.
+     *
+     * @param inFlight  the maximum number of graphs held at the same time
+     * @param evaluator the evaluation run on every loaded graph
+     */
+    public FilePipeline(int inFlight, Evaluator evaluator) {
+        if (inFlight < 1) {
+            throw new IllegalArgumentException("inFlight must be positive: " + inFlight);
+        }
+        this.inFlight = inFlight;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Processes the given files.
+     *
+     * @param files  the paths of the graph files
+     * @param out    the stream receiving the output of every file, in file order
+     * @param report the stream receiving the throughput report, or null for none
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void run(List<String> files, PrintStream out, PrintStream report) throws InterruptedException {
+        int parseThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / inFlight);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(inFlight, Math.max(1, files.size())));
+        try {
+            long start = System.nanoTime();
+            List<Future<FileResult>> futures = new ArrayList<>(files.size());
+            for (String file : files) {
+                futures.add(pool.submit(() -> process(file.trim(), parseThreads)));
+            }
+
+            long bytes = 0;
+            long edges = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                FileResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Processing failed: " + files.get(i), e.getCause());
+                }
+                try {
+                    result.output.writeTo(out);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                out.flush();
+                if (report != null) {
+                    report.println(result.summary());
+                }
+                bytes += result.bytes;
+                edges += result.edges;
+            }
+            if (report == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            report.println(String.format(Locale.ROOT, "Total: %d files, %d edges, %d bytes in %.1f ms (%.1f files/s, %s)",
+                    files.size(), edges, bytes, nanos / 1e6, files.size() * 1e9 / Math.max(nanos, 1),
+                    rates(bytes, edges, nanos)));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads and evaluates one file, buffering its output.
+     *
+     * @param file         the path of the graph file
+     * @param parseThreads the number of threads parsing the file
+     * @return the buffered output and timings of the file
+     * @throws InterruptedException if the evaluation is interrupted
+     */
+    private FileResult process(String file, int parseThreads) throws InterruptedException {
+        FileResult result = new FileResult(file);
+        PrintStream out = new PrintStream(result.output);
+        out.println("Processing file: " + file);
+
+        long start = System.nanoTime();
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile(file, parseThreads);
+        long parsed = System.nanoTime();
+        evaluator.evaluate(tracer, out);
+        out.flush();
+
+        result.parseNanos = parsed - start;
+        result.evaluateNanos = System.nanoTime() - parsed;
+        result.bytes = new File(file).length();
+        result.edges = tracer.graph().edgeCount();
+        return result;
+    }
+
+    private static String rates(long bytes, long edges, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format(Locale.ROOT, "%.1f MB/s, %.0f edges/s", bytes / seconds / (1 << 20), edges / seconds);
+    }
+
+    /**
+     * Evaluates one loaded graph and prints its results.
+     */
+    public interface Evaluator {
+
+        /**
+         * Evaluates the graph of the given tracer.
+         *
+         * @param tracer the tracer holding the loaded graph
+         * @param out    the stream receiving the results
+         * @throws InterruptedException if the evaluation is interrupted
+         */
+        void evaluate(InstanaTracer tracer, PrintStream out) throws InterruptedException;
+    }
+
+    /**
+     * Holds the buffered output and timings of one processed file.
+     */
+    static class FileResult {
+        final String file;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long bytes;
+        long edges;
+        long parseNanos;
+        long evaluateNanos;
+
+        /**
+         * Constructs a FileResult.
+         *
+         * @param file the path of the processed file
+         */
+        FileResult(String file) {
+            this.file = file;
+        }
+
+        /**
+         * Returns the throughput line of this file.
+         *
+         * @return the summary of the file
+         */
+        String summary() {
+            return String.format(Locale.ROOT, "%s: %d edges, %d bytes, parsed in %.1f ms (%s), evaluated in %.1f ms",
+                    file, edges, bytes, parseNanos / 1e6, rates(bytes, edges, parseNanos), evaluateNanos / 1e6);
+        }
+    }
+}
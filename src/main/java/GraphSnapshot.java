@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a {@link CompiledGraph} with its name dictionary and precomputed indexes to a binary snapshot and loads it back
+ * by memory-mapping the file. A snapshot is a fixed header followed by the raw sections in little-endian order:
+ * <ol>
+ *     <li>the offsets, targets and latencies of the graph;</li>
+ *     <li>the start offsets, hashes and hash table of the name dictionary, then its byte pool padded to four bytes;</li>
+ *     <li>the offsets, targets and latencies of the reversed graph;</li>
+ *     <li>optionally, the all-pairs latency matrix of a dense {@link LatencyIndex}.</li>
+ * </ol>
+ * Loading parses nothing: the graph and dictionary arrays are bulk-copied from the mapping, which runs at memory
+ * bandwidth, and the dictionary's hash table is taken as stored instead of re-interning every name. The latency
+ * matrix, which grows with the square of the node count, is not copied at all; the index answers lookups straight from
+ * the mapped file, so the operating system pages in only the rows that are asked for.
+ */
+public final class GraphSnapshot {
+
+    static final int MAGIC = 0x53475449;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 40;
+    private static final int HAS_MATRIX = 1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final CompiledGraph graph;
+    private final IntBuffer matrix;
+
+    private GraphSnapshot(CompiledGraph graph, IntBuffer matrix) {
+        this.graph = graph;
+        this.matrix = matrix;
+    }
+
+    /**
+     * Returns the graph of the snapshot, with its reversed graph already attached.
+     *
+     * @return the graph
+     */
+    public CompiledGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns a latency index over the stored matrix for the given graph, which must have the arrays of this snapshot.
+     *
+     * @param graph the graph the index answers for, such as the one published by {@link LiveGraph#replace}
+     * @return the dense index, or null if the snapshot has no latency matrix
+     */
+    public LatencyIndex latencyIndex(CompiledGraph graph) {
+        return matrix == null ? null : LatencyIndex.mapped(graph, matrix);
+    }
+
+    /**
+     * Decides whether the given file is a graph snapshot by looking at its magic number.
+     *
+     * @param file the path of the file
+     * @return true if the file starts like a snapshot
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(head, 0) == 4 && head.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given graph and, if it is dense, of the given latency index.
+     *
+     * @param file  the path of the snapshot file, replaced if it exists
+     * @param graph the graph to save
+     * @param index the latency index of the graph, or null
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if the latency matrix is too large to be mapped
+     */
+    public static void save(Path file, CompiledGraph graph, LatencyIndex index) throws IOException {
+        IntBuffer matrix = index != null && index.graph() == graph ? index.denseMatrix() : null;
+        if (matrix != null && (long) matrix.capacity() * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Latency matrix too large for a snapshot: " + graph.nodeCount());
+        }
+        NameDictionary names = graph.names;
+        CompiledGraph reversed = graph.reversed();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(FORMAT_VERSION);
+            writer.putInt(matrix != null ? HAS_MATRIX : 0);
+            writer.putInt(graph.nodeCount());
+            writer.putInt(graph.edgeCount());
+            writer.putInt(names.size());
+            writer.putInt(names.table.length);
+            writer.putInt(names.poolSize);
+            writer.putLong(graph.version);
+            writer.putInts(graph.offsets, graph.nodeCount() + 1);
+            writer.putInts(graph.targets, graph.edgeCount());
+            writer.putInts(graph.latencies, graph.edgeCount());
+            writer.putInts(names.starts, names.size() + 1);
+            writer.putInts(names.hashes, names.size());
+            writer.putInts(names.table, names.table.length);
+            writer.putBytes(names.pool, names.poolSize);
+            writer.putBytes(new byte[3], -names.poolSize & 3);
+            writer.putInts(reversed.offsets, graph.nodeCount() + 1);
+            writer.putInts(reversed.targets, graph.edgeCount());
+            writer.putInts(reversed.latencies, graph.edgeCount());
+            if (matrix != null) {
+                int[] row = new int[graph.nodeCount()];
+                IntBuffer rows = matrix.duplicate();
+                rows.clear();
+                while (rows.hasRemaining()) {
+                    rows.get(row);
+                    writer.putInts(row, row.length);
+                }
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * Loads a snapshot by memory-mapping it.
+     *
+     * @param file the path of the snapshot file
+     * @return the loaded snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot of a supported version
+     */
+    public static GraphSnapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int flags = header.getInt();
+            int nodeCount = header.getInt();
+            int edgeCount = header.getInt();
+            int nameCount = header.getInt();
+            int tableLength = header.getInt();
+            int poolSize = header.getInt();
+            long graphVersion = header.getLong();
+
+            long sectionsSize = 4L * (2 * (nodeCount + 1) + 4L * edgeCount + nameCount + 1 + nameCount + tableLength)
+                    + (poolSize + 3 & ~3);
+            long matrixSize = (flags & HAS_MATRIX) != 0 ? 4L * nodeCount * nodeCount : 0;
+            if (size != HEADER_SIZE + sectionsSize + matrixSize) {
+                throw new IOException("Truncated graph snapshot: " + file);
+            }
+            if (sectionsSize > Integer.MAX_VALUE) {
+                throw new IOException("Graph snapshot too large to map: " + file);
+            }
+            ByteBuffer sections = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, sectionsSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int[] offsets = getInts(sections, nodeCount + 1);
+            int[] targets = getInts(sections, edgeCount);
+            int[] latencies = getInts(sections, edgeCount);
+            int[] starts = getInts(sections, nameCount + 1);
+            int[] hashes = getInts(sections, nameCount);
+            int[] table = getInts(sections, tableLength);
+            byte[] pool = new byte[Math.max(poolSize, 1)];
+            sections.get(pool, 0, poolSize);
+            sections.position(sections.position() + (-poolSize & 3));
+            int[] reverseOffsets = getInts(sections, nodeCount + 1);
+            int[] reverseTargets = getInts(sections, edgeCount);
+            int[] reverseLatencies = getInts(sections, edgeCount);
+
+            NameDictionary names = new NameDictionary(pool, poolSize, starts, hashes, table, nameCount);
+            CompiledGraph graph = new CompiledGraph(names, offsets, targets, latencies, graphVersion);
+            graph.attachReversed(new CompiledGraph(names, reverseOffsets, reverseTargets, reverseLatencies,
+                    graphVersion));
+            IntBuffer matrix = matrixSize == 0 ? null
+                    : channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + sectionsSize, matrixSize)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            return new GraphSnapshot(graph, matrix);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Writes primitive values to a channel through a little-endian buffer.
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Constructs a Writer.
+         *
+         * @param channel the channel to write to
+         */
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes an int.
+         *
+         * @param value the value
+         * @throws IOException if the value cannot be written
+         */
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Writes a long.
+         *
+         * @param value the value
+         * @throws IOException if the value cannot be written
+         */
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes the first values of an array.
+         *
+         * @param values the array
+         * @param length the number of values to write
+         * @throws IOException if the values cannot be written
+         */
+        void putInts(int[] values, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(Integer.BYTES);
+                int count = Math.min(length - offset, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+
+        /**
+         * Writes the first bytes of an array.
+         *
+         * @param values the array
+         * @param length the number of bytes to write
+         * @throws IOException if the bytes cannot be written
+         */
+        void putBytes(byte[] values, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(1);
+                int count = Math.min(length - offset, buffer.remaining());
+                buffer.put(values, offset, count);
+                offset += count;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes out the buffered bytes.
+         *
+         * @throws IOException if the bytes cannot be written
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Counts traces with a constrained number of hops by dynamic programming over (node, depth) instead of enumerating
+ * them. Every depth step pushes the number of walks ending in each node along its outgoing edges, so a count costs
+ * O(hops * edges) no matter how many traces exist. Counts are exact: the {@code long} variants throw an
+ * {@link ArithmeticException} on overflow and the {@link BigInteger} variants never overflow. For very large hop counts
+ * on small graphs the {@link BigInteger} variants switch to adjacency-matrix powers.
+ */
+public final class HopCounter {
+
+    /**
+     * The largest hop limit {@link #countForLimits} sweeps to; larger limits are answered one query at a time.
+     */
+    static final int MAX_SWEEP_HOPS = 1 << 24;
+
+    private static final int MATRIX_MAX_NODES = 128;
+
+    private HopCounter() {
+    }
+
+    /**
+     * Counts the traces from the source to the target whose number of hops lies within the given range.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @return the number of traces
+     * @throws ArithmeticException if the number of traces does not fit in a long
+     */
+    public static long count(CompiledGraph graph, int source, int target, int minHops, int maxHops) {
+        return count(graph, source, target, minHops, maxHops, null);
+    }
+
+    /**
+     * Counts the traces from the source to the target whose number of hops lies within the given range, within the
+     * limits of the given query context.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of traces
+     * @throws ArithmeticException          if the number of traces does not fit in a long
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public static long count(CompiledGraph graph, int source, int target, int minHops, int maxHops,
+                             QueryContext context) {
+        try {
+            return countAll(graph, new int[]{source}, minHops, maxHops, context)[target];
+        } catch (ArithmeticException e) {
+            return countWithoutOverflow(graph, source, target, minHops, maxHops, context).longValueExact();
+        } catch (QueryBudgetExceededException e) {
+            throw e.forTarget(target);
+        }
+    }
+
+    /**
+     * Counts the traces from the source to the target whose number of hops lies within the given range, with
+     * arbitrary precision.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @return the number of traces
+     */
+    public static BigInteger countBig(CompiledGraph graph, int source, int target, int minHops, int maxHops) {
+        return countBig(graph, source, target, minHops, maxHops, null);
+    }
+
+    /**
+     * Counts the traces from the source to the target whose number of hops lies within the given range, with
+     * arbitrary precision and within the limits of the given query context.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of traces
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public static BigInteger countBig(CompiledGraph graph, int source, int target, int minHops, int maxHops,
+                                      QueryContext context) {
+        if (prefersMatrixPower(graph, maxHops)) {
+            return countByMatrixPower(graph, source, minHops, maxHops, context)[target];
+        }
+        try {
+            return BigInteger.valueOf(countAll(graph, new int[]{source}, minHops, maxHops, context)[target]);
+        } catch (ArithmeticException e) {
+            return countWithoutOverflow(graph, source, target, minHops, maxHops, context);
+        } catch (QueryBudgetExceededException e) {
+            throw e.forTarget(target);
+        }
+    }
+
+    private static BigInteger countWithoutOverflow(CompiledGraph graph, int source, int target, int minHops,
+                                                   int maxHops, QueryContext context) {
+        if (prefersMatrixPower(graph, maxHops)) {
+            return countByMatrixPower(graph, source, minHops, maxHops, context)[target];
+        }
+        BigInteger count = countAllBig(graph, new int[]{source}, minHops, maxHops, context)[target];
+        return count == null ? BigInteger.ZERO : count;
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node whose number of hops lies within the
+     * given range. A source listed twice contributes its traces twice.
+     *
+     * @param graph   the graph to count in
+     * @param sources the ids of the start nodes
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @return the number of traces per end node
+     * @throws ArithmeticException if any intermediate count does not fit in a long
+     */
+    public static long[] countAll(CompiledGraph graph, int[] sources, int minHops, int maxHops) {
+        return countAll(graph, sources, minHops, maxHops, null);
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node whose number of hops lies within the
+     * given range, within the limits of the given query context.
+     *
+     * @param graph   the graph to count in
+     * @param sources the ids of the start nodes
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of traces per end node
+     * @throws ArithmeticException          if any intermediate count does not fit in a long
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the counts of the finished depths
+     */
+    public static long[] countAll(CompiledGraph graph, int[] sources, int minHops, int maxHops,
+                                  QueryContext context) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        long[] totals = new long[n];
+        minHops = Math.max(minHops, 0);
+        if (maxHops < minHops) {
+            return totals;
+        }
+
+        long[] current = new long[n];
+        long[] next = new long[n];
+        for (int source : sources) {
+            current[source]++;
+        }
+        if (minHops == 0) {
+            System.arraycopy(current, 0, totals, 0, n);
+        }
+        long expanded = 0;
+        long relaxed = 0;
+        int peak = 0;
+        for (int depth = 1; depth <= maxHops; depth++) {
+            int active = 0;
+            long scanned = relaxed;
+            for (int u = 0; u < n; u++) {
+                long walks = current[u];
+                if (walks == 0) {
+                    continue;
+                }
+                active++;
+                relaxed += offsets[u + 1] - offsets[u];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    next[targets[e]] = Math.addExact(next[targets[e]], walks);
+                }
+            }
+            if (active == 0) {
+                break;
+            }
+            expanded += active;
+            peak = Math.max(peak, active);
+            if (depth >= minHops) {
+                for (int v = 0; v < n; v++) {
+                    totals[v] = Math.addExact(totals[v], next[v]);
+                }
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+            QueryContext.charge(context, 2L * n + relaxed - scanned, totals);
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+        return totals;
+    }
+
+    /**
+     * Counts the traces from the source for several (target, hop range) queries in one sweep up to the largest maximum.
+     * Every query accumulates the walks that reach its target at the depths within its range, so memory stays at two
+     * node arrays however large the limits are, and the sweep stops as soon as no walk continues.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param targets the ids of the end nodes, one per query
+     * @param minHops the minimum numbers of hops, one per query
+     * @param maxHops the maximum numbers of hops, one per query, none above {@value #MAX_SWEEP_HOPS}
+     * @param context the limits of the query, or null for none
+     * @return the number of traces per query
+     * @throws IllegalArgumentException     if a maximum exceeds {@value #MAX_SWEEP_HOPS}
+     * @throws ArithmeticException          if any intermediate count does not fit in a long
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public static long[] countForLimits(CompiledGraph graph, int source, int[] targets, int[] minHops, int[] maxHops,
+                                        QueryContext context) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] edgeTargets = graph.targets;
+        long[] counts = new long[targets.length];
+        int deepest = 0;
+        for (int limit : maxHops) {
+            if (limit > MAX_SWEEP_HOPS) {
+                throw new IllegalArgumentException("Hop limit " + limit + " exceeds " + MAX_SWEEP_HOPS);
+            }
+            deepest = Math.max(deepest, limit);
+        }
+        long[] current = new long[n];
+        long[] next = new long[n];
+        current[source] = 1;
+        for (int i = 0; i < targets.length; i++) {
+            if (minHops[i] <= 0 && maxHops[i] >= 0 && targets[i] == source) {
+                counts[i] = 1;
+            }
+        }
+        long expanded = 0;
+        long relaxed = 0;
+        int peak = 0;
+        for (int depth = 1; depth <= deepest; depth++) {
+            int active = 0;
+            long work = n;
+            for (int u = 0; u < n; u++) {
+                long walks = current[u];
+                if (walks == 0) {
+                    continue;
+                }
+                active++;
+                relaxed += offsets[u + 1] - offsets[u];
+                work += offsets[u + 1] - offsets[u];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    next[edgeTargets[e]] = Math.addExact(next[edgeTargets[e]], walks);
+                }
+            }
+            if (active == 0) {
+                break;
+            }
+            expanded += active;
+            peak = Math.max(peak, active);
+            for (int i = 0; i < targets.length; i++) {
+                if (depth >= minHops[i] && depth <= maxHops[i]) {
+                    counts[i] = Math.addExact(counts[i], next[targets[i]]);
+                }
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+            QueryContext.charge(context, work + targets.length);
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+        return counts;
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node whose number of hops lies within the
+     * given range, with arbitrary precision.
+     *
+     * @param graph   the graph to count in
+     * @param sources the ids of the start nodes
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @return the number of traces per end node, where null stands for zero
+     */
+    public static BigInteger[] countAllBig(CompiledGraph graph, int[] sources, int minHops, int maxHops) {
+        return countAllBig(graph, sources, minHops, maxHops, null);
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node whose number of hops lies within the
+     * given range, with arbitrary precision and within the limits of the given query context.
+     *
+     * @param graph   the graph to count in
+     * @param sources the ids of the start nodes
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of traces per end node, where null stands for zero
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public static BigInteger[] countAllBig(CompiledGraph graph, int[] sources, int minHops, int maxHops,
+                                           QueryContext context) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        BigInteger[] totals = new BigInteger[n];
+        minHops = Math.max(minHops, 0);
+        if (maxHops < minHops) {
+            return totals;
+        }
+
+        BigInteger[] current = new BigInteger[n];
+        BigInteger[] next = new BigInteger[n];
+        for (int source : sources) {
+            current[source] = add(current[source], BigInteger.ONE);
+        }
+        if (minHops == 0) {
+            System.arraycopy(current, 0, totals, 0, n);
+        }
+        long expanded = 0;
+        long relaxed = 0;
+        int peak = 0;
+        for (int depth = 1; depth <= maxHops; depth++) {
+            int active = 0;
+            long scanned = relaxed;
+            for (int u = 0; u < n; u++) {
+                BigInteger walks = current[u];
+                if (walks == null) {
+                    continue;
+                }
+                active++;
+                relaxed += offsets[u + 1] - offsets[u];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    next[targets[e]] = add(next[targets[e]], walks);
+                }
+            }
+            if (active == 0) {
+                break;
+            }
+            expanded += active;
+            peak = Math.max(peak, active);
+            if (depth >= minHops) {
+                for (int v = 0; v < n; v++) {
+                    if (next[v] != null) {
+                        totals[v] = add(totals[v], next[v]);
+                    }
+                }
+            }
+            BigInteger[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, null);
+            QueryContext.charge(context, 2L * n + relaxed - scanned);
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+        return totals;
+    }
+
+    /**
+     * Decides whether matrix powers are cheaper than the depth-by-depth sweep for the given number of hops.
+     *
+     * @param graph   the graph to count in
+     * @param maxHops the maximum number of hops
+     * @return true if matrix powers should be used
+     */
+    static boolean prefersMatrixPower(CompiledGraph graph, int maxHops) {
+        int n = graph.nodeCount();
+        if (n == 0 || n > MATRIX_MAX_NODES || maxHops <= 0) {
+            return false;
+        }
+        long size = 2L * n;
+        long matrixCost = 2L * (32 - Integer.numberOfLeadingZeros(maxHops)) * size * size * size;
+        long sweepCost = (long) maxHops * (graph.edgeCount() + n);
+        return matrixCost < sweepCost;
+    }
+
+    /**
+     * Counts the traces from the source to every node by raising the block matrix {@code [[A, A], [0, I]]} to the
+     * power of the hop limit, whose upper-right block holds {@code A + A^2 + ... + A^k}.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param minHops the minimum number of hops
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of traces per end node
+     */
+    static BigInteger[] countByMatrixPower(CompiledGraph graph, int source, int minHops, int maxHops,
+                                           QueryContext context) {
+        int n = graph.nodeCount();
+        BigInteger[] totals = new BigInteger[n];
+        Arrays.fill(totals, BigInteger.ZERO);
+        minHops = Math.max(minHops, 0);
+        if (maxHops < minHops) {
+            return totals;
+        }
+        if (minHops == maxHops) {
+            BigInteger[][] power = power(blockMatrix(graph), maxHops, context);
+            System.arraycopy(power[source], 0, totals, 0, n);
+            return totals;
+        }
+        BigInteger[][] upper = power(blockMatrix(graph), maxHops, context);
+        for (int v = 0; v < n; v++) {
+            totals[v] = upper[source][n + v];
+        }
+        if (minHops == 0) {
+            totals[source] = totals[source].add(BigInteger.ONE);
+        } else if (minHops > 1) {
+            BigInteger[][] lower = power(blockMatrix(graph), minHops - 1, context);
+            for (int v = 0; v < n; v++) {
+                totals[v] = totals[v].subtract(lower[source][n + v]);
+            }
+        }
+        return totals;
+    }
+
+    private static BigInteger[][] blockMatrix(CompiledGraph graph) {
+        int n = graph.nodeCount();
+        BigInteger[][] matrix = new BigInteger[2 * n][2 * n];
+        for (BigInteger[] row : matrix) {
+            Arrays.fill(row, BigInteger.ZERO);
+        }
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int v = graph.targets[e];
+                matrix[u][v] = matrix[u][v].add(BigInteger.ONE);
+                matrix[u][n + v] = matrix[u][n + v].add(BigInteger.ONE);
+            }
+            matrix[n + u][n + u] = BigInteger.ONE;
+        }
+        return matrix;
+    }
+
+    private static BigInteger[][] power(BigInteger[][] base, int exponent, QueryContext context) {
+        int size = base.length;
+        BigInteger[][] result = new BigInteger[size][size];
+        for (int i = 0; i < size; i++) {
+            Arrays.fill(result[i], BigInteger.ZERO);
+            result[i][i] = BigInteger.ONE;
+        }
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = multiply(result, base);
+                QueryContext.charge(context, size);
+            }
+            exponent >>>= 1;
+            if (exponent > 0) {
+                base = multiply(base, base);
+                QueryContext.charge(context, size);
+            }
+        }
+        return result;
+    }
+
+    private static BigInteger[][] multiply(BigInteger[][] left, BigInteger[][] right) {
+        int size = left.length;
+        BigInteger[][] product = new BigInteger[size][size];
+        for (int i = 0; i < size; i++) {
+            Arrays.fill(product[i], BigInteger.ZERO);
+            for (int k = 0; k < size; k++) {
+                BigInteger factor = left[i][k];
+                if (factor.signum() == 0) {
+                    continue;
+                }
+                for (int j = 0; j < size; j++) {
+                    if (right[k][j].signum() != 0) {
+                        product[i][j] = product[i][j].add(factor.multiply(right[k][j]));
+                    }
+                }
+            }
+        }
+        return product;
+    }
+
+    private static BigInteger add(BigInteger left, BigInteger right) {
+        return left == null ? right : left.add(right);
+    }
+}
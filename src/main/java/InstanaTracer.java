@@ -1,7 +1,20 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.*;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.management.JMException;
 
 /**
  * The InstanaTracer class represents a graph of nodes and edges, and provides methods to calculate trace latencies,
@@ -9,7 +22,15 @@ import java.util.*;
  */
 public class InstanaTracer {
 
-    Map<String, Node> nodes = new HashMap<>();
+    final LiveGraph liveGraph = new LiveGraph();
+
+    volatile LatencyIndex latencyIndex;
+
+    volatile ReachabilityIndex reachability;
+
+    volatile LandmarkIndex landmarks;
+
+    volatile QueryCache cache;
 
     /**
      * The main method to execute the program.
@@ -18,74 +39,471 @@ public class InstanaTracer {
      */
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Usage: java -cp target/instana.jar InstanaTracer <input-file-paths>");
+            System.out.println("Usage: java -cp target/instana.jar InstanaTracer <input-file-paths>"
+                    + " [--queries <query-file>] [--threads <count>] [--parallel <files>] [--metrics]"
+                    + " [--timeout <ms>] [--max-expansions <count>] [--score <trace-file>]"
+                    + " [--save-snapshot <snapshot-file>] [--serve <port>] [--cache <entries>]"
+                    + " [--spans <span-file>] [--span-statistic <mean|p50|p99|max>]");
             return;
         }
 
         String[] inputFilePaths = args[0].split(",");
-
-        for (String inputFilePath : inputFilePaths) {
+        String snapshotFile = option(args, "--save-snapshot");
+        if (snapshotFile != null) {
             InstanaTracer tracer = new InstanaTracer();
-            System.out.println("Processing file: " + inputFilePath);
-            tracer.readGraphFromFile(inputFilePath.trim());
+            tracer.readGraphFromFile(inputFilePaths[0]);
+            tracer.saveSnapshot(snapshotFile);
+            return;
+        }
+        String queryFile = option(args, "--queries");
+        String traceFile = option(args, "--score");
+        String threadCount = option(args, "--threads");
+        int threads = threadCount != null ? Integer.parseInt(threadCount) : Runtime.getRuntime().availableProcessors();
+        String parallel = option(args, "--parallel");
+        int inFlight = parallel != null ? Integer.parseInt(parallel) : 1;
+        String timeout = option(args, "--timeout");
+        String maxExpansions = option(args, "--max-expansions");
+        Supplier<QueryContext> contexts = () -> timeout == null && maxExpansions == null ? null
+                : new QueryContext(timeout != null ? Long.parseLong(timeout) : -1, TimeUnit.MILLISECONDS,
+                maxExpansions != null ? Long.parseLong(maxExpansions) : Long.MAX_VALUE);
+        boolean metrics = Arrays.asList(args).contains("--metrics");
+        if (metrics) {
+            QueryMetrics.get().setEnabled(true);
+            try {
+                QueryMetrics.get().register();
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+
+        SpanAggregator spans = null;
+        String spanFile = option(args, "--spans");
+        String spanStatistic = option(args, "--span-statistic");
+        SpanAggregator.Statistic statistic = spanStatistic != null
+                ? SpanAggregator.Statistic.parse(spanStatistic) : SpanAggregator.Statistic.MEAN;
+        if (spanFile != null) {
+            spans = new SpanAggregator();
+            try {
+                spans.ingest(Paths.get(spanFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        String port = option(args, "--serve");
+        if (port != null) {
+            String cacheSize = option(args, "--cache");
+            int entries = cacheSize != null ? Integer.parseInt(cacheSize) : 0;
+            serve(inputFilePaths[0], Integer.parseInt(port), threads, entries, spans, statistic, contexts);
+            return;
+        }
+
+        ExecutorService queryPool = queryFile != null || traceFile != null
+                ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            FilePipeline.Evaluator evaluator = InstanaTracer::runTasks;
+            if (queryFile != null) {
+                List<BatchQueryRunner.Query> queries = BatchQueryRunner.readQueries(Paths.get(queryFile));
+                evaluator = (tracer, out) -> runQueries(tracer, queries, queryPool, contexts, out);
+            } else if (traceFile != null) {
+                evaluator = (tracer, out) -> scoreTraces(tracer, Paths.get(traceFile), queryPool, out);
+            }
+            if (spans != null) {
+                FilePipeline.Evaluator queries = evaluator;
+                SpanAggregator observed = spans;
+                evaluator = (tracer, out) -> {
+                    tracer.applySpans(observed, statistic);
+                    queries.evaluate(tracer, out);
+                };
+            }
+            new FilePipeline(inFlight, evaluator).run(Arrays.asList(inputFilePaths), System.out,
+                    metrics || inputFilePaths.length > 1 ? System.err : null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (queryPool != null) {
+                queryPool.shutdown();
+            }
+        }
+        if (metrics) {
+            System.err.print(QueryMetrics.get().getReport());
+        }
+    }
+
+    /**
+     * Loads the graph and serves queries against it over HTTP until the process is stopped, see {@link QueryServer}.
+     *
+     * @param filename  the name of the input file
+     * @param port      the port to listen on
+     * @param threads   the number of request and batch threads
+     * @param cacheSize the maximum number of cached query results, or 0 for no cache
+     * @param spans     the observed span durations to apply to the graph, or null
+     * @param statistic the statistic of the span durations used as edge latency
+     * @param contexts  the supplier of the limits of every query
+     */
+    static void serve(String filename, int port, int threads, int cacheSize, SpanAggregator spans,
+                      SpanAggregator.Statistic statistic, Supplier<QueryContext> contexts) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile(filename);
+        if (spans != null) {
+            tracer.applySpans(spans, statistic);
+        }
+        tracer.indexReachability();
+        QueryCache cache = tracer.enableCache(cacheSize);
+        if (cache != null && QueryMetrics.get().isEnabled()) {
+            try {
+                cache.register();
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            QueryServer server = new QueryServer(tracer, new InetSocketAddress(port), threads, contexts);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.err.println("Serving " + filename + " on port " + server.port());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Prints the results of the ten fixed tasks.
+     *
+     * @param tracer the tracer holding the graph
+     * @param out    the stream receiving the results
+     */
+    static void runTasks(InstanaTracer tracer, PrintStream out) {
+        // Task 1
+        out.println(tracer.calculateTraceLatency(new String[]{"A", "B", "C"}));
+
+        // Task 2
+        out.println(tracer.calculateTraceLatency(new String[]{"A", "D"}));
 
-            // Task 1
-            System.out.println(tracer.calculateTraceLatency(new String[]{"A", "B", "C"}));
+        // Task 3
+        out.println(tracer.calculateTraceLatency(new String[]{"A", "D", "C"}));
 
-            // Task 2
-            System.out.println(tracer.calculateTraceLatency(new String[]{"A", "D"}));
+        // Task 4
+        out.println(tracer.calculateTraceLatency(new String[]{"A", "E", "B", "C", "D"}));
 
-            // Task 3
-            System.out.println(tracer.calculateTraceLatency(new String[]{"A", "D", "C"}));
+        // Task 5
+        out.println(tracer.calculateTraceLatency(new String[]{"A", "E", "D"}));
 
-            // Task 4
-            System.out.println(tracer.calculateTraceLatency(new String[]{"A", "E", "B", "C", "D"}));
+        // Task 6
+        out.println(tracer.countTracesMaxHops("C", "C", 3));
 
-            // Task 5
-            System.out.println(tracer.calculateTraceLatency(new String[]{"A", "E", "D"}));
+        // Task 7
+        out.println(tracer.countTracesExactHops("A", "C", 4));
 
-            // Task 6
-            System.out.println(tracer.countTracesMaxHops("C", "C", 3));
+        // Task 8
+        out.println(tracer.shortestLatency("A", "C"));
 
-            // Task 7
-            System.out.println(tracer.countTracesExactHops("A", "C", 4));
+        // Task 9
+        out.println(tracer.shortestLatency("B", "B"));
 
-            // Task 8
-            System.out.println(tracer.shortestLatency("A", "C"));
+        // Task 10
+        out.println(tracer.countTracesWithMaxLatency("C", 30));
+    }
+
+    /**
+     * Prints the latency of every trace of a trace file, see {@link TraceScorer}.
+     *
+     * @param tracer the tracer holding the graph
+     * @param file   the path of the trace file
+     * @param pool   the pool scoring the blocks of the file
+     * @param out    the stream receiving the results
+     * @throws InterruptedException if the thread is interrupted while waiting for the results
+     */
+    static void scoreTraces(InstanaTracer tracer, Path file, ExecutorService pool, PrintStream out)
+            throws InterruptedException {
+        try {
+            new TraceScorer(tracer.graph()).score(file, out, pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // Task 9
-            System.out.println(tracer.shortestLatency("B", "B"));
+    /**
+     * Prints the results of a batch of queries, see {@link BatchQueryRunner}.
+     *
+     * @param tracer   the tracer holding the graph
+     * @param queries  the queries to answer
+     * @param pool     the pool running the query groups
+     * @param contexts the supplier of the limits of every query group
+     * @param out      the stream receiving the results
+     * @throws InterruptedException if the thread is interrupted while waiting for the results
+     */
+    static void runQueries(InstanaTracer tracer, List<BatchQueryRunner.Query> queries, ExecutorService pool,
+                           Supplier<QueryContext> contexts, PrintStream out) throws InterruptedException {
+        for (String result : BatchQueryRunner.run(tracer.graph(), queries, pool, contexts)) {
+            out.println(result);
+        }
+    }
 
-            // Task 10
-            System.out.println(tracer.countTracesWithMaxLatency("C", 30));
+    /**
+     * Returns the value following the given option in the command line arguments.
+     *
+     * @param args   the command line arguments
+     * @param option the option name
+     * @return the value of the option, or null if the option is absent
+     */
+    static String option(String[] args, String option) {
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
         }
+        return null;
     }
 
     /**
-     * Reads the graph from the input file and constructs nodes and edges.
+     * Reads the graph from the input file and compiles its nodes and edges. Both the legacy {@code AB5} format and the
+     * delimited {@code from,to,latency} format are accepted, see {@link EdgeListParser}, as well as binary snapshots,
+     * see {@link #loadSnapshot(String)}.
      *
      * @param filename the name of the input file
      */
     public void readGraphFromFile(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line = br.readLine();
-            String[] edgesInput = line.split(",\\s*");
-            for (String edgeStr : edgesInput) {
-                String startName = edgeStr.substring(0, 1);
-                String endName = edgeStr.substring(1, 2);
-                int latency = Integer.parseInt(edgeStr.substring(2));
-
-                Node startNode = nodes.computeIfAbsent(startName, Node::new);
-                Node endNode = nodes.computeIfAbsent(endName, Node::new);
-
-                Edge edge = new Edge(endNode, latency);
-                startNode.addEdge(edge);
+        readGraphFromFile(filename, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the graph from the input file using at most the given number of parser threads.
+     *
+     * @param filename    the name of the input file
+     * @param parallelism the maximum number of parser threads
+     */
+    public void readGraphFromFile(String filename, int parallelism) {
+        try {
+            if (GraphSnapshot.isSnapshot(Paths.get(filename))) {
+                loadSnapshot(filename);
+                return;
             }
+            liveGraph.replace(EdgeListParser.parse(Paths.get(filename), parallelism));
+            latencyIndex = null;
+            reachability = null;
+            landmarks = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a binary snapshot written by {@link #saveSnapshot(String)}. The snapshot is memory-mapped, so the graph is
+     * ready without parsing, and a saved dense latency index answers lookups straight from the mapped file.
+     *
+     * @param filename the name of the snapshot file
+     */
+    public void loadSnapshot(String filename) {
+        try {
+            GraphSnapshot snapshot = GraphSnapshot.load(Paths.get(filename));
+            latencyIndex = snapshot.latencyIndex(liveGraph.replace(snapshot.graph()));
+            reachability = null;
+            landmarks = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replaces the graph with the graph of a window of epochs of the given store, see
+     * {@link WindowedGraphStore#window(int, int)}, so that the following queries answer for that window.
+     *
+     * @param store     the store holding the observed epochs
+     * @param epochs    the length of the window in epochs
+     * @param epochsAgo the number of epochs between the end of the window and the current epoch
+     */
+    public void useWindow(WindowedGraphStore store, int epochs, int epochsAgo) {
+        liveGraph.replace(store.window(epochs, epochsAgo));
+        latencyIndex = null;
+        reachability = null;
+        landmarks = null;
+    }
+
+    /**
+     * Saves the current graph with its reversed graph and, if built by {@link #indexLatencies(boolean)} with a dense
+     * matrix, its latency index to a binary snapshot, see {@link GraphSnapshot}.
+     *
+     * @param filename the name of the snapshot file
+     */
+    public void saveSnapshot(String filename) {
+        try {
+            GraphSnapshot.save(Paths.get(filename), graph(), latencyIndex);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns the current snapshot of the graph the queries run against.
+     *
+     * @return the compiled graph
+     */
+    public CompiledGraph graph() {
+        return liveGraph.snapshot();
+    }
+
+    /**
+     * Adds an edge to the graph, creating its nodes if needed. Queries already running keep their snapshot.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param latency   the latency of the edge
+     */
+    public void addEdge(String startName, String endName, int latency) {
+        liveGraph.addEdge(startName, endName, latency);
+    }
+
+    /**
+     * Removes every edge from the start node to the end node.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @return true if an edge was removed
+     */
+    public boolean removeEdge(String startName, String endName) {
+        return liveGraph.removeEdge(startName, endName);
+    }
+
+    /**
+     * Sets the latency of every edge from the start node to the end node.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param latency   the new latency
+     * @return true if an edge was updated
+     */
+    public boolean updateLatency(String startName, String endName, int latency) {
+        return liveGraph.updateLatency(startName, endName, latency);
+    }
+
+    /**
+     * Replaces the latencies of the observed edges with the given statistic of their span durations and adds the
+     * observed edges the graph lacks, publishing one new version, see {@link SpanAggregator}.
+     *
+     * @param spans     the aggregated span durations
+     * @param statistic the statistic used as edge latency
+     */
+    public void applySpans(SpanAggregator spans, SpanAggregator.Statistic statistic) {
+        spans.publish(liveGraph, statistic);
+    }
+
+    /**
+     * Precomputes the shortest latencies of the current graph so that {@link #shortestLatency(String, String)} becomes
+     * a lookup. A dense index computes all pairs up front in parallel, a sparse index computes one source at a time on
+     * first use.
+     *
+     * @param dense whether to build a dense all-pairs matrix instead of a per-source row cache
+     */
+    public void indexLatencies(boolean dense) {
+        CompiledGraph graph = graph();
+        latencyIndex = dense ? LatencyIndex.dense(graph) : LatencyIndex.sparse(graph);
+    }
+
+    /**
+     * Precomputes the strongly connected components of the current graph and which of them reach which, see
+     * {@link ReachabilityIndex}. While the graph is unchanged, queries between nodes without any trace return at once
+     * and counts only traverse the nodes that lie on some trace to the end node.
+     */
+    public void indexReachability() {
+        reachability = ReachabilityIndex.build(graph());
+    }
+
+    /**
+     * Picks the given number of landmarks in the current graph and stores their distances to and from every node, see
+     * {@link LandmarkIndex}. While the graph is unchanged, {@link #shortestLatency(String, String)} runs an A* search
+     * that the landmark bounds steer towards the end node.
+     *
+     * @param count the number of landmarks
+     */
+    public void indexLandmarks(int count) {
+        landmarks = LandmarkIndex.build(graph(), count);
+    }
+
+    /**
+     * Decides whether any trace of at least one hop leads from the start node to the end node, building the
+     * reachability index of the current graph if needed.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @return true if such a trace exists
+     */
+    public boolean hasTrace(String startName, String endName) {
+        CompiledGraph graph = graph();
+        int start = graph.id(startName);
+        int end = graph.id(endName);
+        return start >= 0 && end >= 0 && reachability(graph, true).hasTrace(start, end);
+    }
+
+    /**
+     * Decides whether the traces from the start node to the end node can pass through a cycle, so that their number
+     * grows without bound with the hop or latency limit, building the reachability index of the current graph if
+     * needed.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @return true if the number of traces is unbounded
+     */
+    public boolean hasUnboundedTraces(String startName, String endName) {
+        CompiledGraph graph = graph();
+        int start = graph.id(startName);
+        int end = graph.id(endName);
+        return start >= 0 && end >= 0 && reachability(graph, true).hasUnboundedTraces(start, end);
+    }
+
+    /**
+     * Returns the reachability index of the given graph.
+     *
+     * @param graph the graph the index must answer for
+     * @param build whether to build the index if the current one belongs to another graph
+     * @return the index, or null if it is not current and not built
+     */
+    private ReachabilityIndex reachability(CompiledGraph graph, boolean build) {
+        ReachabilityIndex index = reachability;
+        if (build && (index == null || index.graph() != graph)) {
+            index = ReachabilityIndex.build(graph);
+            reachability = index;
+        }
+        return index != null && index.graph() == graph ? index : null;
+    }
+
+    /**
+     * Caches the results of hop count, latency count and shortest latency queries in a bounded cache that drops them
+     * when the graph changes, see {@link QueryCache}.
+     *
+     * @param capacity the maximum number of cached results, or 0 to stop caching
+     * @return the cache, or null if caching stopped
+     */
+    public QueryCache enableCache(int capacity) {
+        QueryCache created = capacity > 0 ? new QueryCache(capacity) : null;
+        cache = created;
+        return created;
+    }
+
+    /**
+     * Answers a query from the result cache, if caching is enabled.
+     *
+     * @param type    the query type
+     * @param graph   the graph the query runs against
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param first   the first limit of the query
+     * @param second  the second limit of the query
+     * @param context the limits of the query, or null for none
+     * @param compute the computation of the result
+     * @param <T>     the type of the result
+     * @return the result
+     */
+    private <T> T cached(QueryMetrics.QueryType type, CompiledGraph graph, int source, int target, int first,
+                         int second, QueryContext context, Supplier<T> compute) {
+        QueryCache results = cache;
+        return results == null ? compute.get()
+                : results.get(new QueryCache.Key(type, graph.version, source, target, first, second), context, compute);
+    }
+
     /**
      * Calculates the total latency of a trace defined by an array of node names.
      *
@@ -93,17 +511,25 @@ public class InstanaTracer {
      * @return the total latency of the trace, or "NO SUCH TRACE" if the trace is invalid
      */
     public String calculateTraceLatency(String[] nodeNames) {
-        int latency = 0;
-        for (int i = 0; i < nodeNames.length - 1; i++) {
-            Node currentNode = nodes.get(nodeNames[i]);
-            Edge edge = getEdgeTo(currentNode, nodeNames[i + 1]);
-            if (edge != null) {
-                latency += edge.latency;
-            } else {
-                return "NO SUCH TRACE";
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.TRACE_LATENCY);
+        try {
+            CompiledGraph graph = graph();
+            int latency = 0;
+            int current = nodeNames.length > 0 ? graph.id(nodeNames[0]) : -1;
+            for (int i = 0; i < nodeNames.length - 1; i++) {
+                int next = graph.id(nodeNames[i + 1]);
+                int edge = current < 0 || next < 0 ? -1 : graph.findEdge(current, next);
+                if (edge >= 0) {
+                    latency += graph.latencies[edge];
+                } else {
+                    return "NO SUCH TRACE";
+                }
+                current = next;
             }
+            return "" + latency;
+        } finally {
+            QueryMetrics.end(probe);
         }
-        return "" + latency;
     }
 
     /**
@@ -113,33 +539,25 @@ public class InstanaTracer {
      * @param endName   the name of the end node
      * @param maxHops   the maximum number of hops
      * @return the number of traces with a maximum number of hops
+     * @throws ArithmeticException if the number of traces does not fit in an int, see {@link HopCounter}
      */
     public int countTracesMaxHops(String startName, String endName, int maxHops) {
-        Queue<PathNode> queue = new LinkedList<>();
-        Node start = nodes.get(startName);
-        Node end = nodes.get(endName);
-
-        int count = 0;
-        queue.offer(new PathNode(start, 0));
-        while (!queue.isEmpty()) {
-            PathNode current = queue.poll();
-            int depth = current.depth;
-
-            if (depth > maxHops) {
-                continue;
-            }
-
-            if (depth > 0 && current.node == end) {
-                count++;
-            }
+        return countTracesMaxHops(startName, endName, maxHops, null);
+    }
 
-            if (depth < maxHops) {
-                for (Edge edge : current.node.edges) {
-                    queue.offer(new PathNode(edge.destination, depth + 1));
-                }
-            }
-        }
-        return count;
+    /**
+     * Counts the number of traces from the start node to the end node with a maximum number of hops, within the
+     * limits of the given query context.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param maxHops   the maximum number of hops
+     * @param context   the limits of the query, or null for none
+     * @return the number of traces with a maximum number of hops
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public int countTracesMaxHops(String startName, String endName, int maxHops, QueryContext context) {
+        return countTraces(startName, endName, 1, maxHops, QueryMetrics.QueryType.MAX_HOPS, context);
     }
 
     /**
@@ -149,33 +567,57 @@ public class InstanaTracer {
      * @param endName   the name of the end node
      * @param exactHops the exact number of hops
      * @return the number of traces with an exact number of hops
+     * @throws ArithmeticException if the number of traces does not fit in an int, see {@link HopCounter}
      */
     public int countTracesExactHops(String startName, String endName, int exactHops) {
-        Queue<PathNode> queue = new LinkedList<>();
-        Node start = nodes.get(startName);
-        Node end = nodes.get(endName);
-
-        int count = 0;
-        queue.offer(new PathNode(start, 0));
-        while (!queue.isEmpty()) {
-            PathNode current = queue.poll();
-            int depth = current.depth;
-
-            if (depth > exactHops) {
-                continue;
-            }
+        return countTracesExactHops(startName, endName, exactHops, null);
+    }
 
-            if (depth == exactHops && current.node == end) {
-                count++;
-            }
+    /**
+     * Counts the number of traces from the start node to the end node with an exact number of hops, within the
+     * limits of the given query context.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param exactHops the exact number of hops
+     * @param context   the limits of the query, or null for none
+     * @return the number of traces with an exact number of hops
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public int countTracesExactHops(String startName, String endName, int exactHops, QueryContext context) {
+        return countTraces(startName, endName, exactHops, exactHops, QueryMetrics.QueryType.EXACT_HOPS, context);
+    }
 
-            if (depth < exactHops) {
-                for (Edge edge : current.node.edges) {
-                    queue.offer(new PathNode(edge.destination, depth + 1));
-                }
+    /**
+     * Counts the traces from the start node to the end node whose number of hops lies within the given range.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param minHops   the minimum number of hops
+     * @param maxHops   the maximum number of hops
+     * @param type      the query type the count is recorded as
+     * @param context   the limits of the query, or null for none
+     * @return the number of traces within the hop range
+     */
+    private int countTraces(String startName, String endName, int minHops, int maxHops,
+                            QueryMetrics.QueryType type, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(type);
+        try {
+            CompiledGraph graph = graph();
+            int start = graph.id(startName);
+            int end = graph.id(endName);
+            if (start < 0 || end < 0) {
+                return 0;
             }
+            ReachabilityIndex index = reachability(graph, false);
+            if (index != null && !index.hasTrace(start, end) && (start != end || minHops > 0)) {
+                return 0;
+            }
+            return cached(type, graph, start, end, minHops, maxHops, context, () -> Math.toIntExact(HopCounter.count(
+                    index != null ? index.prune(start, end) : graph, start, end, minHops, maxHops, context)));
+        } finally {
+            QueryMetrics.end(probe);
         }
-        return count;
     }
 
     /**
@@ -186,33 +628,70 @@ public class InstanaTracer {
      * @return the shortest latency as a string, or "NO SUCH TRACE" if no trace exists
      */
     public String shortestLatency(String startName, String endName) {
-        Node startNode = nodes.get(startName);
-        Node endNode = nodes.get(endName);
-
-        Map<Node, Integer> distances = new HashMap<>();
-        PriorityQueue<NodeLatency> queue = new PriorityQueue<>(Comparator.comparingInt(nl -> nl.latency));
-
-        queue.add(new NodeLatency(startNode, 0));
-
-        while (!queue.isEmpty()) {
-            NodeLatency current = queue.poll();
-            Node currentNode = current.node;
+        return shortestLatency(startName, endName, null);
+    }
 
-            if (currentNode == endNode && current.latency != 0) {
-                return Integer.toString(current.latency);
+    /**
+     * Finds the shortest latency from the start node to the end node within the limits of the given query context.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param context   the limits of the query, or null for none
+     * @return the shortest latency as a string, or "NO SUCH TRACE" if no trace exists
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    public String shortestLatency(String startName, String endName, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.SHORTEST_LATENCY);
+        try {
+            CompiledGraph graph = graph();
+            LatencyIndex index = latencyIndex;
+            if (index != null && index.graph() == graph) {
+                return index.shortestLatency(startName, endName);
             }
-
-            if (distances.containsKey(currentNode) && distances.get(currentNode) <= current.latency) {
-                continue;
+            int startNode = graph.id(startName);
+            int endNode = graph.id(endName);
+            ReachabilityIndex reach = reachability(graph, false);
+            if (startNode < 0 || endNode < 0 || reach != null && !reach.hasTrace(startNode, endNode)) {
+                return "NO SUCH TRACE";
             }
 
-            distances.put(currentNode, current.latency);
+            return cached(QueryMetrics.QueryType.SHORTEST_LATENCY, graph, startNode, endNode, 0, 0, context, () -> {
+                int latency = ShortestLatencyEngine.current().shortestLatency(graph, startNode, endNode, landmarks,
+                        context);
+                return latency == ShortestLatencyEngine.UNREACHABLE ? "NO SUCH TRACE" : Integer.toString(latency);
+            });
+        } finally {
+            QueryMetrics.end(probe);
+        }
+    }
 
-            for (Edge edge : currentNode.edges) {
-                queue.add(new NodeLatency(edge.destination, current.latency + edge.latency));
+    /**
+     * Finds the shortest latency from the start node to every node it reaches. Large graphs are searched in parallel,
+     * see {@link DeltaSteppingEngine}.
+     *
+     * @param startName the name of the start node
+     * @return the shortest latency per reachable node name, in node id order
+     */
+    public Map<String, Integer> shortestLatencies(String startName) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.SHORTEST_LATENCY);
+        try {
+            CompiledGraph graph = graph();
+            int startNode = graph.id(startName);
+            Map<String, Integer> latencies = new LinkedHashMap<>();
+            if (startNode < 0) {
+                return latencies;
             }
+            int[] row = new int[graph.nodeCount()];
+            ShortestLatencyEngine.current().latenciesFrom(graph, startNode, row, null);
+            for (int node = 0; node < row.length; node++) {
+                if (row[node] != ShortestLatencyEngine.UNREACHABLE) {
+                    latencies.put(graph.name(node), row[node]);
+                }
+            }
+            return latencies;
+        } finally {
+            QueryMetrics.end(probe);
         }
-        return "NO SUCH TRACE";
     }
 
     /**
@@ -223,140 +702,357 @@ public class InstanaTracer {
      * @return the number of traces with a maximum latency
      */
     public int countTracesWithMaxLatency(String startName, int maxLatency) {
-        Node startNode = nodes.get(startName);
-        if (startNode == null) {
-            return 0;
-        }
+        return countTracesWithMaxLatency(startName, startName, maxLatency);
+    }
 
-        return findTraces(startNode, startNode, 0, maxLatency);
+    /**
+     * Counts the number of traces from the start node back to itself with a latency below the maximum latency, within
+     * the limits of the given query context.
+     *
+     * @param startName  the name of the start node
+     * @param maxLatency the maximum latency
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces with a maximum latency
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public int countTracesWithMaxLatency(String startName, int maxLatency, QueryContext context) {
+        return countTracesWithMaxLatency(startName, startName, maxLatency, context);
     }
 
     /**
-     * Recursively finds traces from the current node to the start node with a maximum latency.
+     * Counts the number of traces from the start node to the end node with a latency below the maximum latency.
      *
-     * @param currentNode    the current node
-     * @param startNode      the start node
-     * @param currentLatency the current latency
-     * @param maxLatency     the maximum latency
+     * @param startName  the name of the start node
+     * @param endName    the name of the end node
+     * @param maxLatency the maximum latency
      * @return the number of traces with a maximum latency
+     * @throws ArithmeticException if the number of traces does not fit in an int, see {@link LatencyCounter}
      */
-    private int findTraces(Node currentNode, Node startNode, int currentLatency, int maxLatency) {
-        int traceCount = 0;
+    public int countTracesWithMaxLatency(String startName, String endName, int maxLatency) {
+        return countTracesWithMaxLatency(startName, endName, maxLatency, null);
+    }
 
-        if (currentLatency >= maxLatency) {
-            return 0;
-        }
+    /**
+     * Counts the number of traces from the start node to the end node with a latency below the maximum latency,
+     * within the limits of the given query context.
+     *
+     * @param startName  the name of the start node
+     * @param endName    the name of the end node
+     * @param maxLatency the maximum latency
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces with a maximum latency
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public int countTracesWithMaxLatency(String startName, String endName, int maxLatency, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.MAX_LATENCY);
+        try {
+            CompiledGraph graph = graph();
+            int startNode = graph.id(startName);
+            int endNode = graph.id(endName);
+            if (startNode < 0 || endNode < 0) {
+                return 0;
+            }
+            ReachabilityIndex index = reachability(graph, false);
+            if (index != null && !index.hasTrace(startNode, endNode)) {
+                return 0;
+            }
 
-        if (currentNode == startNode && currentLatency > 0) {
-            traceCount++;
+            return cached(QueryMetrics.QueryType.MAX_LATENCY, graph, startNode, endNode, 0, maxLatency, context,
+                    () -> Math.toIntExact(LatencyCounter.count(index != null ? index.prune(startNode, endNode) : graph,
+                            startNode, endNode, maxLatency, context)));
+        } finally {
+            QueryMetrics.end(probe);
         }
+    }
 
-        for (Edge edge : currentNode.edges) {
-            int newLatency = currentLatency + edge.latency;
-            if (newLatency < maxLatency) {
-                traceCount += findTraces(edge.destination, startNode, newLatency, maxLatency);
+    /**
+     * Counts, for every node, the traces from the start node with at most the given number of hops and a latency below
+     * the maximum latency.
+     *
+     * @param startName  the name of the start node
+     * @param maxHops    the maximum number of hops
+     * @param maxLatency the maximum latency
+     * @return the number of traces per end node name with at least one trace, in node id order
+     * @throws ArithmeticException if a number of traces does not fit in a long, see {@link LatencyCounter}
+     */
+    public Map<String, Long> countTracesWithLimits(String startName, int maxHops, int maxLatency) {
+        return countTracesWithLimits(startName, maxHops, maxLatency, null);
+    }
+
+    /**
+     * Counts, for every node, the traces from the start node with at most the given number of hops and a latency below
+     * the maximum latency, within the limits of the given query context. One sweep answers every end node, see
+     * {@link LatencyCounter#countAllWithMaxHops(CompiledGraph, int, int, int, QueryContext)}.
+     *
+     * @param startName  the name of the start node
+     * @param maxHops    the maximum number of hops
+     * @param maxLatency the maximum latency
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces per end node name with at least one trace, in node id order
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public Map<String, Long> countTracesWithLimits(String startName, int maxHops, int maxLatency,
+                                                   QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.LIMITS);
+        try {
+            CompiledGraph graph = graph();
+            int startNode = graph.id(startName);
+            Map<String, Long> counts = new LinkedHashMap<>();
+            if (startNode < 0) {
+                return counts;
             }
+            long[] totals = LatencyCounter.countAllWithMaxHops(graph, startNode, maxHops, maxLatency, context);
+            for (int node = 0; node < totals.length; node++) {
+                if (totals[node] != 0) {
+                    counts.put(graph.name(node), totals[node]);
+                }
+            }
+            return counts;
+        } finally {
+            QueryMetrics.end(probe);
         }
+    }
 
-        return traceCount;
+    /**
+     * Counts the traces whose node sequence matches the pattern and that have at most the given number of hops, see
+     * {@link TracePattern} for the syntax.
+     *
+     * @param pattern the pattern the traces must match
+     * @param maxHops the maximum number of hops
+     * @return the number of matching traces
+     * @throws IllegalArgumentException if the pattern is malformed
+     * @throws ArithmeticException      if the number of traces does not fit in an int
+     */
+    public int countMatchingTraces(String pattern, int maxHops) {
+        return countMatchingTraces(pattern, maxHops, null);
     }
 
     /**
-     * Gets the edge from the specified node to the destination node with the given name.
+     * Counts the traces whose node sequence matches the pattern and that have at most the given number of hops, within
+     * the limits of the given query context.
      *
-     * @param node            the node
-     * @param destinationName the name of the destination node
-     * @return the edge to the destination node, or null if no such edge exists
+     * @param pattern the pattern the traces must match
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of matching traces
+     * @throws IllegalArgumentException     if the pattern is malformed
+     * @throws QueryBudgetExceededException if the query runs out of budget
      */
-    private Edge getEdgeTo(Node node, String destinationName) {
-        for (Edge edge : node.edges) {
-            if (edge.destination.name.equals(destinationName)) {
-                return edge;
-            }
+    public int countMatchingTraces(String pattern, int maxHops, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.PATTERN);
+        try {
+            return Math.toIntExact(product(pattern, context).countMaxHops(maxHops, context));
+        } finally {
+            QueryMetrics.end(probe);
         }
-        return null;
     }
 
     /**
-     * Represents an edge in the graph with a destination node and latency.
+     * Counts the traces whose node sequence matches the pattern and whose latency is below the maximum latency.
+     *
+     * @param pattern    the pattern the traces must match
+     * @param maxLatency the maximum latency
+     * @return the number of matching traces
+     * @throws IllegalArgumentException if the pattern is malformed
+     * @throws ArithmeticException      if the number of traces does not fit in an int
      */
-    static class Edge {
-        Node destination;
-        int latency;
+    public int countMatchingTracesWithMaxLatency(String pattern, int maxLatency) {
+        return countMatchingTracesWithMaxLatency(pattern, maxLatency, null);
+    }
 
-        /**
-         * Constructs an Edge with the specified destination node and latency.
-         *
-         * @param destination the destination node
-         * @param latency     the latency of the edge
-         */
-        public Edge(Node destination, int latency) {
-            this.destination = destination;
-            this.latency = latency;
+    /**
+     * Counts the traces whose node sequence matches the pattern and whose latency is below the maximum latency, within
+     * the limits of the given query context.
+     *
+     * @param pattern    the pattern the traces must match
+     * @param maxLatency the maximum latency
+     * @param context    the limits of the query, or null for none
+     * @return the number of matching traces
+     * @throws IllegalArgumentException     if the pattern is malformed
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public int countMatchingTracesWithMaxLatency(String pattern, int maxLatency, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.PATTERN);
+        try {
+            return Math.toIntExact(product(pattern, context).countMaxLatency(maxLatency, context));
+        } finally {
+            QueryMetrics.end(probe);
         }
     }
 
     /**
-     * Represents a node in the graph with a name and a list of edges.
+     * Decides whether any trace's node sequence matches the pattern.
+     *
+     * @param pattern the pattern the trace must match
+     * @return true if a matching trace exists
+     * @throws IllegalArgumentException if the pattern is malformed
      */
-    static class Node {
-        String name;
-        List<Edge> edges = new ArrayList<>();
-
-        /**
-         * Constructs a Node with the specified name.
-         *
-         * @param name the name of the node
-         */
-        public Node(String name) {
-            this.name = name;
+    public boolean hasMatchingTrace(String pattern) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.PATTERN);
+        try {
+            return product(pattern, null).exists();
+        } finally {
+            QueryMetrics.end(probe);
         }
+    }
+
+    /**
+     * Finds the shortest positive latency of a trace whose node sequence matches the pattern, with the semantics of
+     * {@link #shortestLatency(String, String)}.
+     *
+     * @param pattern the pattern the trace must match
+     * @return the shortest latency as a string, or "NO SUCH TRACE" if no trace matches
+     * @throws IllegalArgumentException if the pattern is malformed
+     */
+    public String shortestMatchingLatency(String pattern) {
+        return shortestMatchingLatency(pattern, null);
+    }
 
-        /**
-         * Adds an edge to the node's list of edges.
-         *
-         * @param edge the edge to add
-         */
-        public void addEdge(Edge edge) {
-            edges.add(edge);
+    /**
+     * Finds the shortest positive latency of a trace whose node sequence matches the pattern, within the limits of
+     * the given query context.
+     *
+     * @param pattern the pattern the trace must match
+     * @param context the limits of the query, or null for none
+     * @return the shortest latency as a string, or "NO SUCH TRACE" if no trace matches
+     * @throws IllegalArgumentException     if the pattern is malformed
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public String shortestMatchingLatency(String pattern, QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.PATTERN);
+        try {
+            int latency = product(pattern, context).shortestLatency(context);
+            return latency == ShortestLatencyEngine.UNREACHABLE ? "NO SUCH TRACE" : Integer.toString(latency);
+        } finally {
+            QueryMetrics.end(probe);
         }
     }
 
     /**
-     * Represents a node in a path with a depth.
+     * Compiles the pattern and builds its product with the current graph.
+     *
+     * @param pattern the pattern
+     * @param context the limits of the query, or null for none
+     * @return the product
      */
-    static class PathNode {
-        Node node;
-        int depth;
+    private PatternProduct product(String pattern, QueryContext context) {
+        return PatternProduct.build(graph(), TracePattern.compile(pattern), context);
+    }
 
-        /**
-         * Constructs a PathNode with the specified node and depth.
-         *
-         * @param node  the node
-         * @param depth the depth of the node in the path
-         */
-        public PathNode(Node node, int depth) {
-            this.node = node;
-            this.depth = depth;
+    /**
+     * Finds the k traces with the lowest latency from the start node to the end node. Traces may revisit nodes.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param k         the maximum number of traces
+     * @return up to k traces, in ascending order of latency
+     */
+    public List<Trace> shortestTraces(String startName, String endName, int k) {
+        return shortestTraces(startName, endName, k, false, null);
+    }
+
+    /**
+     * Finds the k traces with the lowest latency from the start node to the end node that do not repeat nodes, apart
+     * from ending at the start node.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param k         the maximum number of traces
+     * @return up to k traces, in ascending order of latency
+     */
+    public List<Trace> shortestLooplessTraces(String startName, String endName, int k) {
+        return shortestTraces(startName, endName, k, true, null);
+    }
+
+    /**
+     * Finds the k traces with the lowest latency from the start node to the end node within the limits of the given
+     * query context.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param k         the maximum number of traces
+     * @param loopless  whether traces must not repeat nodes
+     * @param context   the limits of the query, or null for none
+     * @return up to k traces, in ascending order of latency
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    public List<Trace> shortestTraces(String startName, String endName, int k, boolean loopless,
+                                      QueryContext context) {
+        QueryMetrics.Probe probe = QueryMetrics.begin(QueryMetrics.QueryType.K_SHORTEST);
+        try {
+            CompiledGraph graph = graph();
+            int startNode = graph.id(startName);
+            int endNode = graph.id(endName);
+            ReachabilityIndex index = reachability(graph, false);
+            if (startNode < 0 || endNode < 0 || index != null && !index.hasTrace(startNode, endNode)) {
+                return Collections.emptyList();
+            }
+            return loopless
+                    ? KShortestPaths.loopless(graph, startNode, endNode, k, context)
+                    : KShortestPaths.walks(graph, startNode, endNode, k, context);
+        } finally {
+            QueryMetrics.end(probe);
         }
     }
 
     /**
-     * Represents a node with an associated latency.
+     * Streams the traces from the start node to the end node with a maximum number of hops. The traces are produced
+     * lazily, one at a time, so the stream can be cut short with {@code limit} or {@code findFirst}.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param maxHops   the maximum number of hops
+     * @return the stream of traces, in depth-first order
      */
-    static class NodeLatency {
-        Node node;
-        int latency;
+    public Stream<Trace> tracesMaxHops(String startName, String endName, int maxHops) {
+        return traces(startName, endName, 1, maxHops, TraceEnumerator.UNBOUNDED);
+    }
 
-        /**
-         * Constructs a NodeLatency with the specified node and latency.
-         *
-         * @param node    the node
-         * @param latency the latency associated with the node
-         */
-        public NodeLatency(Node node, int latency) {
-            this.node = node;
-            this.latency = latency;
+    /**
+     * Streams the traces from the start node to the end node with an exact number of hops.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @param exactHops the exact number of hops
+     * @return the stream of traces, in depth-first order
+     */
+    public Stream<Trace> tracesExactHops(String startName, String endName, int exactHops) {
+        return traces(startName, endName, exactHops, exactHops, TraceEnumerator.UNBOUNDED);
+    }
+
+    /**
+     * Streams the traces from the start node to the end node with a latency below the maximum latency.
+     *
+     * @param startName  the name of the start node
+     * @param endName    the name of the end node
+     * @param maxLatency the maximum latency
+     * @return the stream of traces, in depth-first order
+     * @throws IllegalStateException when consumed, if the traces can loop through a cycle of zero-latency edges
+     */
+    public Stream<Trace> tracesWithMaxLatency(String startName, String endName, int maxLatency) {
+        return traces(startName, endName, 1, TraceEnumerator.UNBOUNDED, maxLatency);
+    }
+
+    /**
+     * Streams the traces between two named nodes within the given limits, or none if either node is unknown or the
+     * reachability index, when current, shows that no trace exists.
+     *
+     * @param startName  the name of the start node
+     * @param endName    the name of the end node
+     * @param minHops    the minimum number of hops
+     * @param maxHops    the maximum number of hops, or {@link TraceEnumerator#UNBOUNDED}
+     * @param maxLatency the exclusive latency limit, or {@link TraceEnumerator#UNBOUNDED}
+     * @return the stream of traces, in depth-first order
+     */
+    private Stream<Trace> traces(String startName, String endName, int minHops, int maxHops, int maxLatency) {
+        CompiledGraph graph = graph();
+        int startNode = graph.id(startName);
+        int endNode = graph.id(endName);
+        ReachabilityIndex index = reachability(graph, false);
+        if (startNode < 0 || endNode < 0 || maxHops < minHops
+                || index != null && !index.hasTrace(startNode, endNode) && (startNode != endNode || minHops > 0)) {
+            return Stream.empty();
         }
+        return TraceEnumerator.stream(graph, startNode, endNode, minHops, maxHops, maxLatency);
     }
 }
@@ -0,0 +1,472 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds the k traces with the lowest latency between two nodes. Both variants first compute the plain shortest
+ * distance from every node to the target on the reversed graph and use it as an exact A* heuristic, so searches never
+ * leave the part of the graph that can still reach the target and settle nodes in the order of their best total.
+ * <p>
+ * {@link #walks} returns traces that may revisit nodes, like the traces that {@link HopCounter} counts. It pops every
+ * node at most k times, which is enough because the prefix of one of the k best traces is one of the k best ways to
+ * reach its last node. {@link #loopless} returns traces without repeated nodes, except that a trace may end where it
+ * starts, with Yen's algorithm and Lawler's rule of spurring only from the deviation point on. All spur searches of one
+ * query share the heuristic, the frontier and the epoch-stamped bans, so each spur search costs only what it visits.
+ * <p>
+ * As everywhere, a trace has at least one hop, so the traces from a node to itself are its cycles.
+ */
+public final class KShortestPaths {
+
+    private static final int UNREACHABLE = ShortestLatencyEngine.UNREACHABLE;
+
+    private static final Comparator<Path> BY_LATENCY =
+            Comparator.comparingLong((Path path) -> path.latency).thenComparingInt(path -> path.edges.length);
+
+    private KShortestPaths() {
+    }
+
+    /**
+     * Finds the k traces with the lowest latency, allowing traces to revisit nodes.
+     *
+     * @param graph   the graph to search
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param k       the maximum number of traces
+     * @param context the limits of the query, or null for none
+     * @return up to k traces, in ascending order of latency
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    static List<Trace> walks(CompiledGraph graph, int source, int target, int k, QueryContext context) {
+        int[] toTarget = new int[graph.nodeCount()];
+        ShortestLatencyEngine.current().distancesTo(graph, target, toTarget);
+        if (k <= 0 || toTarget[source] == UNREACHABLE) {
+            return Collections.emptyList();
+        }
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        Labels labels = new Labels();
+        LabelHeap heap = new LabelHeap();
+        int[] pops = new int[graph.nodeCount()];
+        List<Trace> traces = new ArrayList<>(Math.min(k, 1024));
+        long relaxed = 0;
+        heap.push(toTarget[source], labels.add(source, -1, 0));
+        while (heap.size > 0 && traces.size() < k) {
+            QueryContext.charge(context, 1);
+            int label = heap.poll();
+            int u = labels.nodes[label];
+            long latency = labels.latencies[label];
+            if (label != 0 && u == target) {
+                traces.add(labels.trace(graph, label));
+            }
+            if (label != 0 && ++pops[u] > k) {
+                continue;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                relaxed++;
+                if (toTarget[v] != UNREACHABLE && pops[v] < k) {
+                    long reached = latency + latencies[e];
+                    heap.push(reached + toTarget[v], labels.add(v, label, reached));
+                }
+            }
+        }
+        QueryMetrics.record(heap.polls, relaxed, heap.peak);
+        return traces;
+    }
+
+    /**
+     * Finds the k traces with the lowest latency that do not repeat nodes, apart from ending at the start node.
+     *
+     * @param graph   the graph to search
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param k       the maximum number of traces
+     * @param context the limits of the query, or null for none
+     * @return up to k traces, in ascending order of latency
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    static List<Trace> loopless(CompiledGraph graph, int source, int target, int k, QueryContext context) {
+        SpurSearch search = new SpurSearch(graph, target, context);
+        if (k <= 0 || search.toTarget[source] == UNREACHABLE) {
+            return Collections.emptyList();
+        }
+        List<Path> found = new ArrayList<>();
+        PriorityQueue<Path> candidates = new PriorityQueue<>(BY_LATENCY);
+        Set<Path> seen = new HashSet<>();
+        search.ban();
+        Path next = search.find(new int[]{source}, new int[0], 0, 0);
+        while (next != null) {
+            found.add(next);
+            if (found.size() == k) {
+                break;
+            }
+            long rootLatency = 0;
+            for (int i = 0; i < next.deviation; i++) {
+                rootLatency += graph.latencies[next.edges[i]];
+            }
+            for (int i = next.deviation; i < next.edges.length; i++) {
+                search.ban();
+                for (Path path : found) {
+                    if (path.edges.length > i && path.sharesRoot(next, i)) {
+                        search.banEdge(path.edges[i]);
+                    }
+                }
+                for (int j = 0; j <= i; j++) {
+                    search.banNode(next.nodes[j]);
+                }
+                Path candidate = search.find(Arrays.copyOf(next.nodes, i + 1), Arrays.copyOf(next.edges, i),
+                        rootLatency, i);
+                if (candidate != null && seen.add(candidate)) {
+                    candidates.add(candidate);
+                }
+                rootLatency += graph.latencies[next.edges[i]];
+            }
+            next = candidates.poll();
+        }
+        search.record();
+        List<Trace> traces = new ArrayList<>(found.size());
+        for (Path path : found) {
+            traces.add(new Trace(graph, path.nodes, path.latency));
+        }
+        return traces;
+    }
+
+    /**
+     * One trace of the loopless search, identified by its edges so that parallel edges give distinct traces.
+     */
+    static final class Path {
+        final int[] nodes;
+        final int[] edges;
+        final long latency;
+        final int deviation;
+
+        /**
+         * Constructs a Path.
+         *
+         * @param nodes     the ids of the visited nodes
+         * @param edges     the indices of the edges taken
+         * @param latency   the total latency
+         * @param deviation the position of the node where the path leaves the path it was derived from
+         */
+        Path(int[] nodes, int[] edges, long latency, int deviation) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.latency = latency;
+            this.deviation = deviation;
+        }
+
+        /**
+         * Decides whether this path takes the same first edges as the given path.
+         *
+         * @param other  the other path
+         * @param length the number of edges to compare
+         * @return true if the first edges are the same
+         */
+        boolean sharesRoot(Path other, int length) {
+            for (int i = 0; i < length; i++) {
+                if (edges[i] != other.edges[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Path && Arrays.equals(edges, ((Path) other).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    /**
+     * Runs the spur searches of one loopless query. Banned nodes and edges carry the stamp of the ban they belong to,
+     * so starting a new set of bans is a single increment instead of clearing the arrays.
+     */
+    private static final class SpurSearch {
+        private final CompiledGraph graph;
+        private final int target;
+        private final QueryContext context;
+        private final int[] toTarget;
+        private final ShortestLatencyEngine.Frontier frontier = new ShortestLatencyEngine.Frontier();
+        private final int[] parentEdges;
+        private final int[] parentNodes;
+        private final int[] bannedNodes;
+        private final int[] bannedEdges;
+        private int epoch;
+        private long expanded;
+        private long relaxed;
+        private int peak;
+
+        /**
+         * Constructs a SpurSearch and computes the distances to the target it uses as heuristic.
+         *
+         * @param graph   the graph to search
+         * @param target  the id of the end node
+         * @param context the limits of the query, or null for none
+         */
+        SpurSearch(CompiledGraph graph, int target, QueryContext context) {
+            this.graph = graph;
+            this.target = target;
+            this.context = context;
+            this.toTarget = new int[graph.nodeCount()];
+            this.parentEdges = new int[graph.nodeCount()];
+            this.parentNodes = new int[graph.nodeCount()];
+            this.bannedNodes = new int[graph.nodeCount()];
+            this.bannedEdges = new int[graph.edgeCount()];
+            ShortestLatencyEngine.current().distancesTo(graph, target, toTarget);
+        }
+
+        /**
+         * Lifts all bans.
+         */
+        void ban() {
+            epoch++;
+        }
+
+        /**
+         * Keeps the following spur searches from passing through the given node.
+         *
+         * @param node the id of the node
+         */
+        void banNode(int node) {
+            bannedNodes[node] = epoch;
+        }
+
+        /**
+         * Keeps the following spur searches from taking the given edge.
+         *
+         * @param edge the index of the edge
+         */
+        void banEdge(int edge) {
+            bannedEdges[edge] = epoch;
+        }
+
+        /**
+         * Finds the shortest continuation from the spur node to the target that avoids the banned nodes and edges,
+         * and joins it to the root.
+         *
+         * @param rootNodes   the nodes from the start node to the spur node, which is the last one
+         * @param rootEdges   the edges leading from the start node to the spur node
+         * @param rootLatency the latency of the root
+         * @param deviation   the position of the spur node
+         * @return the joined path, or null if the target cannot be reached
+         */
+        Path find(int[] rootNodes, int[] rootEdges, long rootLatency, int deviation) {
+            int spur = rootNodes[rootNodes.length - 1];
+            frontier.reset(graph.nodeCount());
+            relax(spur, 0);
+            while (frontier.size > 0) {
+                QueryContext.charge(context, 1);
+                int estimate = frontier.peekDistance();
+                int u = frontier.poll();
+                if (u == target) {
+                    collect();
+                    return join(rootNodes, rootEdges, rootLatency + estimate, deviation);
+                }
+                relax(u, estimate - toTarget[u]);
+            }
+            collect();
+            return null;
+        }
+
+        /**
+         * Offers the neighbours of a node that are not banned and can still reach the target.
+         *
+         * @param u        the id of the node
+         * @param distance the latency from the spur node to the node
+         */
+        private void relax(int u, int distance) {
+            int[] offsets = graph.offsets;
+            int[] targets = graph.targets;
+            int[] latencies = graph.latencies;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                relaxed++;
+                if (bannedEdges[e] == epoch || toTarget[v] == UNREACHABLE || v != target && bannedNodes[v] == epoch) {
+                    continue;
+                }
+                int before = frontier.distance(v);
+                frontier.offer(v, distance + latencies[e] + toTarget[v]);
+                if (frontier.distance(v) < before) {
+                    parentEdges[v] = e;
+                    parentNodes[v] = u;
+                }
+            }
+        }
+
+        /**
+         * Joins the root to the continuation found by the search, following the parents back from the target.
+         *
+         * @param rootNodes the nodes from the start node to the spur node
+         * @param rootEdges the edges leading from the start node to the spur node
+         * @param latency   the total latency
+         * @param deviation the position of the spur node
+         * @return the joined path
+         */
+        private Path join(int[] rootNodes, int[] rootEdges, long latency, int deviation) {
+            int spur = rootNodes[rootNodes.length - 1];
+            int hops = rootEdges.length;
+            int node = target;
+            do {
+                hops++;
+                node = parentNodes[node];
+            } while (node != spur);
+            int[] edges = Arrays.copyOf(rootEdges, hops);
+            int[] nodes = Arrays.copyOf(rootNodes, hops + 1);
+            node = target;
+            for (int i = hops; i > rootEdges.length; i--) {
+                nodes[i] = node;
+                edges[i - 1] = parentEdges[node];
+                node = parentNodes[node];
+            }
+            return new Path(nodes, edges, latency, deviation);
+        }
+
+        /**
+         * Adds the work of the last spur search to the totals of the query.
+         */
+        private void collect() {
+            expanded += frontier.polls;
+            peak = Math.max(peak, frontier.peak);
+        }
+
+        /**
+         * Adds the work of all spur searches to the running query.
+         */
+        void record() {
+            QueryMetrics.record(expanded, relaxed, peak);
+        }
+    }
+
+    /**
+     * The labels of the walk search: one per partial trace, holding its last node, the label it extends and its
+     * latency in growable primitive arrays, so a trace is a chain of parent indices rather than an object.
+     */
+    private static final class Labels {
+        int[] nodes = new int[64];
+        int[] parents = new int[64];
+        long[] latencies = new long[64];
+        int size;
+
+        /**
+         * Adds a label.
+         *
+         * @param node    the id of the last node
+         * @param parent  the label this one extends by one edge, or -1 for the start
+         * @param latency the latency of the partial trace
+         * @return the new label
+         */
+        int add(int node, int parent, long latency) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            nodes[size] = node;
+            parents[size] = parent;
+            latencies[size] = latency;
+            return size++;
+        }
+
+        /**
+         * Builds the trace that ends with the given label.
+         *
+         * @param graph the graph the trace runs through
+         * @param label the last label
+         * @return the trace
+         */
+        Trace trace(CompiledGraph graph, int label) {
+            int hops = 0;
+            for (int l = parents[label]; l >= 0; l = parents[l]) {
+                hops++;
+            }
+            int[] path = new int[hops + 1];
+            for (int l = label, i = hops; l >= 0; l = parents[l], i--) {
+                path[i] = nodes[l];
+            }
+            return new Trace(graph, path, latencies[label]);
+        }
+    }
+
+    /**
+     * A binary heap of labels keyed by their estimated total latency. Ties go to the older label.
+     */
+    private static final class LabelHeap {
+        long[] keys = new long[64];
+        int[] labels = new int[64];
+        int size;
+        long polls;
+        int peak;
+
+        /**
+         * Adds a label to the heap.
+         *
+         * @param key   the estimated total latency
+         * @param label the label
+         */
+        void push(long key, int label) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                labels = Arrays.copyOf(labels, size * 2);
+            }
+            int index = size++;
+            peak = Math.max(peak, size);
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!less(key, label, keys[parent], labels[parent])) {
+                    break;
+                }
+                keys[index] = keys[parent];
+                labels[index] = labels[parent];
+                index = parent;
+            }
+            keys[index] = key;
+            labels[index] = label;
+        }
+
+        /**
+         * Removes the label with the smallest key from the heap.
+         *
+         * @return the label
+         */
+        int poll() {
+            polls++;
+            int top = labels[0];
+            long key = keys[--size];
+            int label = labels[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(keys[child + 1], labels[child + 1], keys[child], labels[child])) {
+                    child++;
+                }
+                if (!less(keys[child], labels[child], key, label)) {
+                    break;
+                }
+                keys[index] = keys[child];
+                labels[index] = labels[child];
+                index = child;
+            }
+            keys[index] = key;
+            labels[index] = label;
+            return top;
+        }
+
+        private static boolean less(long key, int label, long otherKey, int otherLabel) {
+            return key < otherKey || key == otherKey && label < otherLabel;
+        }
+    }
+}
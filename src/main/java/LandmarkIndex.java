@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Stores the plain shortest distances from and to a few landmark nodes of a {@link CompiledGraph}, which bound the
+ * distance between any two nodes from below by the triangle inequality: {@code dist(v, t) >= dist(L, t) - dist(L, v)}
+ * and {@code dist(v, t) >= dist(v, L) - dist(t, L)} for every landmark {@code L}. The largest of these bounds is an
+ * admissible and consistent A* heuristic, see {@link ShortestLatencyEngine#shortestLatency(CompiledGraph, int, int,
+ * LandmarkIndex, QueryContext)}, so point-to-point searches expand only the nodes close to the shortest trace. The
+ * bounds also prove some nodes unable to reach the target, which the search then skips.
+ * <p>
+ * Landmarks are picked farthest first: each next landmark is the node with the largest round-trip distance to the
+ * landmarks chosen so far, preferring nodes none of them reaches. The forward search of every landmark runs in parallel
+ * with its backward search, each search is parallel on large graphs, see {@link DeltaSteppingEngine}, and so is the
+ * scan for the next landmark. The distances are stored node-major, so one estimate reads two adjacent runs of ints.
+ */
+public final class LandmarkIndex {
+
+    private final CompiledGraph graph;
+    private final int[] landmarks;
+    private final int[] from;
+    private final int[] to;
+
+    /**
+     * Constructs a LandmarkIndex, picking the landmarks and computing their distances.
+     *
+     * @param graph the graph to index
+     * @param count the number of landmarks, capped at the node count
+     */
+    private LandmarkIndex(CompiledGraph graph, int count) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        int k = Math.max(0, Math.min(count, n));
+        this.landmarks = new int[k];
+        this.from = new int[n * k];
+        this.to = new int[n * k];
+        if (k == 0) {
+            return;
+        }
+        long[] roundTrips = new long[n];
+        Arrays.fill(roundTrips, Long.MAX_VALUE);
+        int[] start = DeltaSteppingEngine.distancesFrom(graph, 0, null);
+        int next = IntStream.range(0, n).parallel()
+                .reduce((a, b) -> farther(start[a] == ShortestLatencyEngine.UNREACHABLE ? -1 : start[a], a,
+                        start[b] == ShortestLatencyEngine.UNREACHABLE ? -1 : start[b], b)).getAsInt();
+        for (int i = 0; i < k; i++) {
+            int landmark = next;
+            int column = i;
+            landmarks[i] = landmark;
+            ForkJoinTask<int[]> backward = ForkJoinPool.commonPool().submit(() -> {
+                int[] row = new int[n];
+                ShortestLatencyEngine.current().distancesTo(graph, landmark, row);
+                return row;
+            });
+            int[] forward = DeltaSteppingEngine.distancesFrom(graph, landmark, null);
+            int[] reverse = backward.join();
+            IntStream.range(0, n).parallel().forEach(v -> {
+                from[v * k + column] = forward[v];
+                to[v * k + column] = reverse[v];
+                roundTrips[v] = Math.min(roundTrips[v], (long) forward[v] + reverse[v]);
+            });
+            next = IntStream.range(0, n).parallel()
+                    .reduce((a, b) -> farther(roundTrips[a], a, roundTrips[b], b)).getAsInt();
+        }
+    }
+
+    /**
+     * Picks landmarks and computes their distances for the given graph.
+     *
+     * @param graph the graph to index
+     * @param count the number of landmarks, capped at the node count
+     * @return the index
+     */
+    public static LandmarkIndex build(CompiledGraph graph, int count) {
+        return new LandmarkIndex(graph, count);
+    }
+
+    /**
+     * Returns the graph this index was built for.
+     *
+     * @return the indexed graph
+     */
+    public CompiledGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the ids of the landmarks in the order they were picked.
+     *
+     * @return the landmark ids
+     */
+    public int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Returns a lower bound of the plain shortest distance from a node to the target.
+     *
+     * @param node   the id of the node
+     * @param target the id of the target
+     * @return the lower bound, or {@link ShortestLatencyEngine#UNREACHABLE} if the node cannot reach the target
+     */
+    int estimate(int node, int target) {
+        int k = landmarks.length;
+        int v = node * k;
+        int t = target * k;
+        int best = 0;
+        for (int l = 0; l < k; l++) {
+            int landmarkToNode = from[v + l];
+            int landmarkToTarget = from[t + l];
+            if (landmarkToTarget != ShortestLatencyEngine.UNREACHABLE) {
+                if (landmarkToNode != ShortestLatencyEngine.UNREACHABLE && landmarkToTarget - landmarkToNode > best) {
+                    best = landmarkToTarget - landmarkToNode;
+                }
+            } else if (landmarkToNode != ShortestLatencyEngine.UNREACHABLE) {
+                return ShortestLatencyEngine.UNREACHABLE;
+            }
+            int nodeToLandmark = to[v + l];
+            int targetToLandmark = to[t + l];
+            if (nodeToLandmark != ShortestLatencyEngine.UNREACHABLE) {
+                if (targetToLandmark != ShortestLatencyEngine.UNREACHABLE && nodeToLandmark - targetToLandmark > best) {
+                    best = nodeToLandmark - targetToLandmark;
+                }
+            } else if (targetToLandmark != ShortestLatencyEngine.UNREACHABLE) {
+                return ShortestLatencyEngine.UNREACHABLE;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the node with the larger score, or the smaller id on a tie, so that the parallel scan is deterministic.
+     */
+    private static int farther(long scoreA, int a, long scoreB, int b) {
+        return scoreA > scoreB || scoreA == scoreB && a < b ? a : b;
+    }
+}
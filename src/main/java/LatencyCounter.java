@@ -0,0 +1,434 @@
+import java.util.Arrays;
+
+/**
+ * Counts latency-bounded traces by dynamic programming over (node, accumulated latency) instead of enumerating them.
+ * Walk counts are pushed from one latency layer to the next along the outgoing edges, keeping only as many layers as
+ * the largest usable edge latency needs, so one pass costs O(maxLatency * edges) and yields the counts for every
+ * target at once. A trace has at least one hop and a total latency strictly below the limit.
+ */
+public final class LatencyCounter {
+
+    private LatencyCounter() {
+    }
+
+    /**
+     * Counts the traces from the source to the target with a total latency below the given limit.
+     *
+     * @param graph      the graph to count in
+     * @param source     the id of the start node
+     * @param target     the id of the end node
+     * @param maxLatency the exclusive latency limit
+     * @return the number of traces
+     * @throws ArithmeticException   if an intermediate count does not fit in a long
+     * @throws IllegalStateException if a trace can loop through a cycle of zero-latency edges
+     */
+    public static long count(CompiledGraph graph, int source, int target, int maxLatency) {
+        return count(graph, source, target, maxLatency, null);
+    }
+
+    /**
+     * Counts the traces from the source to the target with a total latency below the given limit, within the limits
+     * of the given query context.
+     *
+     * @param graph      the graph to count in
+     * @param source     the id of the start node
+     * @param target     the id of the end node
+     * @param maxLatency the exclusive latency limit
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces
+     * @throws ArithmeticException          if an intermediate count does not fit in a long
+     * @throws IllegalStateException        if a trace can loop through a cycle of zero-latency edges
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the traces counted so far
+     */
+    public static long count(CompiledGraph graph, int source, int target, int maxLatency, QueryContext context) {
+        try {
+            return sweep(graph, new int[]{source}, new int[]{target}, maxLatency, new int[0], new int[0], new long[0],
+                    context)[target];
+        } catch (QueryBudgetExceededException e) {
+            throw e.forTarget(target);
+        }
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node with a total latency below the given
+     * limit.
+     *
+     * @param graph      the graph to count in
+     * @param sources    the ids of the start nodes
+     * @param maxLatency the exclusive latency limit
+     * @return the number of traces per end node
+     * @throws ArithmeticException      if an intermediate count does not fit in a long
+     * @throws IllegalStateException    if a trace can loop through a cycle of zero-latency edges
+     * @throws IllegalArgumentException if the graph has a negative edge latency
+     */
+    public static long[] countAll(CompiledGraph graph, int[] sources, int maxLatency) {
+        return countAll(graph, sources, maxLatency, null);
+    }
+
+    /**
+     * Counts, for every node, the traces from any of the sources to that node with a total latency below the given
+     * limit, within the limits of the given query context.
+     *
+     * @param graph      the graph to count in
+     * @param sources    the ids of the start nodes
+     * @param maxLatency the exclusive latency limit
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces per end node
+     * @throws ArithmeticException          if an intermediate count does not fit in a long
+     * @throws IllegalStateException        if a trace can loop through a cycle of zero-latency edges
+     * @throws IllegalArgumentException     if the graph has a negative edge latency
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public static long[] countAll(CompiledGraph graph, int[] sources, int maxLatency, QueryContext context) {
+        return sweep(graph, sources, null, maxLatency, new int[0], new int[0], new long[0], context);
+    }
+
+    /**
+     * Counts, for every node, the traces from the source to that node with at most the given number of hops and a total
+     * latency below the given limit.
+     *
+     * @param graph      the graph to count in
+     * @param source     the id of the start node
+     * @param maxHops    the maximum number of hops
+     * @param maxLatency the exclusive latency limit
+     * @return the number of traces per end node
+     * @throws ArithmeticException      if an intermediate count does not fit in a long
+     * @throws IllegalArgumentException if the graph has a negative edge latency or the table would be too large
+     */
+    public static long[] countAllWithMaxHops(CompiledGraph graph, int source, int maxHops, int maxLatency) {
+        return countAllWithMaxHops(graph, source, maxHops, maxLatency, null);
+    }
+
+    /**
+     * Counts, for every node, the traces from the source to that node with at most the given number of hops and a total
+     * latency below the given limit, within the limits of the given query context. Walk counts per (node, latency) are
+     * pushed one hop at a time between two rolling tables, so memory stays at {@code 2 * nodes * maxLatency} counts
+     * and a sweep costs O(maxHops * edges * maxLatency). Both limits bound the walks, so zero-latency edges and cycles
+     * are counted like any other; a trace has at least one hop.
+     *
+     * @param graph      the graph to count in
+     * @param source     the id of the start node
+     * @param maxHops    the maximum number of hops
+     * @param maxLatency the exclusive latency limit
+     * @param context    the limits of the query, or null for none
+     * @return the number of traces per end node
+     * @throws ArithmeticException          if an intermediate count does not fit in a long
+     * @throws IllegalArgumentException     if the graph has a negative edge latency or the table would be too large
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the counts of the finished hops
+     */
+    public static long[] countAllWithMaxHops(CompiledGraph graph, int source, int maxHops, int maxLatency,
+                                             QueryContext context) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        long[] totals = new long[n];
+        if (maxHops <= 0 || maxLatency <= 0) {
+            return totals;
+        }
+        for (int latency : latencies) {
+            if (latency < 0) {
+                throw new IllegalArgumentException("Negative edge latency: " + latency);
+            }
+        }
+        if ((long) n * maxLatency > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Table of " + n + " nodes and " + maxLatency + " latencies is too large");
+        }
+
+        int width = maxLatency;
+        long[] current = new long[n * width];
+        long[] next = new long[n * width];
+        int[] active = new int[n];
+        int[] reached = new int[n];
+        int[] marks = new int[n];
+        current[source * width] = 1;
+        active[0] = source;
+        int activeCount = 1;
+
+        long expanded = 0;
+        long relaxed = 0;
+        int peak = 0;
+        for (int hop = 1; hop <= maxHops && activeCount > 0; hop++) {
+            int reachedCount = 0;
+            long work = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int u = active[i];
+                int row = u * width;
+                work += 2L * width;
+                int low = 0;
+                while (current[row + low] == 0) {
+                    low++;
+                }
+                relaxed += offsets[u + 1] - offsets[u];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int latency = latencies[e];
+                    if (low + latency >= width) {
+                        continue;
+                    }
+                    int v = targets[e];
+                    if (marks[v] != hop) {
+                        marks[v] = hop;
+                        reached[reachedCount++] = v;
+                    }
+                    int shifted = v * width + latency;
+                    work += width - latency - low;
+                    for (int l = low; l + latency < width; l++) {
+                        long walks = current[row + l];
+                        if (walks != 0) {
+                            next[shifted + l] = Math.addExact(next[shifted + l], walks);
+                        }
+                    }
+                }
+                Arrays.fill(current, row, row + width, 0);
+            }
+            for (int i = 0; i < reachedCount; i++) {
+                int v = reached[i];
+                long sum = totals[v];
+                for (int l = v * width; l < (v + 1) * width; l++) {
+                    sum = Math.addExact(sum, next[l]);
+                }
+                totals[v] = sum;
+            }
+            work += (long) reachedCount * width;
+            expanded += activeCount;
+            peak = Math.max(peak, reachedCount);
+            QueryContext.charge(context, work + 1, totals);
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+            int[] swapNodes = active;
+            active = reached;
+            reached = swapNodes;
+            activeCount = reachedCount;
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+        return totals;
+    }
+
+    /**
+     * Counts the traces from the source for several (target, latency limit) pairs in one sweep up to the largest
+     * limit.
+     *
+     * @param graph   the graph to count in
+     * @param source  the id of the start node
+     * @param targets the ids of the end nodes, one per pair
+     * @param limits  the exclusive latency limits, one per pair
+     * @param context the limits of the query, or null for none
+     * @return the number of traces per pair
+     * @throws ArithmeticException          if an intermediate count does not fit in a long
+     * @throws IllegalStateException        if a trace can loop through a cycle of zero-latency edges
+     * @throws QueryBudgetExceededException if the query runs out of budget
+     */
+    public static long[] countForLimits(CompiledGraph graph, int source, int[] targets, int[] limits,
+                                        QueryContext context) {
+        int maxLatency = 0;
+        for (int limit : limits) {
+            maxLatency = Math.max(maxLatency, limit);
+        }
+        Integer[] order = new Integer[limits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(limits[a], limits[b]));
+        int[] sortedTargets = new int[order.length];
+        int[] sortedLimits = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTargets[i] = targets[order[i]];
+            sortedLimits[i] = limits[order[i]];
+        }
+        long[] sortedCounts = new long[order.length];
+        sweep(graph, new int[]{source}, sortedTargets, maxLatency, sortedTargets, sortedLimits, sortedCounts, context);
+        long[] counts = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            counts[order[i]] = sortedCounts[i];
+        }
+        return counts;
+    }
+
+    /**
+     * Pushes walk counts through the latency layers up to the given limit. The sources are seeded with their first
+     * hops, so every counted walk has at least one hop whatever its latency, and only the nodes on some walk from the
+     * sources to the ends are swept. Whenever the sweep reaches the limit of a requested (target, limit) pair, the
+     * running total of that target is recorded for it.
+     *
+     * @param graph       the graph to count in
+     * @param sources     the ids of the start nodes
+     * @param ends        the ids of the end nodes whose counts are needed, or null for every node
+     * @param maxLatency  the exclusive latency limit of the sweep
+     * @param pairTargets the end nodes of the requested pairs
+     * @param pairLimits  the latency limits of the requested pairs in ascending order, none above
+     *                    {@code maxLatency}
+     * @param pairCounts  the array receiving the count per requested pair
+     * @param context     the limits of the query, or null for none
+     * @return the number of traces per end node below {@code maxLatency}, exact for the requested end nodes
+     * @throws IllegalStateException        if zero-latency edges on a walk from the sources to the ends form a cycle
+     * @throws QueryBudgetExceededException if the query runs out of budget, carrying the counts of the finished
+     *                                      layers
+     */
+    private static long[] sweep(CompiledGraph graph, int[] sources, int[] ends, int maxLatency, int[] pairTargets,
+                                int[] pairLimits, long[] pairCounts, QueryContext context) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        long[] totals = new long[n];
+        int pair = 0;
+        if (maxLatency <= 0) {
+            return totals;
+        }
+
+        int maxEdgeLatency = 0;
+        for (int latency : latencies) {
+            if (latency < 0) {
+                throw new IllegalArgumentException("Negative edge latency: " + latency);
+            }
+            if (latency < maxLatency) {
+                maxEdgeLatency = Math.max(maxEdgeLatency, latency);
+            }
+        }
+        int[] order = zeroLatencyOrder(graph, sources, ends);
+        boolean[] relevant = new boolean[n];
+        for (int u : order) {
+            relevant[u] = true;
+        }
+        int ring = Math.min(maxEdgeLatency + 1, maxLatency);
+        long[][] layers = new long[ring][n];
+
+        long expanded = sources.length;
+        long relaxed = 0;
+        int peak = 0;
+        for (int source : sources) {
+            relaxed += offsets[source + 1] - offsets[source];
+            for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+                int v = targets[e];
+                if (latencies[e] < maxLatency && relevant[v]) {
+                    long[] next = layers[latencies[e] % ring];
+                    next[v] = Math.addExact(next[v], 1);
+                }
+            }
+        }
+        QueryContext.charge(context, expanded + relaxed, totals);
+        for (int latency = 0; latency < maxLatency; latency++) {
+            for (; pair < pairLimits.length && pairLimits[pair] <= latency; pair++) {
+                pairCounts[pair] = totals[pairTargets[pair]];
+            }
+            long[] layer = layers[latency % ring];
+            int active = 0;
+            long scanned = relaxed;
+            for (int u : order) {
+                long walks = layer[u];
+                if (walks == 0) {
+                    continue;
+                }
+                layer[u] = 0;
+                active++;
+                relaxed += offsets[u + 1] - offsets[u];
+                totals[u] = Math.addExact(totals[u], walks);
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int reached = latency + latencies[e];
+                    int v = targets[e];
+                    if (reached < maxLatency && relevant[v]) {
+                        long[] next = layers[reached % ring];
+                        next[v] = Math.addExact(next[v], walks);
+                    }
+                }
+            }
+            expanded += active;
+            peak = Math.max(peak, active);
+            QueryContext.charge(context, order.length + relaxed - scanned, totals);
+        }
+        for (; pair < pairLimits.length; pair++) {
+            pairCounts[pair] = totals[pairTargets[pair]];
+        }
+        QueryMetrics.record(expanded, relaxed, peak);
+        return totals;
+    }
+
+    /**
+     * Collects the nodes that lie on some walk from the sources to the ends and orders them so that every zero-latency
+     * edge between them points forward, which lets counts flow along such edges within a single latency layer. Only
+     * these nodes can carry walks that end in an end node, so zero-latency cycles elsewhere in the graph do not make
+     * the counts unbounded.
+     *
+     * @param graph   the graph to order
+     * @param sources the ids of the start nodes
+     * @param ends    the ids of the end nodes, or null for every node
+     * @return the relevant nodes in order
+     * @throws IllegalStateException if zero-latency edges between relevant nodes form a cycle
+     */
+    static int[] zeroLatencyOrder(CompiledGraph graph, int[] sources, int[] ends) {
+        int n = graph.nodeCount();
+        boolean[] relevant = reachable(graph, sources);
+        if (ends != null) {
+            boolean[] reaching = reachable(graph.reversed(), ends);
+            for (int u = 0; u < n; u++) {
+                relevant[u] &= reaching[u];
+            }
+        }
+        int[] inDegree = new int[n];
+        int count = 0;
+        for (int u = 0; u < n; u++) {
+            if (!relevant[u]) {
+                continue;
+            }
+            count++;
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                if (graph.latencies[e] == 0 && relevant[graph.targets[e]]) {
+                    inDegree[graph.targets[e]]++;
+                }
+            }
+        }
+        int[] order = new int[count];
+        int head = 0;
+        int tail = 0;
+        for (int u = 0; u < n; u++) {
+            if (relevant[u] && inDegree[u] == 0) {
+                order[tail++] = u;
+            }
+        }
+        while (head < tail) {
+            int u = order[head++];
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int v = graph.targets[e];
+                if (graph.latencies[e] == 0 && relevant[v] && --inDegree[v] == 0) {
+                    order[tail++] = v;
+                }
+            }
+        }
+        if (tail < count) {
+            throw new IllegalStateException("Zero-latency cycles make latency-bounded trace counts unbounded");
+        }
+        return order;
+    }
+
+    /**
+     * Marks the nodes reachable from the given nodes, including themselves.
+     *
+     * @param graph the graph to search
+     * @param from  the ids of the start nodes
+     * @return whether each node is reachable
+     */
+    private static boolean[] reachable(CompiledGraph graph, int[] from) {
+        boolean[] seen = new boolean[graph.nodeCount()];
+        int[] queue = new int[graph.nodeCount()];
+        int tail = 0;
+        for (int u : from) {
+            if (!seen[u]) {
+                seen[u] = true;
+                queue[tail++] = u;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int u = queue[head];
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int v = graph.targets[e];
+                if (!seen[v]) {
+                    seen[v] = true;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,199 @@
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Answers shortest-latency lookups from precomputed single-source results. A dense index holds the latencies of all
+ * pairs in one flat {@code int[]} matrix built in parallel on the fork/join pool. A sparse index computes and caches
+ * one row per source on first use, for graphs where only some sources are ever asked about. A mapped index reads the
+ * same matrix straight from a memory-mapped {@link GraphSnapshot}.
+ * <p>
+ * Lookups keep the semantics of {@link InstanaTracer#shortestLatency(String, String)}, including returning the shortest
+ * cycle when the start and end node are the same.
+ */
+public final class LatencyIndex {
+
+    /**
+     * The latency reported for pairs without a trace.
+     */
+    public static final int NO_TRACE = -1;
+
+    private static final int SOURCES_PER_TASK = 16;
+
+    private final CompiledGraph graph;
+    private final int[] matrix;
+    private final IntBuffer mapped;
+    private final AtomicReferenceArray<int[]> rows;
+
+    private LatencyIndex(CompiledGraph graph, int[] matrix, IntBuffer mapped, AtomicReferenceArray<int[]> rows) {
+        this.graph = graph;
+        this.matrix = matrix;
+        this.mapped = mapped;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds a dense index over all pairs on the common fork/join pool.
+     *
+     * @param graph the graph to index
+     * @return the dense index
+     * @throws IllegalArgumentException if the matrix would exceed the maximum array size
+     */
+    public static LatencyIndex dense(CompiledGraph graph) {
+        return dense(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a dense index over all pairs on the given fork/join pool.
+     *
+     * @param graph the graph to index
+     * @param pool  the pool running the single-source searches
+     * @return the dense index
+     * @throws IllegalArgumentException if the matrix would exceed the maximum array size
+     */
+    public static LatencyIndex dense(CompiledGraph graph, ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        if ((long) n * n > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many nodes for a dense latency index: " + n);
+        }
+        int[] matrix = new int[n * n];
+        pool.invoke(new RowTask(graph, matrix, 0, n));
+        return new LatencyIndex(graph, matrix, null, null);
+    }
+
+    /**
+     * Creates a sparse index that computes the row of a source on its first lookup and caches it.
+     *
+     * @param graph the graph to index
+     * @return the sparse index
+     */
+    public static LatencyIndex sparse(CompiledGraph graph) {
+        return new LatencyIndex(graph, null, null, new AtomicReferenceArray<>(graph.nodeCount()));
+    }
+
+    /**
+     * Creates a dense index that reads its matrix from the given buffer without copying it.
+     *
+     * @param graph  the graph to index
+     * @param matrix the latencies of all pairs, row by row
+     * @return the mapped index
+     */
+    static LatencyIndex mapped(CompiledGraph graph, IntBuffer matrix) {
+        return new LatencyIndex(graph, null, matrix, null);
+    }
+
+    /**
+     * Returns the graph this index was built for.
+     *
+     * @return the indexed graph
+     */
+    public CompiledGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the shortest latency between two nodes.
+     *
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return the shortest latency, or {@link #NO_TRACE} if no trace exists
+     */
+    public int latency(int source, int target) {
+        if (matrix != null) {
+            return matrix[source * graph.nodeCount() + target];
+        }
+        if (mapped != null) {
+            return mapped.get(source * graph.nodeCount() + target);
+        }
+        return row(source)[target];
+    }
+
+    /**
+     * Returns the all-pairs matrix of a dense or mapped index.
+     *
+     * @return the latencies of all pairs, row by row, or null for a sparse index
+     */
+    IntBuffer denseMatrix() {
+        if (matrix != null) {
+            return IntBuffer.wrap(matrix);
+        }
+        return mapped != null ? mapped.duplicate() : null;
+    }
+
+    /**
+     * Returns the shortest latency between two named nodes.
+     *
+     * @param startName the name of the start node
+     * @param endName   the name of the end node
+     * @return the shortest latency as a string, or "NO SUCH TRACE" if no trace exists
+     */
+    public String shortestLatency(String startName, String endName) {
+        int source = graph.id(startName);
+        int target = graph.id(endName);
+        int latency = source < 0 || target < 0 ? NO_TRACE : latency(source, target);
+        return latency == NO_TRACE ? "NO SUCH TRACE" : Integer.toString(latency);
+    }
+
+    private int[] row(int source) {
+        int[] row = rows.get(source);
+        if (row == null) {
+            row = new int[graph.nodeCount()];
+            computeRow(graph, source, row);
+            rows.compareAndSet(source, null, row);
+            row = rows.get(source);
+        }
+        return row;
+    }
+
+    private static void computeRow(CompiledGraph graph, int source, int[] row) {
+        ShortestLatencyEngine.current().latenciesFrom(graph, source, row);
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == ShortestLatencyEngine.UNREACHABLE) {
+                row[i] = NO_TRACE;
+            }
+        }
+    }
+
+    /**
+     * Computes a range of matrix rows, splitting the range until it is small enough to run on one worker.
+     */
+    static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final CompiledGraph graph;
+        final int[] matrix;
+        final int from;
+        final int to;
+
+        /**
+         * Constructs a RowTask for the sources in the given range.
+         *
+         * @param graph  the graph to search
+         * @param matrix the matrix receiving the rows
+         * @param from   the first source, inclusive
+         * @param to     the last source, exclusive
+         */
+        RowTask(CompiledGraph graph, int[] matrix, int from, int to) {
+            this.graph = graph;
+            this.matrix = matrix;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SOURCES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(graph, matrix, from, middle), new RowTask(graph, matrix, middle, to));
+                return;
+            }
+            int n = graph.nodeCount();
+            int[] row = new int[n];
+            for (int source = from; source < to; source++) {
+                computeRow(graph, source, row);
+                System.arraycopy(row, 0, matrix, source * n, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Holds the current version of a graph that changes while it is being queried. Every change publishes a new immutable
+ * {@link CompiledGraph} through a volatile reference, so readers take a consistent snapshot without any locking and
+ * keep using it while writers move on.
+ * <p>
+ * Writers enqueue their edits and then take turns publishing: whichever writer holds the publish lock drains every
+ * edit queued so far and applies them in one copy-on-write pass. Under a heavy update rate many edits therefore share
+ * one copy of the arrays instead of copying them once per edit.
+ */
+public final class LiveGraph {
+
+    private final ConcurrentLinkedQueue<Edit> pending = new ConcurrentLinkedQueue<>();
+    private final Object publishLock = new Object();
+    private volatile CompiledGraph current;
+
+    /**
+     * Constructs an empty LiveGraph.
+     */
+    public LiveGraph() {
+        this(CompiledGraph.builder().build());
+    }
+
+    /**
+     * Constructs a LiveGraph starting from the given graph.
+     *
+     * @param initial the initial graph
+     */
+    public LiveGraph(CompiledGraph initial) {
+        this.current = initial;
+    }
+
+    /**
+     * Returns the current snapshot of the graph.
+     *
+     * @return the current graph
+     */
+    public CompiledGraph snapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the version of the current snapshot.
+     *
+     * @return the current version
+     */
+    public long version() {
+        return current.version;
+    }
+
+    /**
+     * Replaces the whole graph, publishing it as the next version.
+     *
+     * @param graph the new graph
+     * @return the published graph, which shares the arrays of the given graph
+     */
+    public CompiledGraph replace(CompiledGraph graph) {
+        synchronized (publishLock) {
+            drain();
+            current = graph.withVersion(current.version + 1);
+            return current;
+        }
+    }
+
+    /**
+     * Adds an edge, creating its nodes if needed.
+     *
+     * @param from    the name of the source node
+     * @param to      the name of the destination node
+     * @param latency the latency of the edge
+     */
+    public void addEdge(String from, String to, int latency) {
+        apply(new Edit(Edit.ADD, from, to, latency));
+    }
+
+    /**
+     * Removes every edge from one node to another. The nodes themselves are kept.
+     *
+     * @param from the name of the source node
+     * @param to   the name of the destination node
+     * @return true if an edge was removed
+     */
+    public boolean removeEdge(String from, String to) {
+        Edit edit = new Edit(Edit.REMOVE, from, to, 0);
+        apply(edit);
+        return edit.applied;
+    }
+
+    /**
+     * Sets the latency of every edge from one node to another.
+     *
+     * @param from    the name of the source node
+     * @param to      the name of the destination node
+     * @param latency the new latency
+     * @return true if an edge was updated
+     */
+    public boolean updateLatency(String from, String to, int latency) {
+        Edit edit = new Edit(Edit.UPDATE, from, to, latency);
+        apply(edit);
+        return edit.applied;
+    }
+
+    /**
+     * Starts a batch of edits that is published as one version.
+     *
+     * @return a new batch
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    private void apply(Edit... edits) {
+        pending.addAll(Arrays.asList(edits));
+        synchronized (publishLock) {
+            drain();
+        }
+    }
+
+    /**
+     * Applies every queued edit to the current graph and publishes the result. Must hold the publish lock.
+     */
+    private void drain() {
+        List<Edit> edits = new ArrayList<>();
+        for (Edit edit = pending.poll(); edit != null; edit = pending.poll()) {
+            edits.add(edit);
+        }
+        if (!edits.isEmpty()) {
+            current = applyEdits(current, edits);
+        }
+    }
+
+    /**
+     * Builds the next version of a graph by copying the edge ranges of untouched nodes and rewriting the touched ones.
+     *
+     * @param base  the graph to start from
+     * @param edits the edits to apply, in order
+     * @return the next version of the graph, or the base graph if no edit changed anything
+     */
+    static CompiledGraph applyEdits(CompiledGraph base, List<Edit> edits) {
+        NameDictionary names = base.names;
+        boolean namesCopied = false;
+        Map<Integer, EdgeList> touched = new HashMap<>();
+        boolean changed = false;
+        for (Edit edit : edits) {
+            int from = names.id(edit.from);
+            int to = names.id(edit.to);
+            if (from < 0 || to < 0) {
+                if (edit.kind != Edit.ADD) {
+                    continue;
+                }
+                if (!namesCopied) {
+                    names = names.copy();
+                    namesCopied = true;
+                }
+                from = names.intern(edit.from);
+                to = names.intern(edit.to);
+            }
+            EdgeList edges = touched.get(from);
+            if (edges == null) {
+                edges = new EdgeList(base, from);
+                touched.put(from, edges);
+            }
+            edit.applied = edges.apply(edit.kind, to, edit.latency);
+            changed |= edit.applied;
+        }
+        if (!changed) {
+            return base;
+        }
+
+        int baseNodes = base.nodeCount();
+        int n = names.size();
+        int[] offsets = new int[n + 1];
+        for (int node = 0; node < n; node++) {
+            EdgeList edges = touched.get(node);
+            int degree = edges != null ? edges.size : node < baseNodes ? base.offsets[node + 1] - base.offsets[node] : 0;
+            offsets[node + 1] = offsets[node] + degree;
+        }
+        int[] targets = new int[offsets[n]];
+        int[] latencies = new int[offsets[n]];
+        int runStart = 0;
+        for (int node = 0; node <= n; node++) {
+            EdgeList edges = node < n ? touched.get(node) : null;
+            if (edges == null && node < n) {
+                continue;
+            }
+            int runEnd = Math.min(node, baseNodes);
+            if (runStart < runEnd) {
+                int length = base.offsets[runEnd] - base.offsets[runStart];
+                System.arraycopy(base.targets, base.offsets[runStart], targets, offsets[runStart], length);
+                System.arraycopy(base.latencies, base.offsets[runStart], latencies, offsets[runStart], length);
+            }
+            if (edges != null) {
+                System.arraycopy(edges.targets, 0, targets, offsets[node], edges.size);
+                System.arraycopy(edges.latencies, 0, latencies, offsets[node], edges.size);
+            }
+            runStart = node + 1;
+        }
+        return new CompiledGraph(names, offsets, targets, latencies, base.version + 1);
+    }
+
+    /**
+     * Collects edits that are published together as one version.
+     */
+    public final class Batch {
+        private final List<Edit> edits = new ArrayList<>();
+
+        /**
+         * Adds an edge, creating its nodes if needed.
+         *
+         * @param from    the name of the source node
+         * @param to      the name of the destination node
+         * @param latency the latency of the edge
+         * @return this batch
+         */
+        public Batch addEdge(String from, String to, int latency) {
+            edits.add(new Edit(Edit.ADD, from, to, latency));
+            return this;
+        }
+
+        /**
+         * Removes every edge from one node to another.
+         *
+         * @param from the name of the source node
+         * @param to   the name of the destination node
+         * @return this batch
+         */
+        public Batch removeEdge(String from, String to) {
+            edits.add(new Edit(Edit.REMOVE, from, to, 0));
+            return this;
+        }
+
+        /**
+         * Sets the latency of every edge from one node to another.
+         *
+         * @param from    the name of the source node
+         * @param to      the name of the destination node
+         * @param latency the new latency
+         * @return this batch
+         */
+        public Batch updateLatency(String from, String to, int latency) {
+            edits.add(new Edit(Edit.UPDATE, from, to, latency));
+            return this;
+        }
+
+        /**
+         * Publishes the edits of this batch. They become visible to readers all at once.
+         *
+         * @return the snapshot containing the edits
+         */
+        public CompiledGraph commit() {
+            synchronized (publishLock) {
+                drain();
+                if (!edits.isEmpty()) {
+                    current = applyEdits(current, edits);
+                }
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Represents a single queued change to the graph.
+     */
+    static class Edit {
+        static final int ADD = 0;
+        static final int REMOVE = 1;
+        static final int UPDATE = 2;
+
+        final int kind;
+        final String from;
+        final String to;
+        final int latency;
+        boolean applied;
+
+        /**
+         * Constructs an Edit.
+         *
+         * @param kind    the kind of change
+         * @param from    the name of the source node
+         * @param to      the name of the destination node
+         * @param latency the latency for additions and updates
+         */
+        Edit(int kind, String from, String to, int latency) {
+            this.kind = kind;
+            this.from = from;
+            this.to = to;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Holds the outgoing edges of one node while edits are applied to it.
+     */
+    static class EdgeList {
+        int[] targets;
+        int[] latencies;
+        int size;
+
+        /**
+         * Constructs an EdgeList holding the current edges of the given node.
+         *
+         * @param base the graph to copy the edges from
+         * @param node the id of the node, which may not exist in the graph yet
+         */
+        EdgeList(CompiledGraph base, int node) {
+            if (node < base.nodeCount()) {
+                int start = base.offsets[node];
+                size = base.offsets[node + 1] - start;
+                targets = Arrays.copyOfRange(base.targets, start, start + size + 1);
+                latencies = Arrays.copyOfRange(base.latencies, start, start + size + 1);
+            } else {
+                targets = new int[1];
+                latencies = new int[1];
+            }
+        }
+
+        /**
+         * Applies one edit to the edges of this node.
+         *
+         * @param kind    the kind of change
+         * @param to      the id of the destination node
+         * @param latency the latency for additions and updates
+         * @return true if the edit changed an edge
+         */
+        boolean apply(int kind, int to, int latency) {
+            if (kind == Edit.ADD) {
+                if (size == targets.length) {
+                    targets = Arrays.copyOf(targets, size * 2);
+                    latencies = Arrays.copyOf(latencies, size * 2);
+                }
+                targets[size] = to;
+                latencies[size] = latency;
+                size++;
+                return true;
+            }
+            boolean changed = false;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == to) {
+                    changed = true;
+                    if (kind == Edit.REMOVE) {
+                        continue;
+                    }
+                    latencies[i] = latency;
+                }
+                targets[kept] = targets[i];
+                latencies[kept] = latencies[i];
+                kept++;
+            }
+            size = kept;
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns node names to dense int ids. Names are kept as UTF-8 bytes in a single pool and indexed by an open-addressing
+ * hash table, so names can be interned straight from raw input bytes without creating a String per token.
+ */
+public final class NameDictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    byte[] pool;
+    int poolSize;
+    int[] starts;
+    int[] hashes;
+    int[] table;
+    private int size;
+    private String[] strings;
+
+    /**
+     * Constructs an empty NameDictionary.
+     */
+    public NameDictionary() {
+        this.pool = new byte[INITIAL_CAPACITY * 8];
+        this.starts = new int[INITIAL_CAPACITY + 1];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.strings = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Constructs a NameDictionary from already built arrays, such as those of a {@link GraphSnapshot}.
+     *
+     * @param pool     the UTF-8 bytes of all names
+     * @param poolSize the number of used bytes of the pool
+     * @param starts   the start of every name in the pool, followed by the end of the last one
+     * @param hashes   the hash of every name
+     * @param table    the open-addressing table holding {@code id + 1} per used slot
+     * @param size     the number of names
+     */
+    NameDictionary(byte[] pool, int poolSize, int[] starts, int[] hashes, int[] table, int size) {
+        int capacity = Math.max(hashes.length, INITIAL_CAPACITY);
+        this.pool = pool;
+        this.poolSize = poolSize;
+        this.starts = Arrays.copyOf(starts, capacity + 1);
+        this.hashes = Arrays.copyOf(hashes, capacity);
+        this.table = table;
+        this.size = size;
+        this.strings = new String[capacity];
+    }
+
+    private NameDictionary(NameDictionary other) {
+        this.pool = Arrays.copyOf(other.pool, Math.max(other.poolSize, 1));
+        this.poolSize = other.poolSize;
+        this.starts = Arrays.copyOf(other.starts, other.starts.length);
+        this.hashes = Arrays.copyOf(other.hashes, other.hashes.length);
+        this.table = other.table.clone();
+        this.size = other.size;
+        this.strings = Arrays.copyOf(other.strings, other.strings.length);
+    }
+
+    /**
+     * Returns the number of interned names.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of the given name.
+     *
+     * @param name the name to look up
+     * @return the id of the name, or -1 if the name is unknown
+     */
+    public int id(String name) {
+        if (name == null) {
+            return -1;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return find(bytes, 0, bytes.length, hash(bytes, 0, bytes.length));
+    }
+
+    /**
+     * Returns the id of the name stored in the given byte range.
+     *
+     * @param bytes  the buffer holding the UTF-8 encoded name
+     * @param offset the offset of the name in the buffer
+     * @param length the length of the name in bytes
+     * @return the id of the name, or -1 if the name is unknown
+     */
+    public int id(byte[] bytes, int offset, int length) {
+        return find(bytes, offset, length, hash(bytes, offset, length));
+    }
+
+    /**
+     * Returns the name with the given id.
+     *
+     * @param id the id of the name
+     * @return the name
+     */
+    public String name(int id) {
+        String name = strings[id];
+        if (name == null) {
+            name = new String(pool, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+            strings[id] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Interns the given name and returns its id.
+     *
+     * @param name the name to intern
+     * @return the id of the name
+     */
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int id = intern(bytes, 0, bytes.length);
+        if (strings[id] == null) {
+            strings[id] = name;
+        }
+        return id;
+    }
+
+    /**
+     * Interns the name stored in the given byte range and returns its id.
+     *
+     * @param bytes  the buffer holding the UTF-8 encoded name
+     * @param offset the offset of the name in the buffer
+     * @param length the length of the name in bytes
+     * @return the id of the name
+     */
+    public int intern(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int id = find(bytes, offset, length, hash);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == hashes.length) {
+            int capacity = hashes.length * 2;
+            starts = Arrays.copyOf(starts, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(bytes, offset, pool, poolSize, length);
+        poolSize += length;
+        id = size++;
+        hashes[id] = hash;
+        starts[id + 1] = poolSize;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(id, hash);
+        }
+        return id;
+    }
+
+    /**
+     * Interns a name of another dictionary into this one and returns its id here.
+     *
+     * @param other the dictionary holding the name
+     * @param id    the id of the name in the other dictionary
+     * @return the id of the name in this dictionary
+     */
+    public int intern(NameDictionary other, int id) {
+        return intern(other.pool, other.starts[id], other.starts[id + 1] - other.starts[id]);
+    }
+
+    /**
+     * Returns an independent copy of this dictionary that can be extended without affecting this one.
+     *
+     * @return a copy of this dictionary
+     */
+    public NameDictionary copy() {
+        return new NameDictionary(this);
+    }
+
+    private int find(byte[] bytes, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(id, bytes, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    private boolean matches(int id, byte[] bytes, int offset, int length) {
+        int start = starts[id];
+        if (starts[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (pool[start + i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int id, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(id, hashes[id]);
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.Arrays;
+
+/**
+ * The product of a {@link CompiledGraph} with the automaton of a {@link TracePattern}, so that pattern queries run on
+ * the existing engines instead of enumerating traces. A product node pairs a graph node with the automaton state
+ * reached after reading the trace up to it, and a product edge follows a graph edge with its latency. Node 0 is a
+ * virtual source standing for every matching start node: its edges are the first hops of the matching traces, so the
+ * walks from it to an accepting product node correspond one to one to the matching traces, with the same hops and
+ * latency. Only product nodes reachable from the source are built, which bounds the product by
+ * {@code nodes * states} nodes and {@code edges * states} edges.
+ */
+final class PatternProduct {
+
+    /**
+     * The id of the virtual source node.
+     */
+    static final int SOURCE = 0;
+
+    private final CompiledGraph product;
+    private final int[] accepting;
+
+    /**
+     * Constructs a PatternProduct.
+     *
+     * @param product   the product graph
+     * @param accepting the ids of the product nodes whose state accepts
+     */
+    private PatternProduct(CompiledGraph product, int[] accepting) {
+        this.product = product;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Builds the part of the product reachable from the matching start nodes, within the limits of the given query
+     * context.
+     *
+     * @param graph   the graph to match in
+     * @param pattern the pattern the traces must match
+     * @param context the limits of the query, or null for none
+     * @return the product
+     * @throws QueryBudgetExceededException if the construction runs out of budget
+     */
+    static PatternProduct build(CompiledGraph graph, TracePattern pattern, QueryContext context) {
+        int n = graph.nodeCount();
+        int states = pattern.stateCount();
+        String[] names = pattern.names();
+        int other = names.length;
+        int[] symbols = new int[n];
+        Arrays.fill(symbols, other);
+        for (int symbol = 0; symbol < names.length; symbol++) {
+            int node = graph.id(names[symbol]);
+            if (node >= 0) {
+                symbols[node] = symbol;
+            }
+        }
+
+        IdTable ids = new IdTable();
+        LongList keys = new LongList();
+        IntList offsets = new IntList();
+        IntList targets = new IntList();
+        IntList latencies = new IntList();
+        IntList accepting = new IntList();
+        keys.add(-1);
+        offsets.add(0);
+        for (int u = 0; u < n; u++) {
+            if (pattern.step(0, other) == TracePattern.DEAD && symbols[u] == other) {
+                continue;
+            }
+            int state = pattern.step(0, symbols[u]);
+            if (state != TracePattern.DEAD) {
+                follow(graph, pattern, symbols, u, state, ids, keys, targets, latencies, accepting);
+            }
+        }
+        offsets.add(targets.size);
+        for (int p = 1; p < keys.size; p++) {
+            QueryContext.charge(context, 1);
+            long key = keys.values[p];
+            follow(graph, pattern, symbols, (int) (key / states), (int) (key % states), ids, keys, targets, latencies,
+                    accepting);
+            offsets.add(targets.size);
+        }
+        CompiledGraph product = new CompiledGraph(new NameDictionary(), offsets.toArray(), targets.toArray(),
+                latencies.toArray());
+        return new PatternProduct(product, accepting.toArray());
+    }
+
+    /**
+     * Appends the product edges that follow the graph edges of a node in the given state, adding the product nodes
+     * they reach.
+     */
+    private static void follow(CompiledGraph graph, TracePattern pattern, int[] symbols, int u, int state, IdTable ids,
+                               LongList keys, IntList targets, IntList latencies, IntList accepting) {
+        int states = pattern.stateCount();
+        for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+            int v = graph.targets[e];
+            int next = pattern.step(state, symbols[v]);
+            if (next == TracePattern.DEAD) {
+                continue;
+            }
+            long key = (long) v * states + next;
+            int id = ids.get(key);
+            if (id < 0) {
+                id = keys.size;
+                ids.put(key, id);
+                keys.add(key);
+                if (pattern.accepting(next)) {
+                    accepting.add(id);
+                }
+            }
+            targets.add(id);
+            latencies.add(graph.latencies[e]);
+        }
+    }
+
+    /**
+     * Returns the product graph.
+     *
+     * @return the product graph
+     */
+    CompiledGraph graph() {
+        return product;
+    }
+
+    /**
+     * Decides whether any trace matches.
+     *
+     * @return true if an accepting product node is reachable
+     */
+    boolean exists() {
+        return accepting.length > 0;
+    }
+
+    /**
+     * Counts the matching traces with at most the given number of hops.
+     *
+     * @param maxHops the maximum number of hops
+     * @param context the limits of the query, or null for none
+     * @return the number of matching traces
+     * @throws ArithmeticException          if the number of traces does not fit in a long
+     * @throws QueryBudgetExceededException if the count runs out of budget
+     */
+    long countMaxHops(int maxHops, QueryContext context) {
+        return sum(HopCounter.countAll(product, new int[]{SOURCE}, 1, maxHops, context));
+    }
+
+    /**
+     * Counts the matching traces with a total latency below the given limit.
+     *
+     * @param maxLatency the exclusive latency limit
+     * @param context    the limits of the query, or null for none
+     * @return the number of matching traces
+     * @throws ArithmeticException          if the number of traces does not fit in a long
+     * @throws IllegalStateException        if the matching traces can loop through zero-latency edges
+     * @throws QueryBudgetExceededException if the count runs out of budget
+     */
+    long countMaxLatency(int maxLatency, QueryContext context) {
+        return sum(LatencyCounter.countAll(product, new int[]{SOURCE}, maxLatency, context));
+    }
+
+    /**
+     * Finds the shortest positive latency of a matching trace, with the semantics of {@link ShortestLatencyEngine}:
+     * the smallest positive {@code dist(u) + latency(u, v)} over the product edges into an accepting node, so a match
+     * that follows only zero-latency edges is not found.
+     *
+     * @param context the limits of the query, or null for none
+     * @return the shortest latency, or {@link ShortestLatencyEngine#UNREACHABLE}
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    int shortestLatency(QueryContext context) {
+        if (accepting.length == 0) {
+            return ShortestLatencyEngine.UNREACHABLE;
+        }
+        int[] row = new int[product.nodeCount()];
+        ShortestLatencyEngine.current().latenciesFrom(product, SOURCE, row, context);
+        int best = ShortestLatencyEngine.UNREACHABLE;
+        for (int node : accepting) {
+            best = Math.min(best, row[node]);
+        }
+        return best;
+    }
+
+    private long sum(long[] counts) {
+        long total = 0;
+        for (int node : accepting) {
+            total = Math.addExact(total, counts[node]);
+        }
+        return total;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        /**
+         * Appends a value.
+         *
+         * @param value the value
+         */
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A growable list of longs.
+     */
+    private static final class LongList {
+        long[] values = new long[16];
+        int size;
+
+        /**
+         * Appends a value.
+         *
+         * @param value the value
+         */
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * An open-addressing hash table from a (node, state) key to the id of its product node, so that memory grows with
+     * the reachable part of the product rather than with {@code nodes * states}. Keys and ids sit in parallel
+     * primitive arrays at a load factor of at most one half, probed linearly.
+     */
+    private static final class IdTable {
+        private long[] keys = new long[16];
+        private int[] ids = filled(16);
+        private int mask = 15;
+        private int size;
+
+        /**
+         * Looks up the id of a key.
+         *
+         * @param key the key
+         * @return the id, or -1 if the key is absent
+         */
+        int get(long key) {
+            for (int slot = slot(key); ids[slot] >= 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return ids[slot];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds an absent key with its id.
+         *
+         * @param key the key
+         * @param id  the id
+         */
+        void put(long key, int id) {
+            if (2 * (size + 1) > ids.length) {
+                long[] oldKeys = keys;
+                int[] oldIds = ids;
+                keys = new long[oldKeys.length * 2];
+                ids = filled(oldIds.length * 2);
+                mask = ids.length - 1;
+                for (int slot = 0; slot < oldIds.length; slot++) {
+                    if (oldIds[slot] >= 0) {
+                        insert(oldKeys[slot], oldIds[slot]);
+                    }
+                }
+            }
+            insert(key, id);
+            size++;
+        }
+
+        private void insert(long key, int id) {
+            int slot = slot(key);
+            while (ids[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            ids[slot] = id;
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+
+        private static int[] filled(int capacity) {
+            int[] ids = new int[capacity];
+            Arrays.fill(ids, -1);
+            return ids;
+        }
+    }
+}
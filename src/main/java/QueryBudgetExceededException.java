@@ -0,0 +1,76 @@
+/**
+ * Thrown when a query stops before finishing because its {@link QueryContext} ran out of time or expansions, or was
+ * cancelled. Counting queries attach the count reached so far, which is a lower bound of the full count.
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+    private final long expansions;
+    private final transient long[] partialTotals;
+    private long partialCount = -1;
+
+    /**
+     * Constructs a QueryBudgetExceededException.
+     *
+     * @param reason        why the query stopped
+     * @param expansions    the number of node expansions done before stopping
+     * @param partialTotals the lower bounds of the counts per end node, or null if the query does not count
+     */
+    QueryBudgetExceededException(Reason reason, long expansions, long[] partialTotals) {
+        super("Query stopped after " + expansions + " expansions: " + reason);
+        this.reason = reason;
+        this.expansions = expansions;
+        this.partialTotals = partialTotals;
+    }
+
+    /**
+     * Returns why the query stopped.
+     *
+     * @return the reason
+     */
+    public Reason reason() {
+        return reason;
+    }
+
+    /**
+     * Returns the number of node expansions done before the query stopped.
+     *
+     * @return the expansions
+     */
+    public long expansions() {
+        return expansions;
+    }
+
+    /**
+     * Returns the number of traces counted before the query stopped, which the full count is at least.
+     *
+     * @return the partial count, or -1 if the query does not count traces
+     */
+    public long partialCount() {
+        return partialCount;
+    }
+
+    /**
+     * Narrows the per-node partial counts of the stopped sweep to the end node of the query.
+     *
+     * @param target the id of the end node
+     * @return this exception
+     */
+    QueryBudgetExceededException forTarget(int target) {
+        if (partialTotals != null) {
+            partialCount = partialTotals[target];
+        }
+        return this;
+    }
+
+    /**
+     * The reasons a query stops early.
+     */
+    public enum Reason {
+        DEADLINE,
+        EXPANSIONS,
+        CANCELLED
+    }
+}
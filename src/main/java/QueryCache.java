@@ -0,0 +1,321 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Caches query results per graph version in a bounded map that evicts the least recently used result. Queries are
+ * keyed by their type, the ids of their nodes and their limits, so differently spelled lookups of the same nodes share
+ * one entry, and by the version of the graph they ran against. When a query arrives for a newer version every older
+ * result is dropped, and queries still running against an older snapshot bypass the cache.
+ * <p>
+ * An entry holds a future, so threads asking for a result that is still being computed wait for it instead of
+ * computing it again. A computation that fails, for example because it ran out of budget, is removed again, and the
+ * threads that waited for it compute the result themselves within their own limits. A waiting thread also honours
+ * its own {@link QueryContext}: it stops waiting once its deadline passes or it is cancelled.
+ */
+public final class QueryCache implements QueryCacheMBean {
+
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int capacity;
+    private final Map<Key, CompletableFuture<Object>> entries;
+    private long version = Long.MIN_VALUE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructs a QueryCache.
+     *
+     * @param capacity the maximum number of cached results
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public QueryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, CompletableFuture<Object>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<Object>> eldest) {
+                if (size() > QueryCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a query, computing it if it is neither cached nor being computed by another thread.
+     *
+     * @param key     the normalized query
+     * @param compute the computation of the result, run at most once per key while it is cached
+     * @param <T>     the type of the result
+     * @return the result
+     */
+    public <T> T get(Key key, Supplier<T> compute) {
+        return get(key, null, compute);
+    }
+
+    /**
+     * Returns the cached result of a query, computing it if it is neither cached nor being computed by another thread,
+     * and waiting for another thread's computation at most as long as the given query context allows.
+     *
+     * @param key     the normalized query
+     * @param context the limits of the query, or null for none
+     * @param compute the computation of the result, run at most once per key while it is cached
+     * @param <T>     the type of the result
+     * @return the result
+     * @throws QueryBudgetExceededException if the query's deadline passes or it is cancelled while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, QueryContext context, Supplier<T> compute) {
+        while (true) {
+            CompletableFuture<Object> future;
+            boolean owner = false;
+            synchronized (entries) {
+                if (key.version > version) {
+                    invalidations.add(entries.size());
+                    entries.clear();
+                    version = key.version;
+                } else if (key.version < version) {
+                    misses.increment();
+                    return compute.get();
+                }
+                future = entries.get(key);
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    entries.put(key, future);
+                    owner = true;
+                }
+            }
+            if (owner) {
+                misses.increment();
+                return compute(key, future, compute);
+            }
+            if (future.isDone()) {
+                hits.increment();
+            } else {
+                coalesced.increment();
+            }
+            try {
+                return (T) await(future, context);
+            } catch (CompletionException e) {
+                // the owner failed within its own limits and removed the entry, so compute it again
+            }
+        }
+    }
+
+    /**
+     * Waits for the result of another thread's computation within the limits of the given query context.
+     *
+     * @param future  the entry of the query
+     * @param context the limits of the query, or null for none
+     * @return the result
+     * @throws CompletionException          if the computation failed
+     * @throws QueryBudgetExceededException if the query's deadline passes or it is cancelled while waiting
+     */
+    private static Object await(CompletableFuture<Object> future, QueryContext context) {
+        if (context == null) {
+            return future.join();
+        }
+        try {
+            while (true) {
+                if (context.isCancelled()) {
+                    throw context.exceeded(QueryBudgetExceededException.Reason.CANCELLED);
+                }
+                long remaining = context.remainingNanos();
+                if (remaining <= 0) {
+                    throw context.exceeded(QueryBudgetExceededException.Reason.DEADLINE);
+                }
+                try {
+                    return future.get(Math.min(remaining, WAIT_SLICE_NANOS), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // check the limits again
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw context.exceeded(QueryBudgetExceededException.Reason.CANCELLED);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Computes a result as the owner of its entry and publishes it to the threads waiting for it.
+     *
+     * @param key     the normalized query
+     * @param future  the entry of the query
+     * @param compute the computation of the result
+     * @param <T>     the type of the result
+     * @return the result
+     */
+    private <T> T compute(Key key, CompletableFuture<Object> future, Supplier<T> compute) {
+        T value;
+        try {
+            value = compute.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(key, future);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+        future.complete(value);
+        return value;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long answered = hits.sum() + coalesced.sum();
+        long lookups = answered + misses.sum();
+        return lookups == 0 ? 0 : (double) answered / lookups;
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hits.reset();
+        misses.reset();
+        coalesced.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    /**
+     * Returns a one-line summary of the counters.
+     *
+     * @return the report
+     */
+    public String getReport() {
+        return String.format(Locale.ROOT,
+                "cache: %d hits, %d coalesced, %d misses, hit rate %.1f%%, %d evictions, %d invalidations, %d/%d"
+                        + " entries%n",
+                getHitCount(), getCoalescedCount(), getMissCount(), getHitRate() * 100, getEvictionCount(),
+                getInvalidationCount(), getSize(), capacity);
+    }
+
+    /**
+     * Registers the cache with the platform MBean server, replacing a cache registered before.
+     *
+     * @throws JMException if the bean cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("InstanaTracer:type=QueryCache");
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * A normalized query: its type, the graph version and node ids it ran against, and its two limits.
+     */
+    public static final class Key {
+        final QueryMetrics.QueryType type;
+        final long version;
+        final int source;
+        final int target;
+        final int first;
+        final int second;
+
+        /**
+         * Constructs a Key.
+         *
+         * @param type    the query type
+         * @param version the version of the graph the query runs against
+         * @param source  the id of the start node
+         * @param target  the id of the end node
+         * @param first   the first limit of the query, such as the minimum hops
+         * @param second  the second limit of the query, such as the maximum hops
+         */
+        public Key(QueryMetrics.QueryType type, long version, int source, int target, int first, int second) {
+            this.type = type;
+            this.version = version;
+            this.source = source;
+            this.target = target;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type == key.type && version == key.version && source == key.source && target == key.target
+                    && first == key.first && second == key.second;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = type.hashCode();
+            hash = 31 * hash + Long.hashCode(version);
+            hash = 31 * hash + source;
+            hash = 31 * hash + target;
+            hash = 31 * hash + first;
+            return 31 * hash + second;
+        }
+    }
+}
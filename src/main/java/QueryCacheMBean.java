@@ -0,0 +1,66 @@
+/**
+ * The JMX view of {@link QueryCache}.
+ */
+public interface QueryCacheMBean {
+
+    /**
+     * Returns the number of lookups answered from a finished result.
+     *
+     * @return the hit count
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of lookups that computed their result.
+     *
+     * @return the miss count
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of lookups that waited for the same query computed by another thread.
+     *
+     * @return the coalesced count
+     */
+    long getCoalescedCount();
+
+    /**
+     * Returns the number of results evicted to stay within the capacity.
+     *
+     * @return the eviction count
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of results dropped because the graph changed.
+     *
+     * @return the invalidation count
+     */
+    long getInvalidationCount();
+
+    /**
+     * Returns the share of lookups that did not compute their result.
+     *
+     * @return the hit rate between 0 and 1
+     */
+    double getHitRate();
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return the size
+     */
+    int getSize();
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return the capacity
+     */
+    int getCapacity();
+
+    /**
+     * Drops every cached result and resets the counters.
+     */
+    void clear();
+}
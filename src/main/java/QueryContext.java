@@ -0,0 +1,151 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the work of one query with a deadline, a budget of node expansions and a cancellation flag. The search loops
+ * charge their work to the context as they go; the context looks at the clock, the flag and the thread's interrupt
+ * status only every {@value #CHECK_INTERVAL} expansions, so charging costs an addition and a comparison. A query that
+ * runs out of budget stops with a {@link QueryBudgetExceededException}. Sweeps that scan every node per layer charge
+ * the nodes they scan and the edges they relax, not only the nodes they expand, so the checks stay evenly spaced in
+ * time on large sparse graphs.
+ * <p>
+ * A context belongs to one query on one thread; only {@link #cancel()} may be called from other threads.
+ */
+public final class QueryContext {
+
+    static final long CHECK_INTERVAL = 1024;
+
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final long maxExpansions;
+    private volatile boolean cancelled;
+    private long expansions;
+    private long nextCheck;
+
+    /**
+     * Constructs a QueryContext.
+     *
+     * @param timeout       the time the query may take, or a negative value for no deadline
+     * @param unit          the unit of the timeout
+     * @param maxExpansions the maximum number of node expansions
+     */
+    public QueryContext(long timeout, TimeUnit unit, long maxExpansions) {
+        this.hasDeadline = timeout >= 0;
+        this.deadline = hasDeadline ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        this.maxExpansions = maxExpansions;
+        this.nextCheck = Math.min(CHECK_INTERVAL, maxExpansions);
+    }
+
+    /**
+     * Creates a context that only limits the time of the query.
+     *
+     * @param timeout the time the query may take
+     * @param unit    the unit of the timeout
+     * @return a new context
+     */
+    public static QueryContext withTimeout(long timeout, TimeUnit unit) {
+        return new QueryContext(timeout, unit, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a context that only limits the number of node expansions of the query.
+     *
+     * @param maxExpansions the maximum number of node expansions
+     * @return a new context
+     */
+    public static QueryContext withBudget(long maxExpansions) {
+        return new QueryContext(-1, TimeUnit.NANOSECONDS, maxExpansions);
+    }
+
+    /**
+     * Asks the query to stop at its next check. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the query was asked to stop.
+     *
+     * @return true if the query was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of node expansions charged so far.
+     *
+     * @return the expansions charged
+     */
+    public long expansions() {
+        return expansions;
+    }
+
+    /**
+     * Charges work to the given context, if any.
+     *
+     * @param context the context of the query, or null for an unbounded query
+     * @param work    the work done since the last charge, in node expansions, scans and edge relaxations
+     * @throws QueryBudgetExceededException if the query has to stop
+     */
+    static void charge(QueryContext context, long work) {
+        if (context != null) {
+            context.expansions += work;
+            if (context.expansions >= context.nextCheck) {
+                context.check(null);
+            }
+        }
+    }
+
+    /**
+     * Charges work to the given context, if any, attaching the counts reached so far to the exception if the query
+     * has to stop.
+     *
+     * @param context the context of the query, or null for an unbounded query
+     * @param work    the work done since the last charge, in node expansions, scans and edge relaxations
+     * @param totals  the lower bounds of the counts per end node reached so far
+     * @throws QueryBudgetExceededException if the query has to stop
+     */
+    static void charge(QueryContext context, long work, long[] totals) {
+        if (context != null) {
+            context.expansions += work;
+            if (context.expansions >= context.nextCheck) {
+                context.check(totals);
+            }
+        }
+    }
+
+    /**
+     * Returns the time left until the deadline.
+     *
+     * @return the remaining nanoseconds, negative once the deadline passed, or {@link Long#MAX_VALUE} without deadline
+     */
+    long remainingNanos() {
+        return hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Creates the exception that stops this query for the given reason.
+     *
+     * @param reason why the query stops
+     * @return the exception
+     */
+    QueryBudgetExceededException exceeded(QueryBudgetExceededException.Reason reason) {
+        return new QueryBudgetExceededException(reason, expansions, null);
+    }
+
+    private void check(long[] totals) {
+        QueryBudgetExceededException.Reason reason = null;
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            reason = QueryBudgetExceededException.Reason.CANCELLED;
+        } else if (expansions > maxExpansions) {
+            reason = QueryBudgetExceededException.Reason.EXPANSIONS;
+        } else if (hasDeadline && System.nanoTime() - deadline > 0) {
+            reason = QueryBudgetExceededException.Reason.DEADLINE;
+        }
+        if (reason != null) {
+            throw new QueryBudgetExceededException(reason, expansions, totals);
+        }
+        nextCheck = maxExpansions - expansions > CHECK_INTERVAL ? expansions + CHECK_INTERVAL : maxExpansions + 1;
+    }
+}
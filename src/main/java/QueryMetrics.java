@@ -0,0 +1,232 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records what each query costs: nodes expanded, edges relaxed, peak frontier size, wall time and allocated bytes,
+ * aggregated per {@link QueryType} into {@link QueryStats}. Recording is off by default. While it is off every query
+ * pays a single volatile read, and the search loops only bump local counters that they report once per search, so the
+ * instrumentation stays compiled into the hot paths.
+ * <p>
+ * The registry can be published over JMX with {@link #register()}, and a debug listener can receive a one-line report
+ * of every query.
+ */
+public final class QueryMetrics implements QueryMetricsMBean {
+
+    /**
+     * Whether queries are recorded. Read once per query and once per search.
+     */
+    static volatile boolean enabled;
+
+    private static final QueryMetrics INSTANCE = new QueryMetrics();
+    private static final ThreadLocal<Probe> PROBES = ThreadLocal.withInitial(Probe::new);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<QueryType, QueryStats> stats = new EnumMap<>(QueryType.class);
+    private volatile Consumer<String> debugListener;
+
+    private QueryMetrics() {
+        for (QueryType type : QueryType.values()) {
+            stats.put(type, new QueryStats());
+        }
+    }
+
+    /**
+     * Returns the metrics registry.
+     *
+     * @return the registry
+     */
+    public static QueryMetrics get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        QueryMetrics.enabled = enabled;
+    }
+
+    /**
+     * Sets the listener receiving a one-line report of every recorded query.
+     *
+     * @param listener the listener, or null to stop reporting
+     */
+    public void setDebugListener(Consumer<String> listener) {
+        this.debugListener = listener;
+    }
+
+    /**
+     * Returns the statistics of the given query type.
+     *
+     * @param type the query type
+     * @return the statistics of the type
+     */
+    public QueryStats stats(QueryType type) {
+        return stats.get(type);
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<QueryType, QueryStats> entry : stats.entrySet()) {
+            QueryStats stat = entry.getValue();
+            report.append(String.format(Locale.ROOT,
+                    "%s: %d queries, mean %.1f us, p50 %.1f us, p99 %.1f us, %d nodes, %d edges, peak frontier %d,"
+                            + " %d bytes%n",
+                    entry.getKey().label, stat.getCount(), stat.getMeanMicros(), stat.getP50Micros(),
+                    stat.getP99Micros(), stat.getNodesExpanded(), stat.getEdgesRelaxed(), stat.getPeakFrontier(),
+                    stat.getAllocatedBytes()));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (QueryStats stat : stats.values()) {
+            stat.reset();
+        }
+    }
+
+    /**
+     * Registers the registry and the statistics of every query type with the platform MBean server.
+     *
+     * @throws JMException if the beans cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("InstanaTracer:type=QueryMetrics");
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+        for (Map.Entry<QueryType, QueryStats> entry : stats.entrySet()) {
+            ObjectName statsName = new ObjectName("InstanaTracer:type=QueryStats,query=" + entry.getKey().label);
+            if (!server.isRegistered(statsName)) {
+                server.registerMBean(entry.getValue(), statsName);
+            }
+        }
+    }
+
+    /**
+     * Starts recording a query on the calling thread.
+     *
+     * @param type the query type
+     * @return the probe of the query, or null if recording is off
+     */
+    static Probe begin(QueryType type) {
+        if (!enabled) {
+            return null;
+        }
+        Probe probe = PROBES.get();
+        probe.type = type;
+        probe.expanded = 0;
+        probe.relaxed = 0;
+        probe.peakFrontier = 0;
+        probe.startBytes = allocatedBytes();
+        probe.startNanos = System.nanoTime();
+        return probe;
+    }
+
+    /**
+     * Finishes recording a query and adds it to the statistics of its type.
+     *
+     * @param probe the probe returned by {@link #begin(QueryType)}, may be null
+     */
+    static void end(Probe probe) {
+        if (probe == null) {
+            return;
+        }
+        probe.nanos = System.nanoTime() - probe.startNanos;
+        probe.bytes = allocatedBytes() - probe.startBytes;
+        INSTANCE.stats.get(probe.type).record(probe);
+        Consumer<String> listener = INSTANCE.debugListener;
+        if (listener != null) {
+            listener.accept(probe.report());
+        }
+        probe.type = null;
+    }
+
+    /**
+     * Adds the work of one search to the query running on the calling thread, if any.
+     *
+     * @param expanded     the number of nodes expanded
+     * @param relaxed      the number of edges relaxed
+     * @param peakFrontier the largest frontier of the search
+     */
+    static void record(long expanded, long relaxed, int peakFrontier) {
+        if (!enabled) {
+            return;
+        }
+        Probe probe = PROBES.get();
+        if (probe.type != null) {
+            probe.expanded += expanded;
+            probe.relaxed += relaxed;
+            probe.peakFrontier = Math.max(probe.peakFrontier, peakFrontier);
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * The query types that are recorded separately.
+     */
+    public enum QueryType {
+        TRACE_LATENCY("traceLatency"),
+        MAX_HOPS("maxHops"),
+        EXACT_HOPS("exactHops"),
+        SHORTEST_LATENCY("shortestLatency"),
+        MAX_LATENCY("maxLatency"),
+        K_SHORTEST("kShortest"),
+        PATTERN("pattern"),
+        LIMITS("limits");
+
+        final String label;
+
+        /**
+         * Constructs a QueryType.
+         *
+         * @param label the name used in reports and JMX object names
+         */
+        QueryType(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Holds the measurements of the query running on one thread.
+     */
+    static final class Probe {
+        QueryType type;
+        long startNanos;
+        long startBytes;
+        long nanos;
+        long bytes;
+        long expanded;
+        long relaxed;
+        int peakFrontier;
+
+        /**
+         * Returns the one-line debug report of the query.
+         *
+         * @return the report
+         */
+        String report() {
+            return String.format(Locale.ROOT, "%s: %.1f us, %d nodes expanded, %d edges relaxed, peak frontier %d,"
+                    + " %d bytes allocated", type.label, nanos / 1e3, expanded, relaxed, peakFrontier, bytes);
+        }
+    }
+}
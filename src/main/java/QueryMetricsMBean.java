@@ -0,0 +1,31 @@
+/**
+ * The JMX view of {@link QueryMetrics}.
+ */
+public interface QueryMetricsMBean {
+
+    /**
+     * Returns whether queries are recorded.
+     *
+     * @return true if recording is on
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording of queries on or off.
+     *
+     * @param enabled whether to record queries
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns a summary line per query type.
+     *
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * Clears the statistics of every query type.
+     */
+    void reset();
+}
@@ -0,0 +1,326 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Serves the queries of one resident {@link InstanaTracer} over HTTP with the JDK's built-in server, so callers pay
+ * neither JVM startup nor graph loading per query. Every endpoint answers in plain text:
+ * <ul>
+ *     <li>{@code GET /latency?trace=A,B,C} - the latency of a trace;</li>
+ *     <li>{@code GET /max-hops?from=C&to=C&max=3} - the number of traces with at most the given hops;</li>
+ *     <li>{@code GET /exact-hops?from=A&to=C&hops=4} - the number of traces with exactly the given hops;</li>
+ *     <li>{@code GET /shortest?from=A&to=C} - the shortest latency;</li>
+ *     <li>{@code GET /max-latency?from=C&to=C&max=30} - the number of traces below the latency, {@code to} optional;</li>
+ *     <li>{@code GET /k-shortest?from=A&to=C&k=3&loopless=true} - one {@code latency trace} line per best trace;</li>
+ *     <li>{@code GET /limits?from=A&max-hops=6&max-latency=40} - one {@code node count} line per node reached by
+ *     traces within both limits;</li>
+ *     <li>{@code GET /match?pattern=A+.*+D+.*+C&max-hops=5} - the number of traces matching a {@link TracePattern}
+ *     with at most the given hops, or below the given {@code max-latency}, or without either the shortest latency of
+ *     a matching trace;</li>
+ *     <li>{@code POST /batch} - one result line per line of a query file, see {@link BatchQueryRunner}.</li>
+ * </ul>
+ * Requests are accepted on virtual threads when the JDK has them and on a fixed pool of platform threads otherwise.
+ * The queries themselves run on a separate pool of worker threads, which keep their thread-local search engines
+ * between requests instead of building new ones per virtual thread. A single query runs on one worker and a batch is
+ * split into query groups over the workers, so a handler waiting for its answer never holds a worker.
+ * Malformed requests and queries without a finite answer answer 400, unknown paths 404 and queries that run out of
+ * budget 503. A k-shortest query without
+ * any trace answers "NO SUCH TRACE".
+ */
+public final class QueryServer {
+
+    private static final int BACKLOG = 1024;
+
+    private final InstanaTracer tracer;
+    private final Supplier<QueryContext> contexts;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ExecutorService workers;
+
+    /**
+     * Constructs a QueryServer bound to the given address. The server does not accept requests until it is started.
+     *
+     * @param tracer   the tracer holding the resident graph
+     * @param address  the address to listen on, with port 0 for any free port
+     * @param threads  the number of platform threads handling requests if virtual threads are unavailable, and of
+     *                 workers answering queries
+     * @param contexts the supplier of the limits of every query and query group, which may supply null
+     * @throws IOException if the address cannot be bound
+     */
+    public QueryServer(InstanaTracer tracer, InetSocketAddress address, int threads, Supplier<QueryContext> contexts)
+            throws IOException {
+        this.tracer = tracer;
+        this.contexts = contexts;
+        this.handlers = newHandlerExecutor(threads);
+        this.workers = Executors.newFixedThreadPool(threads, daemonThreads("query-worker-"));
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(handlers);
+        server.createContext("/latency", query(params -> tracer.calculateTraceLatency(
+                require(params, "trace").split(","))));
+        server.createContext("/max-hops", query(params -> Integer.toString(tracer.countTracesMaxHops(
+                require(params, "from"), require(params, "to"), number(params, "max"), contexts.get()))));
+        server.createContext("/exact-hops", query(params -> Integer.toString(tracer.countTracesExactHops(
+                require(params, "from"), require(params, "to"), number(params, "hops"), contexts.get()))));
+        server.createContext("/shortest", query(params -> tracer.shortestLatency(
+                require(params, "from"), require(params, "to"), contexts.get())));
+        server.createContext("/max-latency", query(this::maxLatency));
+        server.createContext("/k-shortest", query(this::kShortest));
+        server.createContext("/limits", query(this::limits));
+        server.createContext("/match", query(this::match));
+        server.createContext("/batch", this::batch);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to the given delay for running requests and releases the threads.
+     *
+     * @param delaySeconds the maximum time to wait for running requests
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        handlers.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the bound port
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private String maxLatency(Map<String, String> params) {
+        String to = params.get("to");
+        int max = number(params, "max");
+        int count = to == null ? tracer.countTracesWithMaxLatency(require(params, "from"), max, contexts.get())
+                : tracer.countTracesWithMaxLatency(require(params, "from"), to, max, contexts.get());
+        return Integer.toString(count);
+    }
+
+    private String kShortest(Map<String, String> params) {
+        StringBuilder result = new StringBuilder();
+        for (Trace trace : tracer.shortestTraces(require(params, "from"), require(params, "to"), number(params, "k"),
+                Boolean.parseBoolean(params.get("loopless")), contexts.get())) {
+            result.append(trace.latency()).append(' ').append(trace).append('\n');
+        }
+        return result.length() > 0 ? result.toString() : "NO SUCH TRACE";
+    }
+
+    private String limits(Map<String, String> params) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> count : tracer.countTracesWithLimits(require(params, "from"),
+                number(params, "max-hops"), number(params, "max-latency"), contexts.get()).entrySet()) {
+            result.append(count.getKey()).append(' ').append(count.getValue()).append('\n');
+        }
+        return result.length() > 0 ? result.toString() : "NO SUCH TRACE";
+    }
+
+    private String match(Map<String, String> params) {
+        String pattern = require(params, "pattern");
+        if (params.containsKey("max-hops")) {
+            return Integer.toString(tracer.countMatchingTraces(pattern, number(params, "max-hops"), contexts.get()));
+        }
+        if (params.containsKey("max-latency")) {
+            return Integer.toString(tracer.countMatchingTracesWithMaxLatency(pattern, number(params, "max-latency"),
+                    contexts.get()));
+        }
+        return tracer.shortestMatchingLatency(pattern, contexts.get());
+    }
+
+    /**
+     * Answers a batch of queries posted in the query-file format, one result per line in query order.
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be written
+     */
+    private void batch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Batches must be posted");
+                return;
+            }
+            List<BatchQueryRunner.Query> queries = BatchQueryRunner.readQueries(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (String answer : BatchQueryRunner.run(tracer.graph(), queries, workers, contexts)) {
+                result.append(answer).append('\n');
+            }
+            respond(exchange, 200, result.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Interrupted");
+        } catch (RuntimeException e) {
+            fail(exchange, e instanceof IllegalStateException && e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : e);
+        }
+    }
+
+    /**
+     * Wraps a single-query function into a handler that parses the query string, answers the query on a worker and
+     * maps failures to status codes.
+     *
+     * @param answer the function answering the query from its parameters
+     * @return the handler
+     */
+    private HttpHandler query(Answer answer) {
+        return exchange -> {
+            Future<String> future = null;
+            try {
+                Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+                future = workers.submit(() -> answer.apply(params));
+                String result = future.get();
+                respond(exchange, 200, result.endsWith("\n") ? result : result + "\n");
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "Interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                fail(exchange, (RuntimeException) e.getCause());
+            } catch (RuntimeException e) {
+                fail(exchange, e);
+            }
+        };
+    }
+
+    /**
+     * Answers a failed query: 503 if it ran out of budget, 400 if its input was invalid, its count does not fit or its
+     * traces loop through zero-latency edges, and 500 otherwise.
+     *
+     * @param exchange the request
+     * @param failure  the exception the query failed with
+     * @throws IOException if the response cannot be written
+     */
+    private static void fail(HttpExchange exchange, RuntimeException failure) throws IOException {
+        if (failure instanceof QueryBudgetExceededException) {
+            respond(exchange, 503, BatchQueryRunner.BUDGET_EXCEEDED);
+        } else if (failure instanceof IllegalArgumentException || failure instanceof ArithmeticException
+                || failure instanceof IllegalStateException) {
+            respond(exchange, 400, failure.getMessage());
+        } else {
+            respond(exchange, 500, failure.toString());
+        }
+    }
+
+    /**
+     * Parses a raw query string into its decoded parameters.
+     *
+     * @param query the raw query string, or null
+     * @return the parameters by name
+     */
+    static Map<String, String> parameters(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return params;
+    }
+
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int number(Map<String, String> params, String name) {
+        String value = require(params, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (body == null ? "" : body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Creates the executor running the request handlers: a virtual thread per request on JDKs that have them, looked
+     * up reflectively so the code still compiles for Java 8, and a fixed pool of daemon threads otherwise.
+     *
+     * @param threads the number of platform threads if virtual threads are unavailable
+     * @return the executor
+     */
+    static ExecutorService newHandlerExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), daemonThreads("query-handler-"));
+            pool.prestartAllCoreThreads();
+            return pool;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Answers one query from its decoded parameters.
+     */
+    interface Answer {
+        /**
+         * Answers the query.
+         *
+         * @param params the parameters by name
+         * @return the result text
+         */
+        String apply(Map<String, String> params);
+    }
+}
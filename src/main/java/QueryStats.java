@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the measurements of one query type. Counters are striped {@link LongAdder}s, so threads recording at the
+ * same time do not contend on one cache line. Wall times go into a log-linear histogram with four buckets per power of
+ * two, which bounds the error of a percentile to 25%.
+ */
+public final class QueryStats implements QueryStatsMBean {
+
+    private static final int LINEAR_BUCKETS = 8;
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 3) * SUB_BUCKETS;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder relaxed = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator peakFrontier = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    /**
+     * Constructs an empty QueryStats.
+     */
+    QueryStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds one finished query.
+     *
+     * @param probe the measurements of the query
+     */
+    void record(QueryMetrics.Probe probe) {
+        count.increment();
+        expanded.add(probe.expanded);
+        relaxed.add(probe.relaxed);
+        allocated.add(probe.bytes);
+        totalNanos.add(probe.nanos);
+        peakFrontier.accumulate(probe.peakFrontier);
+        maxNanos.accumulate(probe.nanos);
+        histogram[bucket(probe.nanos)].increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return expanded.sum();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+        return relaxed.sum();
+    }
+
+    @Override
+    public long getPeakFrontier() {
+        return peakFrontier.get();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocated.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long queries = count.sum();
+        return queries == 0 ? 0 : totalNanos.sum() / 1e3 / queries;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileNanos(0.5) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileNanos(0.99) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        expanded.reset();
+        relaxed.reset();
+        allocated.reset();
+        totalNanos.reset();
+        peakFrontier.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket holding the given quantile of the wall times.
+     *
+     * @param quantile the quantile between 0 and 1
+     * @return the wall time in nanoseconds, or 0 if nothing was recorded
+     */
+    long percentileNanos(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+            total += counts[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(upperBound(i), maxNanos.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the histogram bucket of the given value. Values below 8 get a bucket each, larger values four buckets
+     * per power of two.
+     *
+     * @param value the non-negative value
+     * @return the bucket index
+     */
+    static int bucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value that falls into the given bucket.
+     *
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 3;
+        long sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - 2);
+        return ((SUB_BUCKETS + sub) << (exponent - 2)) + width - 1;
+    }
+}
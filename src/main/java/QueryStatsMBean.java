@@ -0,0 +1,73 @@
+/**
+ * The JMX view of {@link QueryStats}.
+ */
+public interface QueryStatsMBean {
+
+    /**
+     * Returns the number of recorded queries.
+     *
+     * @return the query count
+     */
+    long getCount();
+
+    /**
+     * Returns the total number of nodes expanded.
+     *
+     * @return the nodes expanded
+     */
+    long getNodesExpanded();
+
+    /**
+     * Returns the total number of edges relaxed.
+     *
+     * @return the edges relaxed
+     */
+    long getEdgesRelaxed();
+
+    /**
+     * Returns the largest frontier any query held.
+     *
+     * @return the peak frontier size
+     */
+    long getPeakFrontier();
+
+    /**
+     * Returns the total number of bytes allocated by the queries.
+     *
+     * @return the allocated bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Returns the mean wall time.
+     *
+     * @return the mean in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Returns the median wall time.
+     *
+     * @return the median in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Returns the 99th percentile of the wall time.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Returns the longest wall time.
+     *
+     * @return the maximum in microseconds
+     */
+    double getMaxMicros();
+
+    /**
+     * Clears the statistics.
+     */
+    void reset();
+}
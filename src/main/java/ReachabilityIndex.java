@@ -0,0 +1,434 @@
+import java.util.Arrays;
+
+/**
+ * Answers which nodes can reach which from the strongly connected components of a {@link CompiledGraph}. The components
+ * are found with an iterative Tarjan search and condensed into a DAG whose components are numbered in reverse
+ * topological order, so every DAG edge leads from a higher to a lower component id.
+ * <p>
+ * Up to {@value #BITSET_MAX_COMPONENTS} components, every component keeps a bitset of the components it reaches and a
+ * second one of the components it reaches through a cycle, so both questions take one bit test. Larger graphs keep
+ * interval labels from a depth-first spanning forest of the DAG instead: a component reaches every component whose
+ * interval nests in its own, a higher component id rules reachability out, and only the remaining pairs search the
+ * DAG. {@link #prune} restricts a graph to the nodes that lie on some trace between two nodes, so that the counting
+ * sweeps never expand branches that can no longer reach the target.
+ */
+public final class ReachabilityIndex {
+
+    static final int BITSET_MAX_COMPONENTS = 1 << 13;
+
+    private final CompiledGraph graph;
+    private final int[] component;
+    private final boolean[] cyclic;
+    private final int componentCount;
+    private final int[] dagOffsets;
+    private final int[] dagTargets;
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+    private final int words;
+    private final long[] reach;
+    private final long[] cycleReach;
+    private final int[] enter;
+    private final int[] exit;
+
+    /**
+     * Constructs a ReachabilityIndex, computing the components, the condensed DAG and its labels.
+     *
+     * @param graph the graph to index
+     */
+    private ReachabilityIndex(CompiledGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        this.component = new int[n];
+        this.componentCount = findComponents(graph, component);
+        this.cyclic = new boolean[componentCount];
+        int[] sizes = new int[componentCount];
+        for (int u = 0; u < n; u++) {
+            sizes[component[u]]++;
+        }
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                if (graph.targets[e] == u) {
+                    cyclic[component[u]] = true;
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            cyclic[c] |= sizes[c] > 1;
+        }
+
+        this.dagOffsets = new int[componentCount + 1];
+        this.reverseOffsets = new int[componentCount + 1];
+        int dagEdges = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int v = graph.targets[e];
+                if (component[u] != component[v]) {
+                    dagOffsets[component[u] + 1]++;
+                    reverseOffsets[component[v] + 1]++;
+                    dagEdges++;
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            dagOffsets[c + 1] += dagOffsets[c];
+            reverseOffsets[c + 1] += reverseOffsets[c];
+        }
+        this.dagTargets = new int[dagEdges];
+        this.reverseTargets = new int[dagEdges];
+        int[] nextForward = Arrays.copyOf(dagOffsets, componentCount);
+        int[] nextReverse = Arrays.copyOf(reverseOffsets, componentCount);
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int cu = component[u];
+                int cv = component[graph.targets[e]];
+                if (cu != cv) {
+                    dagTargets[nextForward[cu]++] = cv;
+                    reverseTargets[nextReverse[cv]++] = cu;
+                }
+            }
+        }
+
+        if (componentCount <= BITSET_MAX_COMPONENTS) {
+            this.words = (componentCount + 63) >>> 6;
+            this.reach = new long[componentCount * words];
+            this.cycleReach = new long[componentCount * words];
+            for (int c = 0; c < componentCount; c++) {
+                int row = c * words;
+                reach[row + (c >>> 6)] |= 1L << c;
+                for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+                    int other = dagTargets[i] * words;
+                    for (int w = 0; w < words; w++) {
+                        reach[row + w] |= reach[other + w];
+                        cycleReach[row + w] |= cycleReach[other + w];
+                    }
+                }
+                if (cyclic[c]) {
+                    System.arraycopy(reach, row, cycleReach, row, words);
+                }
+            }
+            this.enter = null;
+            this.exit = null;
+        } else {
+            this.words = 0;
+            this.reach = null;
+            this.cycleReach = null;
+            this.enter = new int[componentCount];
+            this.exit = new int[componentCount];
+            labelIntervals();
+        }
+    }
+
+    /**
+     * Builds the index of the given graph.
+     *
+     * @param graph the graph to index
+     * @return the index
+     */
+    public static ReachabilityIndex build(CompiledGraph graph) {
+        return new ReachabilityIndex(graph);
+    }
+
+    /**
+     * Returns the graph this index was built for.
+     *
+     * @return the indexed graph
+     */
+    public CompiledGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the number of strongly connected components.
+     *
+     * @return the number of components
+     */
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Returns the component of a node. Components are numbered in reverse topological order of the condensed DAG.
+     *
+     * @param node the id of the node
+     * @return the component id
+     */
+    public int component(int node) {
+        return component[node];
+    }
+
+    /**
+     * Returns whether a node lies on a cycle, that is whether a trace from the node to itself exists.
+     *
+     * @param node the id of the node
+     * @return true if the node lies on a cycle
+     */
+    public boolean isCyclic(int node) {
+        return cyclic[component[node]];
+    }
+
+    /**
+     * Returns whether a trace of at least one hop leads from the source to the target.
+     *
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return true if such a trace exists
+     */
+    public boolean hasTrace(int source, int target) {
+        if (source == target) {
+            return cyclic[component[source]];
+        }
+        return reaches(component[source], component[target]);
+    }
+
+    /**
+     * Returns whether traces from the source to the target can pass through a cycle, in which case there are traces
+     * of every larger number of hops and hop-limited counts grow without bound as the limit grows. Otherwise every
+     * trace is a simple path and the number of traces is finite.
+     *
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return true if the number of traces is unbounded
+     */
+    public boolean hasUnboundedTraces(int source, int target) {
+        int from = component[source];
+        int to = component[target];
+        if (cycleReach != null) {
+            return (cycleReach[from * words + (to >>> 6)] & 1L << to) != 0;
+        }
+        boolean[] relevant = relevantComponents(from, to);
+        for (int c = 0; c < componentCount; c++) {
+            if (relevant[c] && cyclic[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a graph with the same node ids that keeps only the edges between nodes that lie on some trace from the
+     * source to the target. Every trace from the source to the target, and so every count between them, is the same
+     * in the pruned graph.
+     *
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return the pruned graph
+     */
+    public CompiledGraph prune(int source, int target) {
+        boolean[] relevant = relevantComponents(component[source], component[target]);
+        int n = graph.nodeCount();
+        int[] offsets = new int[n + 1];
+        int edges = 0;
+        for (int u = 0; u < n; u++) {
+            if (relevant[component[u]]) {
+                for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                    if (relevant[component[graph.targets[e]]]) {
+                        edges++;
+                    }
+                }
+            }
+            offsets[u + 1] = edges;
+        }
+        int[] targets = new int[edges];
+        int[] latencies = new int[edges];
+        int next = 0;
+        for (int u = 0; u < n; u++) {
+            if (relevant[component[u]]) {
+                for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                    if (relevant[component[graph.targets[e]]]) {
+                        targets[next] = graph.targets[e];
+                        latencies[next++] = graph.latencies[e];
+                    }
+                }
+            }
+        }
+        return new CompiledGraph(graph.names, offsets, targets, latencies, graph.version);
+    }
+
+    /**
+     * Decides whether one component reaches another, counting a component as reaching itself.
+     *
+     * @param from the id of the first component
+     * @param to   the id of the second component
+     * @return true if a path leads from the first component to the second
+     */
+    boolean reaches(int from, int to) {
+        if (from == to) {
+            return true;
+        }
+        if (to > from) {
+            return false;
+        }
+        if (reach != null) {
+            return (reach[from * words + (to >>> 6)] & 1L << to) != 0;
+        }
+        if (enter[from] <= enter[to] && exit[to] <= exit[from]) {
+            return true;
+        }
+        boolean[] seen = new boolean[from + 1];
+        int[] queue = new int[from + 1];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        seen[from] = true;
+        while (head < tail) {
+            int c = queue[head++];
+            for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+                int d = dagTargets[i];
+                if (d == to || enter[d] <= enter[to] && exit[to] <= exit[d]) {
+                    return true;
+                }
+                if (d > to && !seen[d]) {
+                    seen[d] = true;
+                    queue[tail++] = d;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the components that are reachable from one component and reach another one.
+     *
+     * @param from the id of the start component
+     * @param to   the id of the end component
+     * @return the marks per component
+     */
+    private boolean[] relevantComponents(int from, int to) {
+        boolean[] forward = new boolean[componentCount];
+        boolean[] relevant = new boolean[componentCount];
+        int[] queue = new int[componentCount];
+        int tail = 0;
+        forward[from] = true;
+        queue[tail++] = from;
+        for (int head = 0; head < tail; head++) {
+            int c = queue[head];
+            for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+                int d = dagTargets[i];
+                if (!forward[d] && d >= to) {
+                    forward[d] = true;
+                    queue[tail++] = d;
+                }
+            }
+        }
+        if (!forward[to]) {
+            return relevant;
+        }
+        tail = 0;
+        relevant[to] = true;
+        queue[tail++] = to;
+        for (int head = 0; head < tail; head++) {
+            int c = queue[head];
+            for (int i = reverseOffsets[c]; i < reverseOffsets[c + 1]; i++) {
+                int d = reverseTargets[i];
+                if (forward[d] && !relevant[d]) {
+                    relevant[d] = true;
+                    queue[tail++] = d;
+                }
+            }
+        }
+        return relevant;
+    }
+
+    /**
+     * Labels every component with the interval of its depth-first visit over a spanning forest of the DAG, starting
+     * from the components without incoming edges.
+     */
+    private void labelIntervals() {
+        int[] stack = new int[componentCount];
+        int[] next = new int[componentCount];
+        boolean[] visited = new boolean[componentCount];
+        int clock = 0;
+        for (int root = componentCount - 1; root >= 0; root--) {
+            if (visited[root] || reverseOffsets[root] != reverseOffsets[root + 1]) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth++] = root;
+            visited[root] = true;
+            enter[root] = clock++;
+            next[root] = dagOffsets[root];
+            while (depth > 0) {
+                int c = stack[depth - 1];
+                if (next[c] < dagOffsets[c + 1]) {
+                    int d = dagTargets[next[c]++];
+                    if (!visited[d]) {
+                        visited[d] = true;
+                        enter[d] = clock++;
+                        next[d] = dagOffsets[d];
+                        stack[depth++] = d;
+                    }
+                } else {
+                    exit[c] = clock++;
+                    depth--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the strongly connected components with an iterative Tarjan search.
+     *
+     * @param graph     the graph to search
+     * @param component the array receiving the component of every node
+     * @return the number of components
+     */
+    private static int findComponents(CompiledGraph graph, int[] component) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        int[] next = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int counter = 0;
+        int components = 0;
+        int top = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            calls[depth] = root;
+            next[depth++] = offsets[root];
+            while (depth > 0) {
+                int u = calls[depth - 1];
+                int e = next[depth - 1];
+                if (e < offsets[u + 1]) {
+                    next[depth - 1]++;
+                    int v = targets[e];
+                    if (index[v] < 0) {
+                        index[v] = low[v] = counter++;
+                        stack[top++] = v;
+                        onStack[v] = true;
+                        calls[depth] = v;
+                        next[depth++] = offsets[v];
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = stack[--top];
+                        onStack[w] = false;
+                        component[w] = components;
+                    } while (w != u);
+                    components++;
+                }
+                if (depth > 0) {
+                    int parent = calls[depth - 1];
+                    low[parent] = Math.min(low[parent], low[u]);
+                }
+            }
+        }
+        return components;
+    }
+}
@@ -0,0 +1,449 @@
+import java.util.Arrays;
+
+/**
+ * Computes shortest latencies over a {@link CompiledGraph} with Dijkstra's algorithm on primitive arrays. Each thread
+ * gets its own engine through {@link #current()}; the engine keeps its arrays between searches and resets them with an
+ * epoch stamp, so a query allocates nothing once the arrays have grown to the graph size. The priority queue is an
+ * indexed 4-ary heap with decrease-key, so it never holds more than one entry per node.
+ * <p>
+ * Latencies follow the semantics of {@link InstanaTracer#shortestLatency(String, String)}: a trace has at least one
+ * hop and a positive latency, so the latency from a node to itself is its shortest cycle. Formally the result for a
+ * target {@code t} is the smallest {@code dist(u) + latency(u, t)} over all edges into {@code t} that is positive,
+ * where {@code dist} is the plain shortest distance from the source.
+ */
+final class ShortestLatencyEngine {
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The node count from which point-to-point queries search from both ends.
+     */
+    static final int BIDIRECTIONAL_MIN_NODES = 4096;
+
+    private static final ThreadLocal<ShortestLatencyEngine> ENGINES =
+            ThreadLocal.withInitial(ShortestLatencyEngine::new);
+
+    private final Frontier forward = new Frontier();
+    private final Frontier backward = new Frontier();
+
+    /**
+     * Returns the engine of the calling thread.
+     *
+     * @return the thread's engine
+     */
+    static ShortestLatencyEngine current() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Finds the shortest latency between two nodes, searching from both ends on large graphs where that is exact.
+     *
+     * @param graph  the graph to search
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     */
+    int shortestLatency(CompiledGraph graph, int source, int target) {
+        return shortestLatency(graph, source, target, null);
+    }
+
+    /**
+     * Finds the shortest latency between two nodes within the limits of the given query context.
+     *
+     * @param graph   the graph to search
+     * @param source  the id of the start node
+     * @param target  the id of the end node
+     * @param context the limits of the query, or null for none
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    int shortestLatency(CompiledGraph graph, int source, int target, QueryContext context) {
+        if (graph.nodeCount() >= BIDIRECTIONAL_MIN_NODES && source != target && graph.minLatency() > 0) {
+            return bidirectional(graph, source, target, context);
+        }
+        return unidirectional(graph, source, target, context);
+    }
+
+    /**
+     * Finds the shortest latency between two nodes within the limits of the given query context, guided by the given
+     * landmarks if they were built for this graph and the search is exact with them.
+     *
+     * @param graph     the graph to search
+     * @param source    the id of the start node
+     * @param target    the id of the end node
+     * @param landmarks the landmark index of the graph, or null for none
+     * @param context   the limits of the query, or null for none
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    int shortestLatency(CompiledGraph graph, int source, int target, LandmarkIndex landmarks, QueryContext context) {
+        if (landmarks != null && landmarks.graph() == graph && source != target && graph.minLatency() > 0) {
+            return guided(graph, source, target, landmarks, context);
+        }
+        return shortestLatency(graph, source, target, context);
+    }
+
+    /**
+     * Finds the shortest latency between two different nodes with an A* search whose heuristic is the landmark lower
+     * bound of the remaining distance. The bound is consistent, so the target is settled with its shortest latency the
+     * first time it is polled; nodes the landmarks prove unable to reach the target are never queued. Requires
+     * positive latencies.
+     *
+     * @param graph     the graph to search
+     * @param source    the id of the start node
+     * @param target    the id of the end node, different from the source
+     * @param landmarks the landmark index of the graph
+     * @param context   the limits of the query, or null for none
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    private int guided(CompiledGraph graph, int source, int target, LandmarkIndex landmarks, QueryContext context) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        Frontier frontier = forward;
+        frontier.reset(graph.nodeCount());
+        int estimate = landmarks.estimate(source, target);
+        if (estimate != UNREACHABLE) {
+            frontier.offer(source, estimate);
+        }
+        int best = UNREACHABLE;
+        while (frontier.size > 0) {
+            int priority = frontier.peekDistance();
+            int u = frontier.poll();
+            int distance = priority - landmarks.estimate(u, target);
+            if (u == target) {
+                best = distance;
+                break;
+            }
+            QueryContext.charge(context, 1);
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                int remaining = landmarks.estimate(v, target);
+                if (remaining != UNREACHABLE) {
+                    frontier.offer(v, (int) Math.min((long) distance + latencies[e] + remaining, UNREACHABLE - 1));
+                }
+            }
+        }
+        QueryMetrics.record(frontier.polls, frontier.offers, frontier.peak);
+        return best;
+    }
+
+    /**
+     * Finds the shortest latency between two nodes with a forward search that stops once no shorter trace can be
+     * found.
+     *
+     * @param graph  the graph to search
+     * @param source the id of the start node
+     * @param target the id of the end node
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     */
+    int unidirectional(CompiledGraph graph, int source, int target) {
+        return unidirectional(graph, source, target, null);
+    }
+
+    private int unidirectional(CompiledGraph graph, int source, int target, QueryContext context) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        Frontier frontier = forward;
+        frontier.reset(graph.nodeCount());
+        frontier.offer(source, 0);
+        int best = UNREACHABLE;
+        while (frontier.size > 0 && frontier.peekDistance() < best) {
+            int distance = frontier.peekDistance();
+            int u = frontier.poll();
+            QueryContext.charge(context, 1);
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                int reached = distance + latencies[e];
+                if (v == target && reached > 0 && reached < best) {
+                    best = reached;
+                }
+                frontier.offer(v, reached);
+            }
+        }
+        QueryMetrics.record(frontier.polls, frontier.offers, frontier.peak);
+        return best;
+    }
+
+    /**
+     * Finds the shortest latency between two different nodes by searching forward from the source and backward from
+     * the target until the frontiers can no longer improve the best meeting point. Requires positive latencies.
+     *
+     * @param graph  the graph to search
+     * @param source the id of the start node
+     * @param target the id of the end node, different from the source
+     * @return the shortest latency, or {@link #UNREACHABLE}
+     */
+    int bidirectional(CompiledGraph graph, int source, int target) {
+        return bidirectional(graph, source, target, null);
+    }
+
+    private int bidirectional(CompiledGraph graph, int source, int target, QueryContext context) {
+        CompiledGraph reversed = graph.reversed();
+        int n = graph.nodeCount();
+        forward.reset(n);
+        backward.reset(n);
+        forward.offer(source, 0);
+        backward.offer(target, 0);
+        long best = UNREACHABLE;
+        while (forward.size > 0 && backward.size > 0) {
+            if ((long) forward.peekDistance() + backward.peekDistance() >= best) {
+                break;
+            }
+            boolean expandForward = forward.size <= backward.size;
+            Frontier frontier = expandForward ? forward : backward;
+            Frontier opposite = expandForward ? backward : forward;
+            CompiledGraph direction = expandForward ? graph : reversed;
+            int distance = frontier.peekDistance();
+            int u = frontier.poll();
+            QueryContext.charge(context, 1);
+            for (int e = direction.offsets[u]; e < direction.offsets[u + 1]; e++) {
+                int v = direction.targets[e];
+                int reached = distance + direction.latencies[e];
+                frontier.offer(v, reached);
+                int remaining = opposite.distance(v);
+                if (remaining != UNREACHABLE && (long) reached + remaining < best) {
+                    best = (long) reached + remaining;
+                }
+            }
+        }
+        QueryMetrics.record(forward.polls + backward.polls, forward.offers + backward.offers,
+                forward.peak + backward.peak);
+        return (int) best;
+    }
+
+    /**
+     * Computes the shortest latency from the source to every node.
+     *
+     * @param graph  the graph to search
+     * @param source the id of the start node
+     * @param row    the array receiving the latency per target, or {@link #UNREACHABLE}
+     */
+    void latenciesFrom(CompiledGraph graph, int source, int[] row) {
+        latenciesFrom(graph, source, row, null);
+    }
+
+    /**
+     * Computes the shortest latency from the source to every node within the limits of the given query context. Large
+     * graphs are searched in parallel by {@link DeltaSteppingEngine}, with the same result.
+     *
+     * @param graph   the graph to search
+     * @param source  the id of the start node
+     * @param row     the array receiving the latency per target, or {@link #UNREACHABLE}
+     * @param context the limits of the query, or null for none
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    void latenciesFrom(CompiledGraph graph, int source, int[] row, QueryContext context) {
+        if (DeltaSteppingEngine.preferred(graph)) {
+            DeltaSteppingEngine.latenciesFrom(graph, source, row, context);
+            return;
+        }
+        sequentialLatenciesFrom(graph, source, row, context);
+    }
+
+    /**
+     * Computes the shortest latency from the source to every node on the calling thread.
+     *
+     * @param graph   the graph to search
+     * @param source  the id of the start node
+     * @param row     the array receiving the latency per target, or {@link #UNREACHABLE}
+     * @param context the limits of the query, or null for none
+     * @throws QueryBudgetExceededException if the search runs out of budget
+     */
+    void sequentialLatenciesFrom(CompiledGraph graph, int source, int[] row, QueryContext context) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        Frontier frontier = forward;
+        frontier.reset(graph.nodeCount());
+        Arrays.fill(row, UNREACHABLE);
+        frontier.offer(source, 0);
+        while (frontier.size > 0) {
+            int distance = frontier.peekDistance();
+            int u = frontier.poll();
+            QueryContext.charge(context, 1);
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                int reached = distance + latencies[e];
+                if (reached > 0 && reached < row[v]) {
+                    row[v] = reached;
+                }
+                frontier.offer(v, reached);
+            }
+        }
+        QueryMetrics.record(frontier.polls, frontier.offers, frontier.peak);
+    }
+
+    /**
+     * Computes the plain shortest distance from every node to the target, which is zero at the target itself.
+     *
+     * @param graph  the graph to search
+     * @param target the id of the end node
+     * @param row    the array receiving the distance per node, or {@link #UNREACHABLE}
+     */
+    void distancesTo(CompiledGraph graph, int target, int[] row) {
+        CompiledGraph reversed = graph.reversed();
+        int[] offsets = reversed.offsets;
+        int[] targets = reversed.targets;
+        int[] latencies = reversed.latencies;
+        Frontier frontier = backward;
+        frontier.reset(graph.nodeCount());
+        Arrays.fill(row, UNREACHABLE);
+        frontier.offer(target, 0);
+        while (frontier.size > 0) {
+            int distance = frontier.peekDistance();
+            int u = frontier.poll();
+            row[u] = distance;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                frontier.offer(targets[e], distance + latencies[e]);
+            }
+        }
+    }
+
+    /**
+     * Holds the tentative distances and the indexed 4-ary heap of one search direction. Entries are valid only if
+     * their stamp equals the current epoch, so a reset costs O(1). The frontier also counts the nodes it settles, the
+     * edges offered to it and its peak size for {@link QueryMetrics}.
+     */
+    static final class Frontier {
+        int[] distances = new int[0];
+        int[] stamps = new int[0];
+        int[] positions = new int[0];
+        int[] heap = new int[0];
+        int size;
+        int epoch;
+        long polls;
+        long offers;
+        int peak;
+
+        /**
+         * Prepares the frontier for a new search over the given number of nodes.
+         *
+         * @param nodeCount the number of nodes of the graph
+         */
+        void reset(int nodeCount) {
+            if (distances.length < nodeCount) {
+                distances = new int[nodeCount];
+                stamps = new int[nodeCount];
+                positions = new int[nodeCount];
+                heap = new int[nodeCount];
+                epoch = 0;
+            }
+            size = 0;
+            polls = 0;
+            offers = 0;
+            peak = 0;
+            if (++epoch == 0) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * Returns the tentative distance of the given node.
+         *
+         * @param node the id of the node
+         * @return the tentative distance, or {@link #UNREACHABLE} if the node was not reached yet
+         */
+        int distance(int node) {
+            return stamps[node] == epoch ? distances[node] : UNREACHABLE;
+        }
+
+        /**
+         * Lowers the tentative distance of the given node, inserting it into the heap on first reach.
+         *
+         * @param node     the id of the node
+         * @param distance the new tentative distance
+         */
+        void offer(int node, int distance) {
+            offers++;
+            if (stamps[node] != epoch) {
+                stamps[node] = epoch;
+                distances[node] = distance;
+                positions[node] = size;
+                heap[size++] = node;
+                peak = Math.max(peak, size);
+                siftUp(positions[node]);
+            } else if (distance < distances[node] && positions[node] >= 0) {
+                distances[node] = distance;
+                siftUp(positions[node]);
+            }
+        }
+
+        /**
+         * Returns the smallest tentative distance in the heap.
+         *
+         * @return the smallest tentative distance
+         */
+        int peekDistance() {
+            return distances[heap[0]];
+        }
+
+        /**
+         * Removes the node with the smallest tentative distance from the heap, settling it.
+         *
+         * @return the id of the settled node
+         */
+        int poll() {
+            polls++;
+            int top = heap[0];
+            positions[top] = -1;
+            int last = heap[--size];
+            if (size > 0) {
+                heap[0] = last;
+                positions[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int index) {
+            int node = heap[index];
+            int distance = distances[node];
+            while (index > 0) {
+                int parent = (index - 1) >>> 2;
+                int parentNode = heap[parent];
+                if (distances[parentNode] <= distance) {
+                    break;
+                }
+                heap[index] = parentNode;
+                positions[parentNode] = index;
+                index = parent;
+            }
+            heap[index] = node;
+            positions[node] = index;
+        }
+
+        private void siftDown(int index) {
+            int node = heap[index];
+            int distance = distances[node];
+            while (true) {
+                int first = (index << 2) + 1;
+                if (first >= size) {
+                    break;
+                }
+                int best = first;
+                int bestDistance = distances[heap[first]];
+                int last = Math.min(first + 4, size);
+                for (int child = first + 1; child < last; child++) {
+                    int childDistance = distances[heap[child]];
+                    if (childDistance < bestDistance) {
+                        best = child;
+                        bestDistance = childDistance;
+                    }
+                }
+                if (bestDistance >= distance) {
+                    break;
+                }
+                int bestNode = heap[best];
+                heap[index] = bestNode;
+                positions[bestNode] = index;
+                index = best;
+            }
+            heap[index] = node;
+            positions[node] = index;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Aggregates observed span durations per edge from caller to callee, so that queries can run against measured instead
+ * of configured latencies. Every edge keeps a count, a sum, the minimum and maximum and a log-linear histogram of its
+ * durations with the buckets of {@link QueryStats}, which bounds the error of a percentile to 25%.
+ * <p>
+ * Recording takes no lock: edges are found through two concurrent maps, which allocate only when an edge is first
+ * seen, and all counters are striped {@link LongAdder}s and {@link LongAccumulator}s, so threads recording the same
+ * edge at the same time do not contend on one cache line. Span lines are split by hand rather than by a regular
+ * expression, so parsing a line allocates only its three fields. Histogram buckets are allocated on first use, so an edge only pays for the buckets its
+ * durations fall into. {@link #publish} writes the chosen statistic of every edge into a {@link LiveGraph} as one new
+ * version.
+ */
+public final class SpanAggregator {
+
+    private static final int BUCKETS = QueryStats.bucket(Integer.MAX_VALUE) + 1;
+
+    private final Map<String, Map<String, EdgeStats>> edges = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+
+    /**
+     * Records one span from the caller to the callee.
+     *
+     * @param caller   the name of the calling node
+     * @param callee   the name of the called node
+     * @param duration the duration of the span, in the unit of the edge latencies
+     * @throws IllegalArgumentException if the duration is negative
+     */
+    public void record(String caller, String callee, long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Negative span duration: " + duration);
+        }
+        Map<String, EdgeStats> callees = edges.get(caller);
+        if (callees == null) {
+            callees = edges.computeIfAbsent(caller, name -> new ConcurrentHashMap<>());
+        }
+        EdgeStats stats = callees.get(callee);
+        if (stats == null) {
+            stats = callees.computeIfAbsent(callee, name -> new EdgeStats());
+        }
+        stats.add(duration);
+        events.increment();
+    }
+
+    /**
+     * Records one span given as a line of the form {@code caller,callee,duration}, separated by commas or whitespace.
+     * Blank lines are skipped.
+     *
+     * @param line the span line
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public void record(String line) {
+        int n = line.length();
+        int i = 0;
+        while (i < n && line.charAt(i) <= ' ') {
+            i++;
+        }
+        if (i == n) {
+            return;
+        }
+        String[] fields = new String[3];
+        int count = 0;
+        while (i < n) {
+            int start = i;
+            while (i < n && !separator(line.charAt(i))) {
+                i++;
+            }
+            if (i == start || count == fields.length) {
+                throw new IllegalArgumentException("Malformed span: " + line);
+            }
+            fields[count++] = line.substring(start, i);
+            while (i < n && separator(line.charAt(i))) {
+                i++;
+            }
+        }
+        if (count != fields.length) {
+            throw new IllegalArgumentException("Malformed span: " + line);
+        }
+        try {
+            record(fields[0], fields[1], Long.parseLong(fields[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed span: " + line);
+        }
+    }
+
+    private static boolean separator(char c) {
+        return c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Records every span line of a file on the common fork/join pool.
+     *
+     * @param file the span file, one span per line
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public void ingest(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.parallel().forEach(this::record);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the statistics of the edge from the caller to the callee.
+     *
+     * @param caller the name of the calling node
+     * @param callee the name of the called node
+     * @return the statistics, or null if no span of the edge was recorded
+     */
+    public EdgeStats stats(String caller, String callee) {
+        Map<String, EdgeStats> callees = edges.get(caller);
+        return callees == null ? null : callees.get(callee);
+    }
+
+    /**
+     * Returns the number of recorded spans.
+     *
+     * @return the span count
+     */
+    public long eventCount() {
+        return events.sum();
+    }
+
+    /**
+     * Returns the number of edges with recorded spans.
+     *
+     * @return the edge count
+     */
+    public int edgeCount() {
+        int count = 0;
+        for (Map<String, EdgeStats> callees : edges.values()) {
+            count += callees.size();
+        }
+        return count;
+    }
+
+    /**
+     * Passes every observed edge with its statistics to the given consumer.
+     *
+     * @param consumer the consumer of the edges
+     */
+    void forEachEdge(EdgeConsumer consumer) {
+        for (Map.Entry<String, Map<String, EdgeStats>> caller : edges.entrySet()) {
+            for (Map.Entry<String, EdgeStats> callee : caller.getValue().entrySet()) {
+                consumer.accept(caller.getKey(), callee.getKey(), callee.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the given statistic of every observed edge into the graph as one new version. Edges of the graph without
+     * spans keep their latency, and observed edges missing from the graph are added.
+     *
+     * @param graph     the graph to update
+     * @param statistic the statistic used as edge latency
+     * @return the published snapshot
+     */
+    public CompiledGraph publish(LiveGraph graph, Statistic statistic) {
+        CompiledGraph base = graph.snapshot();
+        LiveGraph.Batch batch = graph.batch();
+        for (Map.Entry<String, Map<String, EdgeStats>> caller : edges.entrySet()) {
+            int from = base.id(caller.getKey());
+            for (Map.Entry<String, EdgeStats> callee : caller.getValue().entrySet()) {
+                EdgeStats stats = callee.getValue();
+                if (stats.count() == 0) {
+                    continue;
+                }
+                int to = base.id(callee.getKey());
+                int latency = stats.latency(statistic);
+                if (from >= 0 && to >= 0 && base.findEdge(from, to) >= 0) {
+                    batch.updateLatency(caller.getKey(), callee.getKey(), latency);
+                } else {
+                    batch.addEdge(caller.getKey(), callee.getKey(), latency);
+                }
+            }
+        }
+        return batch.commit();
+    }
+
+    /**
+     * Receives the observed edges of an aggregator.
+     */
+    interface EdgeConsumer {
+        /**
+         * Receives one edge.
+         *
+         * @param caller the name of the calling node
+         * @param callee the name of the called node
+         * @param stats  the statistics of the edge
+         */
+        void accept(String caller, String callee, EdgeStats stats);
+    }
+
+    /**
+     * The statistic of the span durations used as the latency of an edge.
+     */
+    public enum Statistic {
+        MEAN,
+        P50,
+        P99,
+        MAX;
+
+        /**
+         * Parses a statistic from its name, ignoring case.
+         *
+         * @param name the name, such as {@code p99}
+         * @return the statistic
+         * @throws IllegalArgumentException if no statistic has the name
+         */
+        public static Statistic parse(String name) {
+            for (Statistic statistic : values()) {
+                if (statistic.name().equalsIgnoreCase(name)) {
+                    return statistic;
+                }
+            }
+            throw new IllegalArgumentException("Unknown statistic: " + name);
+        }
+    }
+
+    /**
+     * The aggregated span durations of one edge.
+     */
+    public static final class EdgeStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final AtomicReferenceArray<LongAdder> histogram = new AtomicReferenceArray<>(BUCKETS);
+
+        /**
+         * Adds one span duration.
+         *
+         * @param duration the non-negative duration
+         */
+        void add(long duration) {
+            count.increment();
+            sum.add(duration);
+            min.accumulate(duration);
+            max.accumulate(duration);
+            int bucket = QueryStats.bucket(Math.min(duration, Integer.MAX_VALUE));
+            LongAdder adder = histogram.get(bucket);
+            if (adder == null) {
+                histogram.compareAndSet(bucket, null, new LongAdder());
+                adder = histogram.get(bucket);
+            }
+            adder.increment();
+        }
+
+        /**
+         * Returns the number of spans.
+         *
+         * @return the span count
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the sum of the durations.
+         *
+         * @return the sum
+         */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * Returns the mean duration, rounded to the nearest unit.
+         *
+         * @return the mean, or 0 if no span was recorded
+         */
+        public long mean() {
+            long spans = count.sum();
+            return spans == 0 ? 0 : Math.round((double) sum.sum() / spans);
+        }
+
+        /**
+         * Returns the shortest duration.
+         *
+         * @return the minimum, or 0 if no span was recorded
+         */
+        public long min() {
+            return count.sum() == 0 ? 0 : min.get();
+        }
+
+        /**
+         * Returns the longest duration.
+         *
+         * @return the maximum
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Returns the upper bound of the histogram bucket holding the given quantile of the durations, clamped to the
+         * observed minimum and maximum.
+         *
+         * @param quantile the quantile between 0 and 1
+         * @return the duration, or 0 if no span was recorded
+         */
+        public long percentile(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                LongAdder adder = histogram.get(i);
+                counts[i] = adder == null ? 0 : adder.sum();
+                total += counts[i];
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.max(min(), Math.min(QueryStats.upperBound(i), max()));
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the given statistic as an edge latency.
+         *
+         * @param statistic the statistic
+         * @return the latency, capped at the largest int
+         */
+        public int latency(Statistic statistic) {
+            long value;
+            switch (statistic) {
+                case P50:
+                    value = percentile(0.5);
+                    break;
+                case P99:
+                    value = percentile(0.99);
+                    break;
+                case MAX:
+                    value = max();
+                    break;
+                default:
+                    value = mean();
+                    break;
+            }
+            return (int) Math.min(value, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * One trace through a {@link CompiledGraph}: the sequence of nodes it visits and its total latency. Traces are
+ * immutable and independent of the cursor that produced them.
+ */
+public final class Trace {
+
+    private final CompiledGraph graph;
+    private final int[] nodes;
+    private final long latency;
+
+    /**
+     * Constructs a Trace.
+     *
+     * @param graph   the graph the trace runs through
+     * @param nodes   the ids of the visited nodes, owned by the trace
+     * @param latency the total latency
+     */
+    Trace(CompiledGraph graph, int[] nodes, long latency) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.latency = latency;
+    }
+
+    /**
+     * Returns the number of hops.
+     *
+     * @return the number of edges of the trace
+     */
+    public int hops() {
+        return nodes.length - 1;
+    }
+
+    /**
+     * Returns the total latency.
+     *
+     * @return the sum of the edge latencies
+     */
+    public long latency() {
+        return latency;
+    }
+
+    /**
+     * Returns the id of the node at the given position.
+     *
+     * @param index the position in the trace, from 0 to {@link #hops()}
+     * @return the node id
+     */
+    public int node(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the names of the visited nodes.
+     *
+     * @return the node names in trace order
+     */
+    public String[] nodeNames() {
+        String[] names = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            names[i] = graph.name(nodes[i]);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the trace as its node names joined by dashes, e.g. {@code A-B-C}.
+     *
+     * @return the trace as a string
+     */
+    @Override
+    public String toString() {
+        return String.join("-", nodeNames());
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Enumerates the traces between two nodes lazily, one at a time, with a depth-first cursor. The cursor keeps the
+ * current path, the next edge to try at every depth and the latency so far in primitive arrays that are reused for the
+ * whole enumeration, so memory stays proportional to the longest trace no matter how many traces exist.
+ * <p>
+ * Before the search, the hop and latency distances from every node to the target are computed on the reversed graph.
+ * A branch is cut as soon as even the shortest continuation to the target would break the hop or latency limit, so
+ * the cursor never walks into parts of the graph that cannot produce a trace. Traces are the same walks that
+ * {@link HopCounter} and {@link LatencyCounter} count: they may revisit nodes, and parallel edges give distinct traces.
+ */
+public final class TraceEnumerator implements Iterator<Trace> {
+
+    /**
+     * The limit value meaning that hops or latency are not limited.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final CompiledGraph graph;
+    private final int target;
+    private final int minHops;
+    private final int maxHops;
+    private final long maxLatency;
+    private final int[] hopsToTarget;
+    private final int[] latencyToTarget;
+
+    private int[] path = new int[16];
+    private int[] nextEdge = new int[16];
+    private long[] latencyAt = new long[16];
+    private int depth;
+    private Trace next;
+
+    /**
+     * Constructs a TraceEnumerator. At least one of the hop and latency limits must be bounded, and a latency limit
+     * alone only bounds the traces if no cycle of zero-latency edges between the source and the target can be walked
+     * forever.
+     *
+     * @param graph      the graph to enumerate in
+     * @param source     the id of the start node
+     * @param target     the id of the end node
+     * @param minHops    the minimum number of hops
+     * @param maxHops    the maximum number of hops, or {@link #UNBOUNDED}
+     * @param maxLatency the exclusive latency limit, or {@link #UNBOUNDED}
+     * @throws IllegalArgumentException if neither limit is bounded
+     * @throws IllegalStateException    if only the latency is bounded and the traces can loop through a cycle of
+     *                                  zero-latency edges
+     */
+    public TraceEnumerator(CompiledGraph graph, int source, int target, int minHops, int maxHops, int maxLatency) {
+        if (maxHops == UNBOUNDED && maxLatency == UNBOUNDED) {
+            throw new IllegalArgumentException("Either the hops or the latency must be bounded");
+        }
+        if (maxHops == UNBOUNDED) {
+            LatencyCounter.zeroLatencyOrder(graph, new int[]{source}, new int[]{target});
+        }
+        this.graph = graph;
+        this.target = target;
+        this.minHops = Math.max(minHops, 1);
+        this.maxHops = maxHops;
+        this.maxLatency = maxLatency == UNBOUNDED ? Long.MAX_VALUE : maxLatency;
+        this.hopsToTarget = maxHops != UNBOUNDED ? hopsToTarget(graph, target) : null;
+        this.latencyToTarget = maxLatency != UNBOUNDED ? new int[graph.nodeCount()] : null;
+        if (latencyToTarget != null) {
+            ShortestLatencyEngine.current().distancesTo(graph, target, latencyToTarget);
+        }
+        path[0] = source;
+        nextEdge[0] = graph.offsets[source];
+        if (!reachable(source, 0, 0)) {
+            depth = -1;
+        }
+    }
+
+    /**
+     * Streams the traces between two nodes lazily. The stream is sequential and ordered; short-circuiting operations
+     * such as {@link Stream#limit(long)} and {@link Stream#findFirst()} stop the search early.
+     *
+     * @param graph      the graph to enumerate in
+     * @param source     the id of the start node
+     * @param target     the id of the end node
+     * @param minHops    the minimum number of hops
+     * @param maxHops    the maximum number of hops, or {@link #UNBOUNDED}
+     * @param maxLatency the exclusive latency limit, or {@link #UNBOUNDED}
+     * @return the stream of traces
+     * @throws IllegalStateException when consumed, if only the latency is bounded and the traces can loop through a
+     *                               cycle of zero-latency edges
+     */
+    public static Stream<Trace> stream(CompiledGraph graph, int source, int target, int minHops, int maxHops,
+                                       int maxLatency) {
+        return StreamSupport.stream(() -> Spliterators.spliteratorUnknownSize(
+                        new TraceEnumerator(graph, source, target, minHops, maxHops, maxLatency),
+                        Spliterator.ORDERED | Spliterator.NONNULL),
+                Spliterator.ORDERED | Spliterator.NONNULL, false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Trace next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Trace trace = next;
+        next = null;
+        return trace;
+    }
+
+    /**
+     * Moves the cursor to the next trace.
+     *
+     * @return the next trace, or null if the enumeration is exhausted
+     */
+    private Trace advance() {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] latencies = graph.latencies;
+        while (depth >= 0) {
+            int u = path[depth];
+            int e = nextEdge[depth];
+            if (e == offsets[u + 1] || depth == maxHops) {
+                depth--;
+                continue;
+            }
+            nextEdge[depth] = e + 1;
+            int v = targets[e];
+            long latency = latencyAt[depth] + latencies[e];
+            if (!reachable(v, depth + 1, latency)) {
+                continue;
+            }
+            push(v, latency);
+            if (v == target && depth >= minHops) {
+                return new Trace(graph, Arrays.copyOf(path, depth + 1), latency);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decides whether the target can still be reached from the given node within the limits.
+     *
+     * @param node    the id of the node
+     * @param hops    the number of hops taken to reach the node
+     * @param latency the latency accumulated to reach the node
+     * @return true if a trace may continue through the node
+     */
+    private boolean reachable(int node, int hops, long latency) {
+        if (latency >= maxLatency) {
+            return false;
+        }
+        if (hopsToTarget != null) {
+            int remaining = hopsToTarget[node];
+            if (remaining == UNREACHABLE || hops + (long) remaining > maxHops) {
+                return false;
+            }
+        }
+        if (latencyToTarget != null) {
+            int remaining = latencyToTarget[node];
+            return remaining != UNREACHABLE && latency + remaining < maxLatency;
+        }
+        return true;
+    }
+
+    private void push(int node, long latency) {
+        depth++;
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+            nextEdge = Arrays.copyOf(nextEdge, depth * 2);
+            latencyAt = Arrays.copyOf(latencyAt, depth * 2);
+        }
+        path[depth] = node;
+        nextEdge[depth] = graph.offsets[node];
+        latencyAt[depth] = latency;
+    }
+
+    /**
+     * Computes the smallest number of hops from every node to the target, counting zero hops at the target.
+     *
+     * @param graph  the graph to search
+     * @param target the id of the end node
+     * @return the hops per node, or {@link #UNREACHABLE}
+     */
+    private static int[] hopsToTarget(CompiledGraph graph, int target) {
+        CompiledGraph reversed = graph.reversed();
+        int[] hops = new int[graph.nodeCount()];
+        Arrays.fill(hops, UNREACHABLE);
+        int[] queue = new int[graph.nodeCount()];
+        int head = 0;
+        int tail = 0;
+        hops[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = reversed.offsets[u]; e < reversed.offsets[u + 1]; e++) {
+                int v = reversed.targets[e];
+                if (hops[v] == UNREACHABLE) {
+                    hops[v] = hops[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return hops;
+    }
+}
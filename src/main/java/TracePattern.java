@@ -0,0 +1,491 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A regular expression over the node sequence of a trace, compiled to a deterministic finite automaton. The pattern
+ * must match the whole sequence, start and end node included; tokens are separated by whitespace or operators:
+ * <ul>
+ * <li>{@code A} matches the node named A, and {@code .} matches any node;</li>
+ * <li>{@code [A B]} matches any of the listed nodes, {@code [^A B]} any node except them;</li>
+ * <li>{@code (...)} groups, {@code |} separates alternatives, and a postfix {@code *}, {@code +} or {@code ?} repeats
+ * the preceding item any number of times, at least once or at most once.</li>
+ * </ul>
+ * For example {@code A .* D .* C} matches the traces from A to C through D, {@code A [^E]* C} those avoiding E in
+ * between, and {@code A (B|E)* C} those that only pass B and E. Names may contain dots; a dot on its own is the
+ * wildcard.
+ * <p>
+ * The automaton reads one symbol per node. Its alphabet has one symbol per node named in the pattern and one for all
+ * other nodes, so it is independent of the graph. It is built by subset construction from a Thompson automaton and is
+ * deterministic, so a trace matches along exactly one run and counting the runs over the graph counts every matching
+ * trace once, see {@link PatternProduct}. States that cannot reach acceptance are dropped.
+ */
+public final class TracePattern {
+
+    /**
+     * The largest number of automaton states a pattern may compile to.
+     */
+    static final int MAX_STATES = 4096;
+
+    static final int DEAD = -1;
+
+    private final String pattern;
+    private final String[] names;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    /**
+     * Constructs a TracePattern.
+     *
+     * @param pattern     the source text
+     * @param names       the node names of the pattern, one symbol each
+     * @param transitions the next state per state and symbol, or {@link #DEAD}
+     * @param accepting   whether each state accepts
+     */
+    private TracePattern(String pattern, String[] names, int[] transitions, boolean[] accepting) {
+        this.pattern = pattern;
+        this.names = names;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Compiles a pattern.
+     *
+     * @param pattern the source text
+     * @return the compiled pattern
+     * @throws IllegalArgumentException if the pattern is malformed or compiles to more than {@value #MAX_STATES}
+     *                                  states
+     */
+    public static TracePattern compile(String pattern) {
+        Parser parser = new Parser(pattern);
+        Node root = parser.parse();
+        String[] names = parser.names.keySet().toArray(new String[0]);
+        Nfa nfa = new Nfa(names.length + 1);
+        int accept = nfa.state();
+        int start = root.build(nfa, accept);
+        return determinize(pattern, names, nfa, start, accept);
+    }
+
+    /**
+     * Decides whether the given node sequence matches the pattern.
+     *
+     * @param nodes the names of the nodes of the sequence
+     * @return true if the whole sequence matches
+     */
+    public boolean matches(String... nodes) {
+        int state = 0;
+        for (String node : nodes) {
+            if (state == DEAD) {
+                return false;
+            }
+            state = step(state, symbol(node));
+        }
+        return state != DEAD && accepting[state];
+    }
+
+    /**
+     * Returns the number of states of the automaton.
+     *
+     * @return the state count
+     */
+    public int stateCount() {
+        return accepting.length;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * Returns the node names of the pattern; the symbol of a name is its index and all other nodes share the symbol
+     * after the last name.
+     *
+     * @return the names
+     */
+    String[] names() {
+        return names;
+    }
+
+    /**
+     * Returns the symbol of the node with the given name.
+     *
+     * @param name the name of the node
+     * @return the symbol
+     */
+    int symbol(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return names.length;
+    }
+
+    /**
+     * Returns the state reached from the given state by reading the given symbol. The start state is 0.
+     *
+     * @param state  the current state
+     * @param symbol the symbol read
+     * @return the next state, or {@link #DEAD} if no continuation can match
+     */
+    int step(int state, int symbol) {
+        return transitions[state * (names.length + 1) + symbol];
+    }
+
+    /**
+     * Decides whether the given state accepts.
+     *
+     * @param state the state
+     * @return true if a sequence ending in this state matches
+     */
+    boolean accepting(int state) {
+        return accepting[state];
+    }
+
+    /**
+     * Builds the deterministic automaton by subset construction and drops the states that cannot reach acceptance.
+     */
+    private static TracePattern determinize(String pattern, String[] names, Nfa nfa, int start, int accept) {
+        int symbols = names.length + 1;
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> sets = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        BitSet initial = nfa.closure(single(start));
+        ids.put(initial, 0);
+        sets.add(initial);
+        for (int i = 0; i < sets.size(); i++) {
+            int[] row = new int[symbols];
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                BitSet next = nfa.closure(nfa.move(sets.get(i), symbol));
+                if (next.isEmpty()) {
+                    row[symbol] = DEAD;
+                    continue;
+                }
+                Integer id = ids.get(next);
+                if (id == null) {
+                    if (sets.size() == MAX_STATES) {
+                        throw new IllegalArgumentException("Pattern compiles to more than " + MAX_STATES
+                                + " states: " + pattern);
+                    }
+                    id = sets.size();
+                    ids.put(next, id);
+                    sets.add(next);
+                }
+                row[symbol] = id;
+            }
+            rows.add(row);
+        }
+
+        int states = sets.size();
+        boolean[] live = new boolean[states];
+        boolean changed = true;
+        for (int state = 0; state < states; state++) {
+            live[state] = sets.get(state).get(accept);
+        }
+        while (changed) {
+            changed = false;
+            for (int state = 0; state < states; state++) {
+                for (int symbol = 0; symbol < symbols && !live[state]; symbol++) {
+                    int next = rows.get(state)[symbol];
+                    if (next != DEAD && live[next]) {
+                        live[state] = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        int[] transitions = new int[states * symbols];
+        boolean[] accepting = new boolean[states];
+        for (int state = 0; state < states; state++) {
+            accepting[state] = sets.get(state).get(accept);
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int next = rows.get(state)[symbol];
+                transitions[state * symbols + symbol] = next != DEAD && live[next] ? next : DEAD;
+            }
+        }
+        return new TracePattern(pattern, names, transitions, accepting);
+    }
+
+    private static BitSet single(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    /**
+     * A nondeterministic automaton whose states have epsilon moves and at most one set of symbols to move on.
+     */
+    private static final class Nfa {
+        final int symbols;
+        final List<int[]> epsilons = new ArrayList<>();
+        final List<boolean[]> labels = new ArrayList<>();
+        final List<Integer> nexts = new ArrayList<>();
+
+        /**
+         * Constructs an Nfa.
+         *
+         * @param symbols the size of the alphabet
+         */
+        Nfa(int symbols) {
+            this.symbols = symbols;
+        }
+
+        /**
+         * Adds a state without moves.
+         *
+         * @return the new state
+         */
+        int state() {
+            epsilons.add(new int[0]);
+            labels.add(null);
+            nexts.add(DEAD);
+            return epsilons.size() - 1;
+        }
+
+        /**
+         * Adds a state that moves to the given states without reading a symbol.
+         *
+         * @param targets the states moved to
+         * @return the new state
+         */
+        int split(int... targets) {
+            int state = state();
+            epsilons.set(state, targets);
+            return state;
+        }
+
+        /**
+         * Adds a state that moves to the given state on any of the given symbols.
+         *
+         * @param label  whether each symbol is accepted
+         * @param target the state moved to
+         * @return the new state
+         */
+        int symbol(boolean[] label, int target) {
+            int state = state();
+            labels.set(state, label);
+            nexts.set(state, target);
+            return state;
+        }
+
+        /**
+         * Redirects the epsilon moves of a split state, closing a loop.
+         *
+         * @param state   the split state
+         * @param targets the states moved to
+         */
+        void link(int state, int... targets) {
+            epsilons.set(state, targets);
+        }
+
+        BitSet closure(BitSet states) {
+            BitSet closure = (BitSet) states.clone();
+            Deque<Integer> pending = new ArrayDeque<>();
+            states.stream().forEach(pending::push);
+            while (!pending.isEmpty()) {
+                for (int target : epsilons.get(pending.pop())) {
+                    if (!closure.get(target)) {
+                        closure.set(target);
+                        pending.push(target);
+                    }
+                }
+            }
+            return closure;
+        }
+
+        BitSet move(BitSet states, int symbol) {
+            BitSet moved = new BitSet();
+            for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                boolean[] label = labels.get(state);
+                if (label != null && label[symbol]) {
+                    moved.set(nexts.get(state));
+                }
+            }
+            return moved;
+        }
+    }
+
+    /**
+     * A node of the parsed pattern.
+     */
+    private interface Node {
+
+        /**
+         * Adds the states matching this node to the automaton.
+         *
+         * @param nfa  the automaton
+         * @param next the state to continue with after a match
+         * @return the state that starts a match
+         */
+        int build(Nfa nfa, int next);
+    }
+
+    /**
+     * A recursive-descent parser of the pattern syntax.
+     */
+    private static final class Parser {
+        final String text;
+        final Map<String, Integer> names = new LinkedHashMap<>();
+        int position;
+
+        /**
+         * Constructs a Parser.
+         *
+         * @param text the pattern
+         */
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parse() {
+            Node node = alternation();
+            skipSpaces();
+            if (position < text.length()) {
+                throw error("Unexpected '" + text.charAt(position) + "'");
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (accept('|')) {
+                alternatives.add(sequence());
+            }
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+            return (nfa, next) -> {
+                int[] starts = new int[alternatives.size()];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = alternatives.get(i).build(nfa, next);
+                }
+                return nfa.split(starts);
+            };
+        }
+
+        private Node sequence() {
+            List<Node> items = new ArrayList<>();
+            skipSpaces();
+            while (position < text.length() && text.charAt(position) != '|' && text.charAt(position) != ')') {
+                items.add(repetition());
+                skipSpaces();
+            }
+            return (nfa, next) -> {
+                int start = next;
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    start = items.get(i).build(nfa, start);
+                }
+                return start;
+            };
+        }
+
+        private Node repetition() {
+            Node node = atom();
+            skipSpaces();
+            while (position < text.length() && "*+?".indexOf(text.charAt(position)) >= 0) {
+                char operator = text.charAt(position++);
+                Node item = node;
+                if (operator == '?') {
+                    node = (nfa, next) -> nfa.split(item.build(nfa, next), next);
+                } else {
+                    node = (nfa, next) -> {
+                        int loop = nfa.split();
+                        int start = item.build(nfa, loop);
+                        nfa.link(loop, start, next);
+                        return operator == '*' ? loop : start;
+                    };
+                }
+                skipSpaces();
+            }
+            return node;
+        }
+
+        private Node atom() {
+            skipSpaces();
+            if (accept('(')) {
+                Node node = alternation();
+                if (!accept(')')) {
+                    throw error("Missing ')'");
+                }
+                return node;
+            }
+            if (accept('[')) {
+                boolean negated = accept('^');
+                List<String> members = new ArrayList<>();
+                while (!accept(']')) {
+                    skipSpaces();
+                    if (position == text.length()) {
+                        throw error("Missing ']'");
+                    }
+                    members.add(name());
+                }
+                for (String member : members) {
+                    names.putIfAbsent(member, names.size());
+                }
+                return (nfa, next) -> {
+                    boolean[] label = new boolean[nfa.symbols];
+                    Arrays.fill(label, negated);
+                    for (String member : members) {
+                        label[names.get(member)] = !negated;
+                    }
+                    return nfa.symbol(label, next);
+                };
+            }
+            String name = name();
+            if (name.equals(".")) {
+                return (nfa, next) -> {
+                    boolean[] label = new boolean[nfa.symbols];
+                    Arrays.fill(label, true);
+                    return nfa.symbol(label, next);
+                };
+            }
+            names.putIfAbsent(name, names.size());
+            return (nfa, next) -> {
+                boolean[] label = new boolean[nfa.symbols];
+                label[names.get(name)] = true;
+                return nfa.symbol(label, next);
+            };
+        }
+
+        private String name() {
+            int start = position;
+            while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                    && "()|*+?[]^".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (position == start) {
+                throw error(position < text.length() ? "Unexpected '" + text.charAt(position) + "'"
+                        : "Unexpected end");
+            }
+            return text.substring(start, position);
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of pattern: " + text);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Scores observed traces against the topology in bulk. A trace file holds one trace per line, its node names separated
+ * by commas or whitespace, such as {@code A,B,C} or {@code A B C}. Blank lines are skipped.
+ * <p>
+ * The file is read in blocks that are cut at line ends and scored in parallel, with a bounded number of blocks in
+ * flight so memory stays constant for any file size. Node names are resolved straight from the bytes of the block and
+ * every hop is looked up in a hash table keyed by the pair of node ids, so scoring a trace costs one probe per hop
+ * instead of a scan over the adjacency list. Latencies are kept as {@code long}s, with {@link #NO_SUCH_TRACE} marking
+ * invalid traces, and written as decimal bytes without creating a String per trace. Like
+ * {@link InstanaTracer#calculateTraceLatency}, a hop takes the first of several parallel edges.
+ */
+public final class TraceScorer {
+
+    /**
+     * The score of a trace that uses an unknown node or a missing edge.
+     */
+    public static final long NO_SUCH_TRACE = -1;
+
+    static final int BLOCK_SIZE = 1 << 20;
+
+    private static final byte[] NO_SUCH_TRACE_BYTES = "NO SUCH TRACE".getBytes(StandardCharsets.UTF_8);
+
+    private final CompiledGraph graph;
+    private final EdgeIndex edges;
+
+    /**
+     * Constructs a TraceScorer and builds the edge index of the given graph.
+     *
+     * @param graph the graph to score traces against
+     */
+    public TraceScorer(CompiledGraph graph) {
+        this.graph = graph;
+        this.edges = new EdgeIndex(graph);
+    }
+
+    /**
+     * Scores one trace given by node ids.
+     *
+     * @param nodes  the ids of the visited nodes, negative for unknown nodes
+     * @param length the number of nodes of the trace
+     * @return the total latency, or {@link #NO_SUCH_TRACE}
+     */
+    public long score(int[] nodes, int length) {
+        long latency = 0;
+        for (int i = 0; i < length - 1; i++) {
+            int edge = nodes[i] < 0 || nodes[i + 1] < 0 ? -1 : edges.find(nodes[i], nodes[i + 1]);
+            if (edge < 0) {
+                return NO_SUCH_TRACE;
+            }
+            latency += graph.latencies[edge];
+        }
+        return latency;
+    }
+
+    /**
+     * Scores every trace of a trace file and writes one line per trace, either its latency or "NO SUCH TRACE".
+     *
+     * @param file the path of the trace file
+     * @param out  the stream receiving the scores, in file order
+     * @param pool the pool scoring the blocks
+     * @return the number of traces scored
+     * @throws IOException          if the file cannot be read or the scores cannot be written
+     * @throws InterruptedException if the thread is interrupted while waiting for a block
+     */
+    public long score(Path file, OutputStream out, ExecutorService pool) throws IOException, InterruptedException {
+        return score(file, out, pool, BLOCK_SIZE, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Scores every trace of a trace file with the given block size and number of blocks in flight.
+     *
+     * @param file      the path of the trace file
+     * @param out       the stream receiving the scores, in file order
+     * @param pool      the pool scoring the blocks
+     * @param blockSize the number of bytes read per block, extended to the next line end
+     * @param inFlight  the maximum number of blocks read but not yet written
+     * @return the number of traces scored
+     * @throws IOException          if the file cannot be read or the scores cannot be written
+     * @throws InterruptedException if the thread is interrupted while waiting for a block
+     */
+    long score(Path file, OutputStream out, ExecutorService pool, int blockSize, int inFlight)
+            throws IOException, InterruptedException {
+        Deque<Future<Scores>> pending = new ArrayDeque<>();
+        Writer writer = new Writer(out);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long end = lineEnd(channel, Math.min(position + blockSize, size), size);
+                ByteBuffer block = ByteBuffer.allocate((int) (end - position));
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0) {
+                        throw new IOException("Unexpected end of " + file);
+                    }
+                }
+                block.flip();
+                if (pending.size() == inFlight) {
+                    writer.write(await(pending.removeFirst()));
+                }
+                pending.addLast(pool.submit(() -> scoreBlock(block)));
+                position = end;
+            }
+            while (!pending.isEmpty()) {
+                writer.write(await(pending.removeFirst()));
+            }
+        } finally {
+            for (Future<Scores> future : pending) {
+                future.cancel(true);
+            }
+        }
+        writer.flush();
+        return writer.written;
+    }
+
+    /**
+     * Scores the traces of one block of whole lines.
+     *
+     * @param block the bytes of the block, backed by an array
+     * @return the scores in line order
+     */
+    Scores scoreBlock(ByteBuffer block) {
+        NameDictionary names = graph.names;
+        Scores scores = new Scores();
+        byte[] bytes = block.array();
+        int[] nodes = new int[16];
+        int limit = block.limit();
+        int position = 0;
+        while (position < limit) {
+            int length = 0;
+            while (position < limit && bytes[position] != '\n') {
+                if (isSeparator(bytes[position])) {
+                    position++;
+                    continue;
+                }
+                int start = position;
+                while (position < limit && !isSeparator(bytes[position]) && bytes[position] != '\n') {
+                    position++;
+                }
+                if (length == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, length * 2);
+                }
+                nodes[length++] = names.id(bytes, start, position - start);
+            }
+            position++;
+            if (length > 0) {
+                scores.add(score(nodes, length));
+            }
+        }
+        return scores;
+    }
+
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Scores await(Future<Scores> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to score traces", e.getCause());
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ',' || b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * The scores of one block, in a growable primitive array.
+     */
+    static final class Scores {
+        long[] values = new long[256];
+        int size;
+
+        /**
+         * Adds the score of the next trace.
+         *
+         * @param score the latency, or {@link #NO_SUCH_TRACE}
+         */
+        void add(long score) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = score;
+        }
+    }
+
+    /**
+     * Formats scores as decimal lines into a reusable byte buffer.
+     */
+    private static final class Writer {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[1 << 16];
+        private int size;
+        long written;
+
+        /**
+         * Constructs a Writer.
+         *
+         * @param out the stream receiving the scores
+         */
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes the scores of one block.
+         *
+         * @param scores the scores
+         * @throws IOException if the scores cannot be written
+         */
+        void write(Scores scores) throws IOException {
+            for (int i = 0; i < scores.size; i++) {
+                if (size + 21 > buffer.length) {
+                    out.write(buffer, 0, size);
+                    size = 0;
+                }
+                long value = scores.values[i];
+                if (value == NO_SUCH_TRACE) {
+                    System.arraycopy(NO_SUCH_TRACE_BYTES, 0, buffer, size, NO_SUCH_TRACE_BYTES.length);
+                    size += NO_SUCH_TRACE_BYTES.length;
+                } else {
+                    int digits = 1;
+                    for (long rest = value / 10; rest > 0; rest /= 10) {
+                        digits++;
+                    }
+                    for (int d = size + digits - 1; d >= size; d--) {
+                        buffer[d] = (byte) ('0' + value % 10);
+                        value /= 10;
+                    }
+                    size += digits;
+                }
+                buffer[size++] = '\n';
+            }
+            written += scores.size;
+        }
+
+        /**
+         * Writes out the buffered scores.
+         *
+         * @throws IOException if the scores cannot be written
+         */
+        void flush() throws IOException {
+            out.write(buffer, 0, size);
+            size = 0;
+            out.flush();
+        }
+    }
+
+    /**
+     * An open-addressing hash table from a pair of node ids to the first edge between them. Keys and values sit in
+     * parallel primitive arrays at a load factor of at most one half, probed linearly.
+     */
+    static final class EdgeIndex {
+        private final long[] keys;
+        private final int[] edges;
+        private final int mask;
+
+        /**
+         * Constructs an EdgeIndex over all edges of the given graph.
+         *
+         * @param graph the graph to index
+         */
+        EdgeIndex(CompiledGraph graph) {
+            int capacity = Integer.highestOneBit(Math.max(graph.edgeCount(), 1) * 2 - 1) << 1;
+            keys = new long[capacity];
+            edges = new int[capacity];
+            Arrays.fill(edges, -1);
+            mask = capacity - 1;
+            for (int from = 0; from < graph.nodeCount(); from++) {
+                for (int e = graph.offsets[from]; e < graph.offsets[from + 1]; e++) {
+                    long key = key(from, graph.targets[e]);
+                    int slot = slot(key);
+                    while (edges[slot] >= 0 && keys[slot] != key) {
+                        slot = (slot + 1) & mask;
+                    }
+                    if (edges[slot] < 0) {
+                        keys[slot] = key;
+                        edges[slot] = e;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the first edge from one node to another.
+         *
+         * @param from the id of the source node
+         * @param to   the id of the destination node
+         * @return the index of the edge, or -1 if no such edge exists
+         */
+        int find(int from, int to) {
+            long key = key(from, to);
+            for (int slot = slot(key); edges[slot] >= 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return edges[slot];
+                }
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+
+        private static long key(int from, int to) {
+            return (long) from << 32 | to & 0xFFFFFFFFL;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the observed edges of a graph per time epoch in a fixed ring, so that queries can run against the topology of
+ * a sliding window, such as the last five minutes or the hour before the current one. Every epoch is a
+ * {@link SpanAggregator} that records the spans whose timestamps fall into it without taking a lock. The ring holds
+ * the given number of epochs; an epoch expires by being overwritten when its slot is reused, so memory is bounded by
+ * the retention and expiry costs one reference swap. Spans older than the retention are dropped.
+ * <p>
+ * A window's graph has every edge observed in one of its epochs, with the mean duration over the window as latency.
+ * Windows are maintained incrementally: a window keeps the count and duration sum of every edge, and when it is asked
+ * for again it subtracts the epochs that left it and adds the epochs that entered or changed, using an immutable
+ * snapshot of every epoch taken at most once per change. Only epochs still receiving spans are read again.
+ */
+public final class WindowedGraphStore {
+
+    private static final int MAX_WINDOWS = 16;
+
+    private final long epochMillis;
+    private final AtomicReferenceArray<Epoch> ring;
+    private final LongAccumulator latest = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAdder dropped = new LongAdder();
+    private final Map<Long, Window> windows = new LinkedHashMap<Long, Window>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+            return size() > MAX_WINDOWS;
+        }
+    };
+
+    /**
+     * Constructs a WindowedGraphStore.
+     *
+     * @param epochLength the length of one epoch
+     * @param unit        the unit of the epoch length
+     * @param retention   the number of epochs kept
+     * @throws IllegalArgumentException if the epoch length or retention is not positive
+     */
+    public WindowedGraphStore(long epochLength, TimeUnit unit, int retention) {
+        this.epochMillis = unit.toMillis(epochLength);
+        if (epochMillis <= 0 || retention <= 0) {
+            throw new IllegalArgumentException("Epoch length and retention must be positive: " + epochLength + " "
+                    + unit + ", " + retention);
+        }
+        this.ring = new AtomicReferenceArray<>(retention);
+    }
+
+    /**
+     * Records one span at the given time. A span newer than every epoch starts a new epoch, expiring the oldest.
+     *
+     * @param caller    the name of the calling node
+     * @param callee    the name of the called node
+     * @param duration  the duration of the span
+     * @param timestamp the time of the span in milliseconds since the epoch
+     * @return true if the span was recorded, false if it is older than the retention
+     * @throws IllegalArgumentException if the duration is negative
+     */
+    public boolean record(String caller, String callee, long duration, long timestamp) {
+        Epoch epoch = epoch(Math.floorDiv(timestamp, epochMillis));
+        if (epoch == null) {
+            dropped.increment();
+            return false;
+        }
+        epoch.spans.record(caller, callee, duration);
+        return true;
+    }
+
+    /**
+     * Returns the number of spans dropped because they were older than the retention.
+     *
+     * @return the dropped span count
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of epochs the store keeps.
+     *
+     * @return the retention in epochs
+     */
+    public int retention() {
+        return ring.length();
+    }
+
+    /**
+     * Returns the graph of the given number of most recent epochs, including the current one.
+     *
+     * @param epochs the length of the window in epochs
+     * @return the graph of the window
+     */
+    public CompiledGraph window(int epochs) {
+        return window(epochs, 0);
+    }
+
+    /**
+     * Returns the graph of a window of epochs that ends the given number of epochs before the current one, so that
+     * {@code window(12, 12)} with five-minute epochs is the hour before the last hour.
+     *
+     * @param epochs    the length of the window in epochs
+     * @param epochsAgo the number of epochs between the end of the window and the current epoch
+     * @return the graph of the window
+     * @throws IllegalArgumentException if the window is empty or reaches past the retention
+     */
+    public CompiledGraph window(int epochs, int epochsAgo) {
+        if (epochs <= 0 || epochsAgo < 0 || (long) epochs + epochsAgo > ring.length()) {
+            throw new IllegalArgumentException("Window of " + epochs + " epochs ending " + epochsAgo
+                    + " epochs ago exceeds the retention of " + ring.length() + " epochs");
+        }
+        long head = latest.get();
+        if (head == Long.MIN_VALUE) {
+            return CompiledGraph.builder().build();
+        }
+        long key = (long) epochs << 32 | epochsAgo;
+        synchronized (windows) {
+            Window window = windows.get(key);
+            if (window == null) {
+                window = new Window();
+                windows.put(key, window);
+            }
+            return window.update(this, head - epochsAgo - epochs + 1, head - epochsAgo);
+        }
+    }
+
+    /**
+     * Returns the epoch with the given number, starting it if it is newer than the epoch in its slot.
+     *
+     * @param number the epoch number
+     * @return the epoch, or null if it has expired
+     */
+    private Epoch epoch(long number) {
+        long head = latest.get();
+        if (head != Long.MIN_VALUE && number <= head - ring.length()) {
+            return null;
+        }
+        int slot = (int) Math.floorMod(number, (long) ring.length());
+        while (true) {
+            Epoch epoch = ring.get(slot);
+            if (epoch != null && epoch.number == number) {
+                return epoch;
+            }
+            if (epoch != null && epoch.number > number) {
+                return null;
+            }
+            Epoch started = new Epoch(number);
+            if (ring.compareAndSet(slot, epoch, started)) {
+                latest.accumulate(number);
+                return started;
+            }
+        }
+    }
+
+    /**
+     * Returns the epoch with the given number if the ring still holds it.
+     *
+     * @param number the epoch number
+     * @return the epoch, or null if it was never started or has expired
+     */
+    private Epoch existing(long number) {
+        Epoch epoch = ring.get((int) Math.floorMod(number, (long) ring.length()));
+        return epoch != null && epoch.number == number ? epoch : null;
+    }
+
+    /**
+     * One epoch of the ring.
+     */
+    private static final class Epoch {
+        final long number;
+        final SpanAggregator spans = new SpanAggregator();
+        private volatile Delta delta;
+
+        /**
+         * Constructs an Epoch.
+         *
+         * @param number the epoch number
+         */
+        Epoch(long number) {
+            this.number = number;
+        }
+
+        /**
+         * Returns an immutable snapshot of the edges of this epoch, taken again only if spans arrived since.
+         *
+         * @return the snapshot
+         */
+        Delta delta() {
+            long events = spans.eventCount();
+            Delta current = delta;
+            if (current == null || current.events != events) {
+                current = new Delta(spans, events);
+                delta = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the edge counts and duration sums of one epoch.
+     */
+    private static final class Delta {
+        final long events;
+        final List<Edge> edges = new ArrayList<>();
+        final List<long[]> totals = new ArrayList<>();
+
+        /**
+         * Constructs a Delta.
+         *
+         * @param spans  the aggregator of the epoch
+         * @param events the number of spans recorded before the snapshot started
+         */
+        Delta(SpanAggregator spans, long events) {
+            this.events = events;
+            spans.forEachEdge((caller, callee, stats) -> {
+                long count = stats.count();
+                if (count > 0) {
+                    edges.add(new Edge(caller, callee));
+                    totals.add(new long[]{count, stats.sum()});
+                }
+            });
+        }
+    }
+
+    /**
+     * The running totals of one window of epochs.
+     */
+    private static final class Window {
+        private final Map<Long, Delta> included = new HashMap<>();
+        private final Map<Edge, long[]> totals = new HashMap<>();
+        private CompiledGraph graph;
+
+        /**
+         * Brings the totals to the given range of epochs and returns its graph, rebuilding the graph only if the
+         * totals changed.
+         *
+         * @param store the store holding the epochs
+         * @param first the number of the first epoch of the window
+         * @param last  the number of the last epoch of the window
+         * @return the graph of the window
+         */
+        CompiledGraph update(WindowedGraphStore store, long first, long last) {
+            boolean changed = false;
+            for (Iterator<Map.Entry<Long, Delta>> it = included.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Delta> entry = it.next();
+                if (entry.getKey() < first || entry.getKey() > last || store.existing(entry.getKey()) == null) {
+                    add(entry.getValue(), -1);
+                    it.remove();
+                    changed = true;
+                }
+            }
+            for (long number = first; number <= last; number++) {
+                Epoch epoch = store.existing(number);
+                if (epoch == null) {
+                    continue;
+                }
+                Delta delta = epoch.delta();
+                Delta previous = included.put(number, delta);
+                if (previous != delta) {
+                    if (previous != null) {
+                        add(previous, -1);
+                    }
+                    add(delta, 1);
+                    changed = true;
+                }
+            }
+            if (changed || graph == null) {
+                CompiledGraph.Builder builder = CompiledGraph.builder();
+                for (Map.Entry<Edge, long[]> entry : totals.entrySet()) {
+                    long[] total = entry.getValue();
+                    builder.addEdge(entry.getKey().caller, entry.getKey().callee,
+                            (int) Math.min(Math.round((double) total[1] / total[0]), Integer.MAX_VALUE));
+                }
+                graph = builder.build();
+            }
+            return graph;
+        }
+
+        /**
+         * Adds or subtracts the edges of an epoch snapshot, removing edges whose count drops to zero.
+         *
+         * @param delta the snapshot
+         * @param sign  1 to add, -1 to subtract
+         */
+        private void add(Delta delta, int sign) {
+            for (int i = 0; i < delta.edges.size(); i++) {
+                long[] counts = delta.totals.get(i);
+                long[] total = totals.computeIfAbsent(delta.edges.get(i), edge -> new long[2]);
+                total[0] += sign * counts[0];
+                total[1] += sign * counts[1];
+                if (total[0] == 0) {
+                    totals.remove(delta.edges.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * An edge identified by the names of its nodes.
+     */
+    private static final class Edge {
+        final String caller;
+        final String callee;
+
+        /**
+         * Constructs an Edge.
+         *
+         * @param caller the name of the calling node
+         * @param callee the name of the called node
+         */
+        Edge(String caller, String callee) {
+            this.caller = caller;
+            this.callee = callee;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            Edge edge = (Edge) o;
+            return caller.equals(edge.caller) && callee.equals(edge.callee);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(caller, callee);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchQueryRunnerUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchSingleQueries_whenRunningBatch(String fileName) throws Exception {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        StringBuilder file = new StringBuilder("# every pair of nodes\n\n");
+        List<String> expected = new ArrayList<>();
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String from = graph.name(source);
+                String to = graph.name(target);
+                file.append("latency ").append(from).append(' ').append(to).append('\n');
+                expected.add(tracer.calculateTraceLatency(new String[]{from, to}));
+                file.append("max-hops ").append(from).append(' ').append(to).append(" 3\n");
+                expected.add(Integer.toString(tracer.countTracesMaxHops(from, to, 3)));
+                file.append("exact-hops ").append(from).append(' ').append(to).append(" 4\n");
+                expected.add(Integer.toString(tracer.countTracesExactHops(from, to, 4)));
+                file.append("shortest ").append(from).append(' ').append(to).append('\n');
+                expected.add(tracer.shortestLatency(from, to));
+                file.append("max-latency ").append(from).append(' ').append(to).append(" 30\n");
+                expected.add(Integer.toString(tracer.countTracesWithMaxLatency(from, to, 30)));
+            }
+        }
+
+        assertThat(run(graph, file.toString())).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldAnswerNoTrace_whenNodesAreUnknown() throws Exception {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        String[] results = run(tracer.graph(), "latency A X\nmax-hops X C 3\nexact-hops A X 2\nshortest A X\n"
+                + "shortest X A\nmax-latency A X 30\nlatency A B C\n");
+
+        assertThat(results).containsExactly("NO SUCH TRACE", "0", "0", "NO SUCH TRACE", "NO SUCH TRACE", "0", "11");
+    }
+
+    @Test
+    void shouldFallBackToBigCounts_whenHopCountsOverflow() throws Exception {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 4; i++) {
+            builder.addEdge("A", "A", 1);
+        }
+
+        String[] results = run(builder.build(), "exact-hops A A 40\nmax-hops A A 3\n");
+
+        assertThat(results).containsExactly("1208925819614629174706176", "84");
+    }
+
+    @Test
+    void shouldAnswerHugeHopLimits_whenSharingSweep() throws Exception {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 1)
+                .addEdge("B", "C", 1)
+                .addEdge("A", "C", 1)
+                .build();
+
+        String[] results = run(graph, "max-hops A C 2147483647\nmax-hops A C 100000000\nmax-hops A B 10000000\n"
+                + "exact-hops A C 2\nexact-hops A C 2147483647\n");
+
+        assertThat(results).containsExactly("2", "2", "1", "1", "0");
+    }
+
+    @Test
+    void shouldAnswerOtherQueries_whenLatencyCountFails() throws Exception {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 4; i++) {
+            builder.addEdge("A", "A", 1);
+        }
+        CompiledGraph graph = builder
+                .addEdge("A", "B", 1)
+                .addEdge("B", "C", 1)
+                .addEdge("C", "D", 0)
+                .addEdge("D", "C", 0)
+                .addEdge("E", "F", 1)
+                .build();
+
+        String[] results = run(graph, "max-latency A B 3\nmax-latency A A 50\nmax-latency A C 10\n"
+                + "max-latency E F 5\nmax-hops A B 1\n");
+
+        assertThat(results).containsExactly("5", BatchQueryRunner.COUNT_OVERFLOW, BatchQueryRunner.UNBOUNDED, "1",
+                "1");
+    }
+
+    @Test
+    void shouldReportLine_whenQueryIsMalformed() {
+        assertThatThrownBy(() -> BatchQueryRunner.readQueries(new StringReader("shortest A C\n\nmax-hops C C\n")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Malformed query at line 3: max-hops C C");
+        assertThatThrownBy(() -> BatchQueryRunner.readQueries(new StringReader("unknown A C 3")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Malformed query at line 1: unknown A C 3");
+    }
+
+    private static String[] run(CompiledGraph graph, String queries) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            return BatchQueryRunner.run(graph, BatchQueryRunner.readQueries(new StringReader(queries)), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
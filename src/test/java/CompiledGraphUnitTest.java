@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledGraphUnitTest {
+
+    @Test
+    void shouldInternNamesToDenseIds_whenEdgesAdded() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("frontend", "checkout", 5)
+                .addEdge("checkout", "payment", 4)
+                .addEdge("frontend", "payment", 9)
+                .build();
+
+        assertThat(graph.nodeCount()).isEqualTo(3);
+        assertThat(graph.edgeCount()).isEqualTo(3);
+        assertThat(graph.id("frontend")).isEqualTo(0);
+        assertThat(graph.id("checkout")).isEqualTo(1);
+        assertThat(graph.id("payment")).isEqualTo(2);
+        assertThat(graph.id("unknown")).isEqualTo(-1);
+        assertThat(graph.name(2)).isEqualTo("payment");
+    }
+
+    @Test
+    void shouldKeepEdgesInInputOrder_whenCompiled() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 5)
+                .addEdge("B", "C", 4)
+                .addEdge("A", "C", 7)
+                .addEdge("A", "B", 9)
+                .build();
+
+        int a = graph.id("A");
+        assertThat(graph.edgeEnd(a) - graph.edgeStart(a)).isEqualTo(3);
+        assertThat(graph.target(graph.edgeStart(a) + 1)).isEqualTo(graph.id("C"));
+        assertThat(graph.latency(graph.findEdge(a, graph.id("B")))).isEqualTo(5);
+        assertThat(graph.findEdge(graph.id("C"), a)).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldResolveAllNames_whenDictionaryGrows() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.addEdge("service-" + i, "service-" + (i + 1), i);
+        }
+        CompiledGraph graph = builder.build();
+
+        assertThat(graph.nodeCount()).isEqualTo(10_001);
+        for (int i = 0; i <= 10_000; i++) {
+            assertThat(graph.name(graph.id("service-" + i))).isEqualTo("service-" + i);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaSteppingEngineUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchSequentialSearch_whenSearchingFromEverySource(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            assertThat(parallel(graph, source)).isEqualTo(sequential(graph, source));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "2000,   3, 0,    10",
+            "5000,   2, 1,    1000",
+            "20000,  4, 0,    1",
+            "20000,  3, 5,    100000000",
+            "100000, 3, 1,    50"
+    })
+    void shouldMatchSequentialSearch_whenGraphIsRandom(int nodes, int degree, int minLatency, int maxLatency) {
+        Random random = new Random(nodes + degree);
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1) % nodes, minLatency + random.nextInt(maxLatency - minLatency + 1));
+            for (int d = 1; d < degree; d++) {
+                builder.addEdge("N" + i, "N" + random.nextInt(nodes),
+                        minLatency + random.nextInt(maxLatency - minLatency + 1));
+            }
+        }
+        CompiledGraph graph = builder.build();
+
+        for (int k = 0; k < 3; k++) {
+            int source = random.nextInt(nodes);
+            assertThat(parallel(graph, source)).isEqualTo(sequential(graph, source));
+        }
+    }
+
+    @Test
+    void shouldSelectParallelSearch_whenGraphIsLarge() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < DeltaSteppingEngine.PARALLEL_MIN_NODES; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1) % DeltaSteppingEngine.PARALLEL_MIN_NODES, 1 + i % 7);
+            builder.addEdge("N" + i, "N" + (i * 31 + 7) % DeltaSteppingEngine.PARALLEL_MIN_NODES, 20);
+        }
+        CompiledGraph graph = builder.build();
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(graph);
+
+        Map<String, Integer> latencies = tracer.shortestLatencies("N0");
+
+        assertThat(DeltaSteppingEngine.preferred(graph))
+                .isEqualTo(ForkJoinPool.getCommonPoolParallelism() > 1);
+        assertThat(latencies).hasSize(graph.nodeCount());
+        int[] expected = sequential(graph, graph.id("N0"));
+        for (int node = 0; node < graph.nodeCount(); node += 97) {
+            assertThat(latencies.get(graph.name(node))).isEqualTo(expected[node]);
+        }
+        assertThat(latencies.get("N12345").toString()).isEqualTo(tracer.shortestLatency("N0", "N12345"));
+    }
+
+    @Test
+    void shouldStopSearch_whenBudgetExceeded() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1), 1);
+        }
+        CompiledGraph graph = builder.build();
+
+        assertThatThrownBy(() -> DeltaSteppingEngine.latenciesFrom(graph, 0, new int[graph.nodeCount()],
+                QueryContext.withBudget(100))).isInstanceOf(QueryBudgetExceededException.class);
+    }
+
+    private static int[] parallel(CompiledGraph graph, int source) {
+        int[] row = new int[graph.nodeCount()];
+        DeltaSteppingEngine.latenciesFrom(graph, source, row, null);
+        return row;
+    }
+
+    private static int[] sequential(CompiledGraph graph, int source) {
+        int[] row = new int[graph.nodeCount()];
+        ShortestLatencyEngine.current().sequentialLatenciesFrom(graph, source, row, null);
+        return row;
+    }
+}
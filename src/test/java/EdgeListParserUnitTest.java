@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EdgeListParserUnitTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt,8",
+            "testInput11.txt,9"
+    })
+    void shouldParseLegacyFormat_whenTestInputGiven(String fileName, int edges) throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(Paths.get("src/test/resources/" + fileName));
+
+        assertThat(graph.edgeCount()).isEqualTo(edges);
+        assertThat(graph.nodeCount()).isEqualTo(5);
+        assertThat(graph.id("A")).isEqualTo(0);
+        assertThat(graph.id("B")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldParseLegacyFormat_whenEdgesSpanManyLines() throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(write("AB5, BC4\nCD8,DC8\r\n  DE12\n"));
+
+        assertThat(graph.edgeCount()).isEqualTo(5);
+        assertThat(graph.latency(graph.findEdge(graph.id("D"), graph.id("E")))).isEqualTo(12);
+    }
+
+    @Test
+    void shouldParseDelimitedFormat_whenNamesHaveManyCharacters() throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(write("frontend,checkout,15\n\n checkout , payment-service ,7\r\n"));
+
+        assertThat(graph.nodeCount()).isEqualTo(3);
+        int checkout = graph.id("checkout");
+        assertThat(graph.latency(graph.findEdge(graph.id("frontend"), checkout))).isEqualTo(15);
+        assertThat(graph.latency(graph.findEdge(checkout, graph.id("payment-service")))).isEqualTo(7);
+    }
+
+    @Test
+    void shouldProduceSameGraph_whenParsedInParallelChunks() throws IOException {
+        Path file = tempDir.resolve("large.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 200_000; i++) {
+                writer.write("service-" + (i % 5_000) + ",service-" + (i * 7 % 5_003) + "," + (i % 97) + "\n");
+            }
+        }
+
+        CompiledGraph sequential = EdgeListParser.parse(file, 1);
+        CompiledGraph parallel = EdgeListParser.parse(file, 4);
+
+        assertThat(parallel.nodeCount()).isEqualTo(sequential.nodeCount());
+        assertThat(parallel.edgeCount()).isEqualTo(200_000);
+        for (int node = 0; node < sequential.nodeCount(); node++) {
+            assertThat(parallel.name(node)).isEqualTo(sequential.name(node));
+        }
+        assertThat(parallel.offsets).isEqualTo(sequential.offsets);
+        assertThat(parallel.targets).isEqualTo(sequential.targets);
+        assertThat(parallel.latencies).isEqualTo(sequential.latencies);
+    }
+
+    @Test
+    void shouldReject_whenLatencyIsMissing() throws IOException {
+        Path file = write("A,B,5\nB,C,\n");
+
+        assertThatThrownBy(() -> EdgeListParser.parse(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("byte");
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(tempDir, "edges", ".txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FilePipelineUnitTest {
+
+    private static final List<String> FILES = Arrays.asList(
+            "src/test/resources/testInput1.txt",
+            "src/test/resources/testInput2.txt",
+            "src/test/resources/testInput5.txt",
+            "src/test/resources/testInput8.txt",
+            "src/test/resources/testInput10.txt",
+            "src/test/resources/testInput11.txt");
+
+    @Test
+    void shouldPrintSameOutputAsSequentialRun_whenProcessingFilesInParallel() throws Exception {
+        String sequential = run(1, new ByteArrayOutputStream());
+        String parallel = run(4, new ByteArrayOutputStream());
+
+        assertThat(parallel).isEqualTo(sequential);
+        assertThat(sequential).startsWith("Processing file: src/test/resources/testInput1.txt" + System.lineSeparator()
+                + "11" + System.lineSeparator());
+    }
+
+    @Test
+    void shouldReportThroughput_whenFilesAreProcessed() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        run(3, report);
+
+        List<String> lines = new ArrayList<>(Arrays.asList(report.toString().split(System.lineSeparator())));
+        assertThat(lines).hasSize(FILES.size() + 1);
+        for (int i = 0; i < FILES.size(); i++) {
+            assertThat(lines.get(i)).startsWith(FILES.get(i) + ": ").contains("edges/s");
+        }
+        assertThat(lines.get(FILES.size())).startsWith("Total: " + FILES.size() + " files");
+    }
+
+    @Test
+    void shouldPrintSameOutput_whenNoReportIsWanted() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FilePipeline(2, InstanaTracer::runTasks).run(FILES, new PrintStream(out), null);
+
+        assertThat(out.toString()).isEqualTo(run(1, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void shouldRejectNonPositiveInFlight_whenConstructed() {
+        assertThatThrownBy(() -> new FilePipeline(0, InstanaTracer::runTasks))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String run(int inFlight, ByteArrayOutputStream report) throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FilePipeline(inFlight, InstanaTracer::runTasks).run(FILES, new PrintStream(out), new PrintStream(report));
+        return out.toString();
+    }
+}
@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GraphSnapshotUnitTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput11.txt"
+    })
+    void shouldAnswerLikeParsedGraph_whenLoadingSnapshot(String fileName) {
+        InstanaTracer parsed = new InstanaTracer();
+        parsed.readGraphFromFile("src/test/resources/" + fileName);
+        String snapshot = directory.resolve("graph.snapshot").toString();
+        parsed.saveSnapshot(snapshot);
+
+        InstanaTracer loaded = new InstanaTracer();
+        loaded.readGraphFromFile(snapshot);
+        CompiledGraph graph = parsed.graph();
+        CompiledGraph copy = loaded.graph();
+
+        assertThat(copy.nodeCount()).isEqualTo(graph.nodeCount());
+        assertThat(copy.reversed().offsets).isEqualTo(graph.reversed().offsets);
+        assertThat(copy.reversed().targets).isEqualTo(graph.reversed().targets);
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            String from = graph.name(source);
+            assertThat(copy.id(from)).isEqualTo(source);
+            assertThat(loaded.countTracesWithMaxLatency(from, 30)).isEqualTo(parsed.countTracesWithMaxLatency(from, 30));
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String to = graph.name(target);
+                assertThat(loaded.calculateTraceLatency(new String[]{from, to}))
+                        .isEqualTo(parsed.calculateTraceLatency(new String[]{from, to}));
+                assertThat(loaded.countTracesMaxHops(from, to, 3)).isEqualTo(parsed.countTracesMaxHops(from, to, 3));
+                assertThat(loaded.shortestLatency(from, to)).isEqualTo(parsed.shortestLatency(from, to));
+            }
+        }
+    }
+
+    @Test
+    void shouldAnswerFromMappedMatrix_whenSnapshotHasDenseIndex() {
+        InstanaTracer parsed = new InstanaTracer();
+        parsed.readGraphFromFile("src/test/resources/testInput1.txt");
+        parsed.indexLatencies(true);
+        String snapshot = directory.resolve("graph.snapshot").toString();
+        parsed.saveSnapshot(snapshot);
+
+        InstanaTracer loaded = new InstanaTracer();
+        loaded.loadSnapshot(snapshot);
+
+        assertThat(loaded.latencyIndex).isNotNull();
+        assertThat(loaded.latencyIndex.graph()).isSameAs(loaded.graph());
+        CompiledGraph graph = parsed.graph();
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                assertThat(loaded.latencyIndex.latency(source, target))
+                        .isEqualTo(parsed.latencyIndex.latency(source, target));
+            }
+        }
+    }
+
+    @Test
+    void shouldAcceptNewNodes_whenChangingLoadedGraph() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.addEdge("service-" + i, "service-" + (i + 1), 1 + i % 5);
+        }
+        InstanaTracer parsed = new InstanaTracer();
+        parsed.liveGraph.replace(builder.build());
+        String snapshot = directory.resolve("graph.snapshot").toString();
+        parsed.saveSnapshot(snapshot);
+
+        InstanaTracer loaded = new InstanaTracer();
+        loaded.loadSnapshot(snapshot);
+        loaded.addEdge("service-100", "gateway", 7);
+
+        assertThat(loaded.calculateTraceLatency(new String[]{"service-99", "service-100", "gateway"})).isEqualTo("12");
+        assertThat(loaded.graph().nodeCount()).isEqualTo(102);
+    }
+
+    @Test
+    void shouldRoundTripEmptyGraph_whenSavingSnapshot() throws IOException {
+        Path snapshot = directory.resolve("empty.snapshot");
+        GraphSnapshot.save(snapshot, CompiledGraph.builder().build(), null);
+
+        CompiledGraph graph = GraphSnapshot.load(snapshot).graph();
+
+        assertThat(graph.nodeCount()).isZero();
+        assertThat(graph.names.intern("A")).isZero();
+    }
+
+    @Test
+    void shouldRejectFile_whenNotAValidSnapshot() throws IOException {
+        Path text = directory.resolve("graph.txt");
+        Files.write(text, "AB5, BC4".getBytes());
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile(text.toString());
+        Path snapshot = directory.resolve("graph.snapshot");
+        GraphSnapshot.save(snapshot, tracer.graph(), null);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Path truncated = Files.write(directory.resolve("truncated.snapshot"), Arrays.copyOf(bytes, bytes.length - 4));
+        bytes[4] = 99;
+        Path future = Files.write(directory.resolve("future.snapshot"), bytes);
+
+        assertThat(GraphSnapshot.isSnapshot(text)).isFalse();
+        assertThat(GraphSnapshot.isSnapshot(snapshot)).isTrue();
+        assertThatThrownBy(() -> GraphSnapshot.load(text)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> GraphSnapshot.load(truncated)).hasMessageStartingWith("Truncated");
+        assertThatThrownBy(() -> GraphSnapshot.load(future)).hasMessageStartingWith("Unsupported snapshot version 99");
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HopCounterUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput4.txt",
+            "testInput9.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchEnumeration_whenCountingHopRanges(String fileName) throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(Paths.get("src/test/resources/" + fileName));
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                for (int minHops = 0; minHops <= 3; minHops++) {
+                    for (int maxHops = minHops; maxHops <= 6; maxHops++) {
+                        long expected = enumerate(graph, source, target, 0, minHops, maxHops);
+                        assertThat(HopCounter.count(graph, source, target, minHops, maxHops)).isEqualTo(expected);
+                        assertThat(HopCounter.countByMatrixPower(graph, source, minHops, maxHops, null)[target])
+                                .isEqualTo(BigInteger.valueOf(expected));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldCountWithArbitraryPrecision_whenLongOverflows() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "A", 1)
+                .addEdge("A", "A", 2)
+                .build();
+
+        assertThatThrownBy(() -> HopCounter.count(graph, 0, 0, 70, 70)).isInstanceOf(ArithmeticException.class);
+        assertThat(HopCounter.countBig(graph, 0, 0, 70, 70)).isEqualTo(BigInteger.ONE.shiftLeft(70));
+        assertThat(HopCounter.countAllBig(graph, new int[]{0}, 1, 70)[0])
+                .isEqualTo(BigInteger.ONE.shiftLeft(71).subtract(BigInteger.valueOf(2)));
+        assertThat(HopCounter.countBig(graph, 0, 0, 1, 1_000_000).bitLength()).isEqualTo(1_000_001);
+    }
+
+    @Test
+    void shouldReturnZero_whenHopRangeIsEmpty() {
+        CompiledGraph graph = CompiledGraph.builder().addEdge("A", "B", 1).build();
+
+        assertThat(HopCounter.count(graph, 0, 1, 2, 1)).isZero();
+        assertThat(HopCounter.count(graph, 0, 0, -1, -1)).isZero();
+    }
+
+    private static long enumerate(CompiledGraph graph, int node, int target, int depth, int minHops, int maxHops) {
+        long count = depth >= minHops && node == target ? 1 : 0;
+        if (depth < maxHops) {
+            for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+                count += enumerate(graph, graph.target(e), target, depth + 1, minHops, maxHops);
+            }
+        }
+        return count;
+    }
+}
@@ -241,15 +241,16 @@ class InstanaTracerUnitTest {
     private String shortestCycleLength() {
         Graph<String, DefaultWeightedEdge> graph = new DirectedWeightedPseudograph<>(DefaultWeightedEdge.class);
 
-        for (InstanaTracer.Node node : tracer.nodes.values()) {
-            graph.addVertex(node.name);
+        CompiledGraph compiled = tracer.graph();
+        for (int node = 0; node < compiled.nodeCount(); node++) {
+            graph.addVertex(compiled.name(node));
         }
 
-        for (InstanaTracer.Node node : tracer.nodes.values()) {
-            for (InstanaTracer.Edge edge : node.edges) {
-                DefaultWeightedEdge graphEdge = graph.addEdge(node.name, edge.destination.name);
+        for (int node = 0; node < compiled.nodeCount(); node++) {
+            for (int edge = compiled.edgeStart(node); edge < compiled.edgeEnd(node); edge++) {
+                DefaultWeightedEdge graphEdge = graph.addEdge(compiled.name(node), compiled.name(compiled.target(edge)));
                 if (graphEdge != null) {
-                    graph.setEdgeWeight(graphEdge, edge.latency);
+                    graph.setEdgeWeight(graphEdge, compiled.latency(edge));
                 }
             }
         }
@@ -285,17 +286,19 @@ class InstanaTracerUnitTest {
     public Graph<String, DefaultWeightedEdge> buildJGraphTGraph() {
         Graph<String, DefaultWeightedEdge> graph = new DefaultDirectedWeightedGraph<>(DefaultWeightedEdge.class);
 
+        CompiledGraph compiled = tracer.graph();
+
         // Add vertices
-        for (InstanaTracer.Node node : tracer.nodes.values()) {
-            graph.addVertex(node.name);
+        for (int node = 0; node < compiled.nodeCount(); node++) {
+            graph.addVertex(compiled.name(node));
         }
 
         // Add edges with weights
-        for (InstanaTracer.Node node : tracer.nodes.values()) {
-            for (InstanaTracer.Edge edge : node.edges) {
-                DefaultWeightedEdge graphEdge = graph.addEdge(node.name, edge.destination.name);
+        for (int node = 0; node < compiled.nodeCount(); node++) {
+            for (int edge = compiled.edgeStart(node); edge < compiled.edgeEnd(node); edge++) {
+                DefaultWeightedEdge graphEdge = graph.addEdge(compiled.name(node), compiled.name(compiled.target(edge)));
                 if (graphEdge != null) {
-                    graph.setEdgeWeight(graphEdge, edge.latency);
+                    graph.setEdgeWeight(graphEdge, compiled.latency(edge));
                 }
             }
         }
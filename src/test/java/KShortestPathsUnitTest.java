@@ -0,0 +1,163 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KShortestPathsUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchEnumeratedTraces_whenFindingKShortestWalks(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String from = graph.name(source);
+                String to = graph.name(target);
+                List<Long> walks = latencies(tracer.shortestTraces(from, to, 8));
+                int bound = walks.size() == 8 ? (int) (long) walks.get(7) + 1 : 200;
+                List<Long> expected = tracer.tracesWithMaxLatency(from, to, bound).map(Trace::latency).sorted()
+                        .limit(8).collect(Collectors.toList());
+
+                assertThat(walks).isEqualTo(expected);
+                if (!walks.isEmpty()) {
+                    assertThat(walks.get(0)).isEqualTo(Long.parseLong(tracer.shortestLatency(from, to)));
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchEnumeratedSimpleTraces_whenFindingKShortestLooplessTraces(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String from = graph.name(source);
+                String to = graph.name(target);
+                List<Trace> loopless = tracer.shortestLooplessTraces(from, to, 6);
+                List<Long> expected = tracer.tracesMaxHops(from, to, graph.nodeCount())
+                        .filter(KShortestPathsUnitTest::isLoopless).map(Trace::latency).sorted().limit(6)
+                        .collect(Collectors.toList());
+
+                assertThat(loopless).allMatch(KShortestPathsUnitTest::isLoopless);
+                assertThat(latencies(loopless)).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void shouldListBestRoutes_whenSearchingSampleGraph() {
+        InstanaTracer tracer = sampleTracer();
+
+        assertThat(tracer.shortestTraces("A", "C", 4).stream().map(Trace::toString))
+                .containsExactly("A-B-C", "A-D-C", "A-E-B-C", "A-B-C-E-B-C");
+        assertThat(tracer.shortestLooplessTraces("A", "C", 4).stream().map(Trace::toString))
+                .containsExactly("A-B-C", "A-D-C", "A-E-B-C", "A-D-E-B-C");
+        assertThat(tracer.shortestLooplessTraces("C", "C", 10).stream().map(Trace::toString))
+                .containsExactly("C-E-B-C", "C-D-C", "C-D-E-B-C");
+    }
+
+    @Test
+    void shouldKeepParallelEdgesApart_whenFindingLooplessTraces() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        builder.addEdge("A", "B", 1);
+        builder.addEdge("A", "B", 2);
+        builder.addEdge("B", "C", 1);
+        builder.addEdge("B", "C", 3);
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+
+        assertThat(latencies(tracer.shortestLooplessTraces("A", "C", 10))).containsExactly(2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void shouldScaleToLargeK_whenGraphHasManyCycles() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 2000; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1) % 2000, 1 + i % 7);
+            builder.addEdge("N" + i, "N" + (i * 31 + 7) % 2000, 5 + i % 11);
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+
+        List<Long> walks = latencies(tracer.shortestTraces("N0", "N1000", 2000));
+        List<Long> loopless = latencies(tracer.shortestLooplessTraces("N0", "N1000", 200));
+
+        assertThat(walks).hasSize(2000).isSorted();
+        assertThat(loopless).hasSize(200).isSorted();
+        assertThat(walks.get(0)).isEqualTo(loopless.get(0));
+    }
+
+    @Test
+    void shouldFindNothing_whenTargetIsUnreachableOrUnknown() {
+        InstanaTracer tracer = sampleTracer();
+        tracer.addEdge("X", "A", 1);
+
+        assertThat(tracer.shortestTraces("A", "X", 5)).isEmpty();
+        assertThat(tracer.shortestLooplessTraces("A", "X", 5)).isEmpty();
+        assertThat(tracer.shortestTraces("A", "unknown", 5)).isEmpty();
+        assertThat(tracer.shortestTraces("A", "C", 0)).isEmpty();
+    }
+
+    @Test
+    void shouldStop_whenBudgetIsExhausted() {
+        InstanaTracer tracer = sampleTracer();
+
+        assertThatThrownBy(() -> tracer.shortestTraces("A", "C", 100_000, false, QueryContext.withBudget(2000)))
+                .isInstanceOf(QueryBudgetExceededException.class);
+        assertThat(tracer.shortestTraces("A", "C", 3, true, QueryContext.withTimeout(1, TimeUnit.MINUTES)))
+                .hasSize(3);
+    }
+
+    private static InstanaTracer sampleTracer() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (String edge : "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7".split(", ")) {
+            builder.addEdge(edge.substring(0, 1), edge.substring(1, 2), Integer.parseInt(edge.substring(2)));
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+        return tracer;
+    }
+
+    private static List<Long> latencies(List<Trace> traces) {
+        return traces.stream().map(Trace::latency).collect(Collectors.toList());
+    }
+
+    private static boolean isLoopless(Trace trace) {
+        Set<Integer> visited = new HashSet<>();
+        for (int i = 1; i <= trace.hops(); i++) {
+            if (!visited.add(trace.node(i))) {
+                return false;
+            }
+        }
+        return !visited.contains(trace.node(0)) || trace.node(trace.hops()) == trace.node(0);
+    }
+}
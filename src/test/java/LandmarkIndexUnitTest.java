@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LandmarkIndexUnitTest {
+
+    @AfterEach
+    void tearDown() {
+        QueryMetrics.get().setEnabled(false);
+        QueryMetrics.get().reset();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt,  1",
+            "testInput1.txt,  3",
+            "testInput2.txt,  2",
+            "testInput5.txt,  4",
+            "testInput8.txt,  2",
+            "testInput10.txt, 8",
+            "testInput11.txt, 3"
+    })
+    void shouldMatchUnguidedSearch_whenQueryingEveryPair(String fileName, int count) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+        LandmarkIndex landmarks = LandmarkIndex.build(graph, count);
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                assertThat(guided(graph, source, target, landmarks)).isEqualTo(unguided(graph, source, target));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "2000,  3, 1, 10",
+            "5000,  2, 1, 1000",
+            "20000, 4, 3, 5",
+            "20000, 1, 1, 100"
+    })
+    void shouldMatchUnguidedSearch_whenGraphIsRandom(int nodes, int degree, int minLatency, int maxLatency) {
+        Random random = new Random(nodes * 31 + degree);
+        CompiledGraph graph = random(random, nodes, degree, minLatency, maxLatency);
+        LandmarkIndex landmarks = LandmarkIndex.build(graph, 8);
+
+        for (int k = 0; k < 50; k++) {
+            int source = random.nextInt(nodes);
+            int target = random.nextInt(nodes);
+            assertThat(guided(graph, source, target, landmarks)).isEqualTo(unguided(graph, source, target));
+        }
+    }
+
+    @Test
+    void shouldExpandFewerNodes_whenLandmarksIndexed() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        int width = 100;
+        for (int row = 0; row < width; row++) {
+            for (int column = 0; column < width; column++) {
+                String node = row + ":" + column;
+                if (column + 1 < width) {
+                    builder.addEdge(node, row + ":" + (column + 1), 1 + (row + column) % 3);
+                    builder.addEdge(row + ":" + (column + 1), node, 1 + (row + column) % 3);
+                }
+                if (row + 1 < width) {
+                    builder.addEdge(node, (row + 1) + ":" + column, 1 + (row * column) % 3);
+                    builder.addEdge((row + 1) + ":" + column, node, 1 + (row * column) % 3);
+                }
+            }
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+        QueryMetrics.get().setEnabled(true);
+
+        String expected = tracer.shortestLatency("10:10", "60:70");
+        long unguided = QueryMetrics.get().stats(QueryMetrics.QueryType.SHORTEST_LATENCY).getNodesExpanded();
+        QueryMetrics.get().reset();
+        tracer.indexLandmarks(4);
+        String latency = tracer.shortestLatency("10:10", "60:70");
+        long guided = QueryMetrics.get().stats(QueryMetrics.QueryType.SHORTEST_LATENCY).getNodesExpanded();
+
+        assertThat(latency).isEqualTo(expected);
+        assertThat(guided * 2).isLessThan(unguided);
+    }
+
+    @Test
+    void shouldPickDistinctFarLandmarks_whenGraphIsChain() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 10; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1), 1);
+            builder.addEdge("N" + (i + 1), "N" + i, 1);
+        }
+        CompiledGraph graph = builder.build();
+
+        LandmarkIndex landmarks = LandmarkIndex.build(graph, 20);
+
+        assertThat(landmarks.landmarks()).hasSize(11);
+        assertThat(graph.name(landmarks.landmarks()[0])).isEqualTo("N10");
+        assertThat(graph.name(landmarks.landmarks()[1])).isEqualTo("N0");
+        assertThat(landmarks.landmarks()).doesNotHaveDuplicates();
+        assertThat(landmarks.estimate(graph.id("N2"), graph.id("N7"))).isEqualTo(5);
+    }
+
+    @Test
+    void shouldIgnoreLandmarks_whenGraphChanged() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        tracer.indexLandmarks(2);
+
+        tracer.liveGraph.updateLatency("A", "B", 1);
+
+        assertThat(tracer.shortestLatency("A", "E")).isEqualTo("3");
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("4");
+    }
+
+    private static CompiledGraph random(Random random, int nodes, int degree, int minLatency, int maxLatency) {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            for (int d = 0; d < degree; d++) {
+                builder.addEdge("N" + i, "N" + random.nextInt(nodes),
+                        minLatency + random.nextInt(maxLatency - minLatency + 1));
+            }
+        }
+        return builder.build();
+    }
+
+    private static int guided(CompiledGraph graph, int source, int target, LandmarkIndex landmarks) {
+        return ShortestLatencyEngine.current().shortestLatency(graph, source, target, landmarks, null);
+    }
+
+    private static int unguided(CompiledGraph graph, int source, int target) {
+        return ShortestLatencyEngine.current().unidirectional(graph, source, target);
+    }
+}
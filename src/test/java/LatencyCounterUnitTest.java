@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LatencyCounterUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput6.txt",
+            "testInput7.txt",
+            "testInput9.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchEnumeration_whenCountingAllPairs(String fileName) throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(Paths.get("src/test/resources/" + fileName));
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int maxLatency = 0; maxLatency <= 40; maxLatency += 5) {
+                long[] counts = LatencyCounter.countAll(graph, new int[]{source}, maxLatency);
+                for (int target = 0; target < graph.nodeCount(); target++) {
+                    assertThat(counts[target]).isEqualTo(enumerate(graph, source, target, 0, 0, Integer.MAX_VALUE, maxLatency));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldFollowZeroLatencyEdges_whenTheyFormNoCycle() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "C", 0)
+                .addEdge("C", "A", 3)
+                .addEdge("A", "C", 1)
+                .build();
+
+        for (int source = 0; source < 3; source++) {
+            long[] counts = LatencyCounter.countAll(graph, new int[]{source}, 10);
+            for (int target = 0; target < 3; target++) {
+                assertThat(counts[target]).isEqualTo(enumerate(graph, source, target, 0, 0, Integer.MAX_VALUE, 10));
+            }
+        }
+    }
+
+    @Test
+    void shouldCountZeroLatencyTraces_whenTheyHaveHops() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "C", 0)
+                .addEdge("C", "A", 2)
+                .build();
+
+        assertThat(LatencyCounter.count(graph, 0, 1, 1)).isEqualTo(1);
+        assertThat(LatencyCounter.countAll(graph, new int[]{0}, 3)).containsExactly(1, 2, 2);
+        assertThat(LatencyCounter.countAll(graph, new int[]{0}, 3))
+                .containsExactly(LatencyCounter.countAllWithMaxHops(graph, 0, 10, 3));
+        assertThat(TraceEnumerator.stream(graph, 0, 2, 1, TraceEnumerator.UNBOUNDED, 1).count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldIgnoreZeroLatencyCycles_whenTracesCannotReachThem() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 1)
+                .addEdge("B", "C", 1)
+                .addEdge("C", "D", 0)
+                .addEdge("D", "C", 0)
+                .addEdge("X", "Y", 0)
+                .addEdge("Y", "X", 0)
+                .build();
+
+        assertThat(LatencyCounter.count(graph, 0, 1, 10)).isEqualTo(1);
+        assertThat(TraceEnumerator.stream(graph, 0, 1, 1, TraceEnumerator.UNBOUNDED, 10).count()).isEqualTo(1);
+        assertThatThrownBy(() -> LatencyCounter.count(graph, 0, 2, 10)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> LatencyCounter.countAll(graph, new int[]{0}, 10))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldReject_whenZeroLatencyEdgesFormCycle() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "A", 0)
+                .build();
+
+        assertThatThrownBy(() -> LatencyCounter.count(graph, 0, 0, 10)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput6.txt",
+            "testInput7.txt",
+            "testInput9.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchEnumeration_whenLimitingHopsAndLatency(String fileName) throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(Paths.get("src/test/resources/" + fileName));
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int maxHops = 0; maxHops <= 6; maxHops += 2) {
+                for (int maxLatency = 0; maxLatency <= 40; maxLatency += 8) {
+                    long[] counts = LatencyCounter.countAllWithMaxHops(graph, source, maxHops, maxLatency);
+                    for (int target = 0; target < graph.nodeCount(); target++) {
+                        assertThat(counts[target])
+                                .isEqualTo(enumerate(graph, source, target, 0, 0, maxHops, maxLatency));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldMatchSingleLimitCounts_whenOtherLimitIsLoose() throws IOException {
+        CompiledGraph graph = EdgeListParser.parse(Paths.get("src/test/resources/testInput1.txt"));
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            assertThat(LatencyCounter.countAllWithMaxHops(graph, source, 30, 30))
+                    .isEqualTo(LatencyCounter.countAll(graph, new int[]{source}, 30));
+            assertThat(LatencyCounter.countAllWithMaxHops(graph, source, 5, 1000))
+                    .isEqualTo(HopCounter.countAll(graph, new int[]{source}, 1, 5));
+        }
+    }
+
+    @Test
+    void shouldCountZeroLatencyCycles_whenHopsAreLimited() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "A", 0)
+                .addEdge("B", "C", 2)
+                .build();
+
+        assertThat(LatencyCounter.countAllWithMaxHops(graph, 0, 4, 3)).containsExactly(2, 2, 2);
+    }
+
+    @Test
+    void shouldStopCounting_whenBudgetExceeded() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1), 1);
+        }
+        CompiledGraph graph = builder.build();
+
+        assertThatThrownBy(() -> LatencyCounter.countAllWithMaxHops(graph, 0, 1000, 2000, QueryContext.withBudget(100)))
+                .isInstanceOf(QueryBudgetExceededException.class);
+    }
+
+    @Test
+    void shouldChargeLatencyCells_whenTableIsWide() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "A", 0)
+                .build();
+
+        assertThat(LatencyCounter.countAllWithMaxHops(graph, 0, 10, 1_000_000, QueryContext.withBudget(100_000_000)))
+                .containsExactly(5, 5);
+        assertThatThrownBy(() -> LatencyCounter.countAllWithMaxHops(graph, 0, 10, 1_000_000,
+                QueryContext.withBudget(1_000_000)))
+                .isInstanceOf(QueryBudgetExceededException.class);
+    }
+
+    private static long enumerate(CompiledGraph graph, int node, int target, int hops, int latency, int maxHops,
+                                  int maxLatency) {
+        long count = hops > 0 && node == target ? 1 : 0;
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node) && hops < maxHops; e++) {
+            if (latency + graph.latency(e) < maxLatency) {
+                count += enumerate(graph, graph.target(e), target, hops + 1, latency + graph.latency(e), maxHops,
+                        maxLatency);
+            }
+        }
+        return count;
+    }
+
+}
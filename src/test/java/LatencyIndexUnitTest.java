@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyIndexUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchShortestLatency_whenIndexingTestInput(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+
+        assertSameAsSearch(tracer);
+    }
+
+    @Test
+    void shouldMatchShortestLatency_whenIndexingRandomGraph() {
+        Random random = new Random(42);
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 1_500; i++) {
+            builder.addEdge("s" + random.nextInt(200), "s" + random.nextInt(200), 1 + random.nextInt(20));
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+
+        assertSameAsSearch(tracer);
+    }
+
+    private static void assertSameAsSearch(InstanaTracer tracer) {
+        CompiledGraph graph = tracer.graph();
+        LatencyIndex dense = LatencyIndex.dense(graph);
+        LatencyIndex sparse = LatencyIndex.sparse(graph);
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String expected = tracer.shortestLatency(graph.name(source), graph.name(target));
+                assertThat(dense.shortestLatency(graph.name(source), graph.name(target))).isEqualTo(expected);
+                assertThat(sparse.shortestLatency(graph.name(source), graph.name(target))).isEqualTo(expected);
+            }
+        }
+        assertThat(dense.shortestLatency("unknown", graph.name(0))).isEqualTo("NO SUCH TRACE");
+    }
+}
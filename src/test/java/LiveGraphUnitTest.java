@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveGraphUnitTest {
+
+    @Test
+    void shouldPublishNewVersion_whenEdgesChange() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput11.txt");
+        CompiledGraph before = tracer.graph();
+
+        tracer.addEdge("A", "checkout", 2);
+        assertThat(tracer.updateLatency("A", "B", 1)).isTrue();
+        assertThat(tracer.removeEdge("C", "D")).isTrue();
+        assertThat(tracer.removeEdge("C", "D")).isFalse();
+        assertThat(tracer.updateLatency("unknown", "B", 1)).isFalse();
+
+        assertThat(tracer.graph().version()).isEqualTo(before.version() + 3);
+        assertThat(tracer.calculateTraceLatency(new String[]{"A", "B", "C"})).isEqualTo("5");
+        assertThat(tracer.calculateTraceLatency(new String[]{"A", "checkout"})).isEqualTo("2");
+        assertThat(tracer.calculateTraceLatency(new String[]{"C", "D"})).isEqualTo("NO SUCH TRACE");
+        assertThat(before.latency(before.findEdge(before.id("A"), before.id("B")))).isEqualTo(5);
+        assertThat(before.id("checkout")).isEqualTo(-1);
+        assertThat(before.findEdge(before.id("C"), before.id("D"))).isNotEqualTo(-1);
+    }
+
+    @Test
+    void shouldPublishOneVersion_whenBatchCommitted() {
+        LiveGraph graph = new LiveGraph();
+
+        CompiledGraph committed = graph.batch()
+                .addEdge("A", "B", 1)
+                .addEdge("B", "C", 2)
+                .updateLatency("A", "B", 3)
+                .removeEdge("B", "C")
+                .commit();
+
+        assertThat(committed.version()).isEqualTo(1);
+        assertThat(committed.nodeCount()).isEqualTo(3);
+        assertThat(committed.edgeCount()).isEqualTo(1);
+        assertThat(committed.latency(committed.findEdge(0, 1))).isEqualTo(3);
+    }
+
+    @Test
+    void shouldKeepSnapshotsConsistent_whenWritersAndReadersRunConcurrently() throws Exception {
+        LiveGraph graph = new LiveGraph();
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    graph.addEdge("w" + writer, "n" + i, i);
+                }
+            }));
+        }
+        List<Future<Long>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(pool.submit(() -> {
+                long lastVersion = -1;
+                int lastEdges = -1;
+                do {
+                    CompiledGraph snapshot = graph.snapshot();
+                    assertThat(snapshot.version()).isGreaterThanOrEqualTo(lastVersion);
+                    assertThat(snapshot.edgeCount()).isGreaterThanOrEqualTo(lastEdges);
+                    assertThat(snapshot.targets).hasSize(snapshot.edgeCount());
+                    lastVersion = snapshot.version();
+                    lastEdges = snapshot.edgeCount();
+                } while (writing.get());
+                return lastVersion;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        for (Future<Long> reader : readers) {
+            reader.get();
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        CompiledGraph last = graph.snapshot();
+        assertThat(last.edgeCount()).isEqualTo(2_000);
+        assertThat(last.version()).isBetween(1L, 2_000L);
+        for (int w = 0; w < 4; w++) {
+            int from = last.id("w" + w);
+            for (int i = 0; i < 500; i++) {
+                assertThat(last.latency(last.edgeStart(from) + i)).isEqualTo(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryCacheUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt"
+    })
+    void shouldAnswerLikeUncachedTracer_whenRepeatingQueries(String fileName) {
+        InstanaTracer plain = new InstanaTracer();
+        plain.readGraphFromFile("src/test/resources/" + fileName);
+        InstanaTracer cached = new InstanaTracer();
+        cached.readGraphFromFile("src/test/resources/" + fileName);
+        QueryCache cache = cached.enableCache(1000);
+        CompiledGraph graph = plain.graph();
+
+        for (int round = 0; round < 2; round++) {
+            for (int source = 0; source < graph.nodeCount(); source++) {
+                for (int target = 0; target < graph.nodeCount(); target++) {
+                    String from = graph.name(source);
+                    String to = graph.name(target);
+                    assertThat(cached.shortestLatency(from, to)).isEqualTo(plain.shortestLatency(from, to));
+                    assertThat(cached.countTracesMaxHops(from, to, 3)).isEqualTo(plain.countTracesMaxHops(from, to, 3));
+                    assertThat(cached.countTracesExactHops(from, to, 3))
+                            .isEqualTo(plain.countTracesExactHops(from, to, 3));
+                    assertThat(cached.countTracesWithMaxLatency(from, to, 30))
+                            .isEqualTo(plain.countTracesWithMaxLatency(from, to, 30));
+                }
+            }
+        }
+
+        long queries = 4L * graph.nodeCount() * graph.nodeCount();
+        assertThat(cache.getMissCount()).isEqualTo(queries);
+        assertThat(cache.getHitCount()).isEqualTo(queries);
+        assertThat(cache.getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void shouldShareEntry_whenQueriesNormalizeToSameKey() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        QueryCache cache = tracer.enableCache(10);
+
+        tracer.countTracesWithMaxLatency("C", 30);
+        tracer.countTracesWithMaxLatency("C", "C", 30);
+        tracer.countTracesMaxHops("C", "C", 3);
+        tracer.countTracesExactHops("C", "C", 3);
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(3);
+        assertThat(cache.getSize()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldDropResults_whenGraphChanges() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        QueryCache cache = tracer.enableCache(10);
+
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("5");
+        tracer.updateLatency("A", "C", 50);
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("7");
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("7");
+
+        assertThat(cache.getInvalidationCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed_whenFull() {
+        QueryCache cache = new QueryCache(2);
+        AtomicInteger computations = new AtomicInteger();
+
+        cache.get(key(1), computations::incrementAndGet);
+        cache.get(key(2), computations::incrementAndGet);
+        cache.get(key(1), computations::incrementAndGet);
+        cache.get(key(3), computations::incrementAndGet);
+        cache.get(key(1), computations::incrementAndGet);
+        cache.get(key(2), computations::incrementAndGet);
+
+        assertThat(computations.get()).isEqualTo(4);
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+        assertThat(cache.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldComputeOnce_whenIdenticalMissesArriveTogether() throws Exception {
+        QueryCache cache = new QueryCache(10);
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get(key(1), () -> {
+                started.countDown();
+                await(release);
+                return computations.incrementAndGet();
+            })));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 7; i++) {
+                results.add(pool.submit(() -> cache.get(key(1), computations::incrementAndGet)));
+            }
+            while (cache.getCoalescedCount() < 7) {
+                Thread.yield();
+            }
+            release.countDown();
+
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(1);
+            }
+            assertThat(computations.get()).isEqualTo(1);
+            assertThat(cache.getMissCount()).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldStopWaiting_whenWaiterDeadlinePasses() throws Exception {
+        QueryCache cache = new QueryCache(10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> owner = pool.submit(() -> cache.get(key(1), () -> {
+                started.countDown();
+                await(release);
+                return 1;
+            }));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> cache.get(key(1), QueryContext.withTimeout(50, TimeUnit.MILLISECONDS), () -> 2))
+                    .isInstanceOf(QueryBudgetExceededException.class)
+                    .extracting(e -> ((QueryBudgetExceededException) e).reason())
+                    .isEqualTo(QueryBudgetExceededException.Reason.DEADLINE);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+
+            release.countDown();
+            assertThat(owner.get()).isEqualTo(1);
+            assertThat(cache.get(key(1), QueryContext.withTimeout(50, TimeUnit.MILLISECONDS), () -> 2)).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotCacheFailure_whenComputationThrows() {
+        QueryCache cache = new QueryCache(10);
+
+        assertThatThrownBy(() -> cache.get(key(1), () -> {
+            throw new QueryBudgetExceededException(QueryBudgetExceededException.Reason.EXPANSIONS, 0, null);
+        })).isInstanceOf(QueryBudgetExceededException.class);
+
+        assertThat(cache.getSize()).isZero();
+        assertThat(cache.get(key(1), () -> 7)).isEqualTo(7);
+        assertThat(cache.get(key(1), () -> 8)).isEqualTo(7);
+    }
+
+    @Test
+    void shouldBypassCache_whenQueryRunsAgainstOlderVersion() {
+        QueryCache cache = new QueryCache(10);
+
+        cache.get(new QueryCache.Key(QueryMetrics.QueryType.SHORTEST_LATENCY, 2, 0, 1, 0, 0), () -> 1);
+        int stale = cache.get(new QueryCache.Key(QueryMetrics.QueryType.SHORTEST_LATENCY, 1, 0, 1, 0, 0), () -> 2);
+
+        assertThat(stale).isEqualTo(2);
+        assertThat(cache.getSize()).isEqualTo(1);
+    }
+
+    private static QueryCache.Key key(int source) {
+        return new QueryCache.Key(QueryMetrics.QueryType.MAX_HOPS, 1, source, 0, 1, 3);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
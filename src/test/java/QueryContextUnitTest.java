@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class QueryContextUnitTest {
+
+    @Test
+    void shouldStopWithPartialCount_whenExpansionBudgetIsExceeded() {
+        InstanaTracer tracer = cycle(3);
+
+        QueryBudgetExceededException e = catchThrowableOfType(
+                () -> tracer.countTracesMaxHops("n0", "n0", 10_000_000, QueryContext.withBudget(3_000)),
+                QueryBudgetExceededException.class);
+
+        assertThat(e.reason()).isEqualTo(QueryBudgetExceededException.Reason.EXPANSIONS);
+        assertThat(e.expansions()).isGreaterThan(3_000);
+        assertThat(e.partialCount()).isBetween(1L, 1_000L);
+    }
+
+    @Test
+    void shouldStop_whenDeadlinePasses() {
+        InstanaTracer tracer = cycle(3);
+
+        QueryBudgetExceededException e = catchThrowableOfType(
+                () -> tracer.countTracesWithMaxLatency("n0", "n0", 500_000_000,
+                        QueryContext.withTimeout(0, TimeUnit.MILLISECONDS)),
+                QueryBudgetExceededException.class);
+
+        assertThat(e.reason()).isEqualTo(QueryBudgetExceededException.Reason.DEADLINE);
+        assertThat(e.partialCount()).isNotNegative();
+    }
+
+    @Test
+    void shouldChargeScannedNodes_whenSweepingSparseLayers() {
+        InstanaTracer tracer = cycle(100_000);
+
+        QueryBudgetExceededException e = catchThrowableOfType(
+                () -> tracer.countTracesWithMaxLatency("n0", "n0", 1_000_000, QueryContext.withBudget(10_000_000)),
+                QueryBudgetExceededException.class);
+
+        assertThat(e.reason()).isEqualTo(QueryBudgetExceededException.Reason.EXPANSIONS);
+        assertThat(e.expansions()).isLessThan(20_000_000);
+    }
+
+    @Test
+    void shouldStop_whenCancelled() {
+        InstanaTracer tracer = cycle(5_000);
+        QueryContext context = QueryContext.withBudget(Long.MAX_VALUE);
+        context.cancel();
+
+        assertThatThrownBy(() -> tracer.shortestLatency("n0", "n4999", context))
+                .isInstanceOf(QueryBudgetExceededException.class)
+                .extracting("reason").isEqualTo(QueryBudgetExceededException.Reason.CANCELLED);
+        assertThat(context.isCancelled()).isTrue();
+    }
+
+    @Test
+    void shouldAnswerAsUnbounded_whenBudgetSuffices() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        assertThat(tracer.countTracesMaxHops("C", "C", 3, QueryContext.withBudget(1_000_000)))
+                .isEqualTo(tracer.countTracesMaxHops("C", "C", 3));
+        assertThat(tracer.countTracesWithMaxLatency("C", "C", 30, QueryContext.withTimeout(1, TimeUnit.MINUTES)))
+                .isEqualTo(tracer.countTracesWithMaxLatency("C", 30));
+        assertThat(tracer.shortestLatency("A", "C", QueryContext.withBudget(1_000_000)))
+                .isEqualTo(tracer.shortestLatency("A", "C"));
+    }
+
+    @Test
+    void shouldMarkOnlyRunawayGroups_whenRunningBatchWithBudget() throws Exception {
+        InstanaTracer tracer = cycle(3);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            String[] results = BatchQueryRunner.run(tracer.graph(), BatchQueryRunner.readQueries(new StringReader(
+                            "max-hops n0 n0 10000000\nlatency n0 n1 n2\nshortest n1 n0\n")), pool,
+                    () -> QueryContext.withBudget(3_000));
+
+            assertThat(results).containsExactly(BatchQueryRunner.BUDGET_EXCEEDED, "2", "2");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static InstanaTracer cycle(int nodes) {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.addEdge("n" + i, "n" + (i + 1) % nodes, 1);
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+        return tracer;
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ObjectName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryMetricsUnitTest {
+
+    @AfterEach
+    void tearDown() {
+        QueryMetrics.get().setEnabled(false);
+        QueryMetrics.get().setDebugListener(null);
+        QueryMetrics.get().reset();
+    }
+
+    @Test
+    void shouldRecordNothing_whenDisabled() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        tracer.shortestLatency("A", "C");
+        tracer.countTracesMaxHops("C", "C", 3);
+
+        for (QueryMetrics.QueryType type : QueryMetrics.QueryType.values()) {
+            assertThat(QueryMetrics.get().stats(type).getCount()).isZero();
+        }
+    }
+
+    @Test
+    void shouldRecordWorkPerQueryType_whenEnabled() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        List<String> reports = new ArrayList<>();
+        QueryMetrics.get().setEnabled(true);
+        QueryMetrics.get().setDebugListener(reports::add);
+
+        tracer.shortestLatency("A", "C");
+        tracer.shortestLatency("B", "B");
+        tracer.countTracesMaxHops("C", "C", 3);
+        tracer.countTracesExactHops("A", "C", 4);
+        tracer.countTracesWithMaxLatency("C", 30);
+        tracer.countTracesWithLimits("C", 5, 30);
+        tracer.calculateTraceLatency(new String[]{"A", "B", "C"});
+
+        QueryStats shortest = QueryMetrics.get().stats(QueryMetrics.QueryType.SHORTEST_LATENCY);
+        assertThat(shortest.getCount()).isEqualTo(2);
+        assertThat(shortest.getNodesExpanded()).isPositive();
+        assertThat(shortest.getEdgesRelaxed()).isGreaterThanOrEqualTo(shortest.getNodesExpanded());
+        assertThat(shortest.getPeakFrontier()).isPositive();
+        assertThat(shortest.getMaxMicros()).isGreaterThanOrEqualTo(shortest.getP50Micros());
+        assertThat(QueryMetrics.get().stats(QueryMetrics.QueryType.MAX_HOPS).getEdgesRelaxed()).isPositive();
+        assertThat(QueryMetrics.get().stats(QueryMetrics.QueryType.EXACT_HOPS).getCount()).isEqualTo(1);
+        assertThat(QueryMetrics.get().stats(QueryMetrics.QueryType.MAX_LATENCY).getNodesExpanded()).isPositive();
+        assertThat(QueryMetrics.get().stats(QueryMetrics.QueryType.LIMITS).getCount()).isEqualTo(1);
+        assertThat(QueryMetrics.get().stats(QueryMetrics.QueryType.TRACE_LATENCY).getCount()).isEqualTo(1);
+        assertThat(reports).hasSize(7);
+        assertThat(reports.get(0)).startsWith("shortestLatency: ").contains("edges relaxed");
+        assertThat(QueryMetrics.get().getReport()).contains("maxHops: 1 queries");
+    }
+
+    @Test
+    void shouldPublishBeans_whenRegistered() throws Exception {
+        QueryMetrics.get().register();
+        QueryMetrics.get().register();
+
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("InstanaTracer:type=QueryMetrics"), "Enabled")).isEqualTo(false);
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("InstanaTracer:type=QueryStats,query=shortestLatency"), "Count")).isEqualTo(0L);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0",
+            "7",
+            "8",
+            "11",
+            "1000",
+            "123456789",
+            "9223372036854775807"
+    })
+    void shouldPlaceValueWithinItsBucket_whenBucketing(long value) {
+        int bucket = QueryStats.bucket(value);
+
+        assertThat(QueryStats.upperBound(bucket)).isGreaterThanOrEqualTo(value);
+        assertThat(bucket == 0 || QueryStats.upperBound(bucket - 1) < value).isTrue();
+    }
+}
@@ -0,0 +1,206 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryServerUnitTest {
+
+    private QueryServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "/latency?trace=A,B,C       | 200 | 9",
+            "/latency?trace=A,E,D       | 200 | NO SUCH TRACE",
+            "/max-hops?from=C&to=C&max=3 | 200 | 2",
+            "/exact-hops?from=A&to=C&hops=4 | 200 | 3",
+            "/shortest?from=A&to=C      | 200 | 9",
+            "/shortest?from=B&to=B      | 200 | 9",
+            "/max-latency?from=C&to=C&max=30 | 200 | 7",
+            "/max-latency?from=C&max=30 | 200 | 7",
+            "/k-shortest?from=A&to=C&k=2 | 200 | 9 A-B-C;13 A-D-C",
+            "/k-shortest?from=C&to=C&k=5&loopless=true | 200 | 9 C-E-B-C;16 C-D-C;21 C-D-E-B-C",
+            "/k-shortest?from=A&to=unknown&k=2 | 200 | NO SUCH TRACE",
+            "/limits?from=A&max-hops=2&max-latency=12 | 200 | B 2;C 1;D 1;E 2",
+            "/limits?from=C&max-hops=1&max-latency=2 | 200 | NO SUCH TRACE",
+            "/match?pattern=A+.*+D+.*+C | 200 | 13",
+            "/match?pattern=C+.*+C&max-hops=3 | 200 | 2",
+            "/match?pattern=C+%5B%5ED%5D*+C&max-latency=30 | 200 | 3",
+            "/match?pattern=A+.*+A      | 200 | NO SUCH TRACE",
+            "/shortest?from=A           | 400 | Missing parameter: to",
+            "/match?pattern=A+(B        | 400 | Missing ')' at position 4 of pattern: A (B",
+            "/max-hops?from=C&to=C&max=x | 400 | Not a number: max=x",
+            "/unknown                   | 404 | ''"
+    })
+    void shouldAnswerQuery_whenRequestingEndpoint(String path, int status, String body) throws IOException {
+        startServer(() -> null);
+
+        Response response = request("GET", path.trim(), null);
+
+        assertThat(response.status).isEqualTo(status);
+        if (status == 200) {
+            assertThat(response.body).isEqualTo(body.replace(';', '\n') + "\n");
+        } else if (status == 400) {
+            assertThat(response.body).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void shouldAnswerOnWorkers_whenHandlingSingleQueries() throws IOException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        startServer(() -> {
+            threads.add(Thread.currentThread().getName());
+            return null;
+        });
+
+        assertThat(request("GET", "/shortest?from=A&to=C", null).body).isEqualTo("9\n");
+        assertThat(request("GET", "/match?pattern=A+.*+D+.*+C", null).body).isEqualTo("13\n");
+
+        assertThat(threads).hasSize(2).allMatch(name -> name.startsWith("query-worker-"));
+    }
+
+    @Test
+    void shouldAnswerBadRequest_whenTracesLoopThroughZeroLatency() throws IOException {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "A", 0)
+                .build());
+        server = new QueryServer(tracer, new InetSocketAddress("127.0.0.1", 0), 2, () -> null);
+        server.start();
+
+        Response single = request("GET", "/max-latency?from=A&to=B&max=5", null);
+        Response limits = request("GET", "/limits?from=A&max-hops=3&max-latency=5", null);
+        Response match = request("GET", "/match?pattern=A+.*+B&max-latency=5", null);
+
+        assertThat(single.status).isEqualTo(400);
+        assertThat(single.body).contains("Zero-latency cycles");
+        assertThat(limits.status).isEqualTo(200);
+        assertThat(match.status).isEqualTo(400);
+    }
+
+    @Test
+    void shouldAnswerEveryLine_whenPostingBatch() throws IOException {
+        startServer(() -> null);
+
+        Response response = request("POST", "/batch",
+                "latency A B C\nmax-hops C C 3\nexact-hops A C 4\nshortest A C\nmax-latency C C 30\n");
+        Response malformed = request("POST", "/batch", "latency\n");
+        Response get = request("GET", "/batch", null);
+
+        assertThat(response.status).isEqualTo(200);
+        assertThat(response.body).isEqualTo("9\n2\n3\n9\n7\n");
+        assertThat(malformed.status).isEqualTo(400);
+        assertThat(malformed.body).startsWith("Malformed query at line 1");
+        assertThat(get.status).isEqualTo(405);
+    }
+
+    @Test
+    void shouldAnswerOtherQueries_whenBatchCountOverflows() throws IOException {
+        startServer(() -> null);
+
+        Response overflow = request("POST", "/batch", "max-latency C C 100000\nlatency A B C\n");
+
+        assertThat(overflow.status).isEqualTo(200);
+        assertThat(overflow.body).isEqualTo(BatchQueryRunner.COUNT_OVERFLOW + "\n9\n");
+    }
+
+    @Test
+    void shouldAnswerBudgetExceeded_whenQueryRunsOutOfBudget() throws IOException {
+        startServer(() -> QueryContext.withBudget(10));
+
+        Response single = request("GET", "/max-latency?from=C&to=C&max=100000", null);
+        Response cycles = request("GET", "/max-latency?from=C&max=100000", null);
+        Response batch = request("POST", "/batch", "max-latency C C 100000\nlatency A B C\n");
+
+        assertThat(single.status).isEqualTo(503);
+        assertThat(single.body).isEqualTo(BatchQueryRunner.BUDGET_EXCEEDED);
+        assertThat(cycles.status).isEqualTo(503);
+        assertThat(batch.body).isEqualTo(BatchQueryRunner.BUDGET_EXCEEDED + "\n9\n");
+    }
+
+    @Test
+    void shouldAnswerConcurrentRequests_whenManyClientsQuery() throws Exception {
+        startServer(() -> null);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String path = i % 2 == 0 ? "/shortest?from=A&to=C" : "/max-hops?from=C&to=C&max=3";
+                responses.add(clients.submit(() -> request("GET", path, null)));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                Response response = responses.get(i).get();
+                assertThat(response.status).isEqualTo(200);
+                assertThat(response.body).isEqualTo(i % 2 == 0 ? "9\n" : "2\n");
+            }
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    private void startServer(Supplier<QueryContext> contexts) throws IOException {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (String edge : "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7".split(", ")) {
+            builder.addEdge(edge.substring(0, 1), edge.substring(1, 2), Integer.parseInt(edge.substring(2)));
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+        server = new QueryServer(tracer, new InetSocketAddress("127.0.0.1", 0), 4, contexts);
+        server.start();
+    }
+
+    private Response request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            in.close();
+        }
+        response.body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        return response;
+    }
+
+    private static final class Response {
+        int status;
+        String body;
+    }
+}
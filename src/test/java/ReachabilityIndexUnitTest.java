@@ -0,0 +1,174 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReachabilityIndexUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldMatchBruteForce_whenAskingReachability(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+        ReachabilityIndex index = ReachabilityIndex.build(graph);
+        boolean[][] reaches = reachesInOneOrMoreHops(graph);
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                assertThat(index.hasTrace(source, target)).isEqualTo(reaches[source][target]);
+                assertThat(index.hasUnboundedTraces(source, target))
+                        .isEqualTo(unbounded(reaches, source, target));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldCountLikeUnindexedGraph_whenPruningWithIndex(String fileName) {
+        InstanaTracer plain = new InstanaTracer();
+        plain.readGraphFromFile("src/test/resources/" + fileName);
+        InstanaTracer indexed = new InstanaTracer();
+        indexed.readGraphFromFile("src/test/resources/" + fileName);
+        indexed.indexReachability();
+        CompiledGraph graph = plain.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String from = graph.name(source);
+                String to = graph.name(target);
+                assertThat(indexed.countTracesMaxHops(from, to, 4)).isEqualTo(plain.countTracesMaxHops(from, to, 4));
+                assertThat(indexed.countTracesExactHops(from, to, 3))
+                        .isEqualTo(plain.countTracesExactHops(from, to, 3));
+                assertThat(indexed.countTracesWithMaxLatency(from, to, 30))
+                        .isEqualTo(plain.countTracesWithMaxLatency(from, to, 30));
+                assertThat(indexed.shortestLatency(from, to)).isEqualTo(plain.shortestLatency(from, to));
+                assertThat(indexed.tracesMaxHops(from, to, 3).count()).isEqualTo(plain.tracesMaxHops(from, to, 3).count());
+                assertThat(indexed.shortestTraces(from, to, 3).size()).isEqualTo(plain.shortestTraces(from, to, 3).size());
+            }
+        }
+    }
+
+    @Test
+    void shouldMatchBruteForce_whenComponentsExceedBitsetLimit() {
+        Random random = new Random(18);
+        int n = ReachabilityIndex.BITSET_MAX_COMPONENTS + 2000;
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < n; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1 + random.nextInt(40)), 1);
+            if (random.nextInt(8) == 0) {
+                builder.addEdge("N" + i, "N" + (i + 1 + random.nextInt(200)), 1);
+            }
+            if (random.nextInt(500) == 0) {
+                builder.addEdge("N" + i, "N" + Math.max(0, i - random.nextInt(5)), 1);
+            }
+        }
+        CompiledGraph graph = builder.build();
+        ReachabilityIndex index = ReachabilityIndex.build(graph);
+
+        assertThat(index.componentCount()).isGreaterThan(ReachabilityIndex.BITSET_MAX_COMPONENTS);
+        for (int k = 0; k < 20; k++) {
+            int source = graph.id("N" + random.nextInt(n));
+            boolean[] reaches = reachesFrom(graph, source);
+            for (int target = 0; target < graph.nodeCount(); target += 7) {
+                assertThat(index.hasTrace(source, target)).isEqualTo(reaches[target]);
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectImpossibleQueries_whenIndexed() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        tracer.addEdge("X", "A", 2);
+        tracer.addEdge("B", "Y", 3);
+        tracer.addEdge("P", "Q", 1);
+        tracer.indexReachability();
+
+        assertThat(tracer.hasTrace("A", "X")).isFalse();
+        assertThat(tracer.hasTrace("X", "Y")).isTrue();
+        assertThat(tracer.hasTrace("Y", "Y")).isFalse();
+        assertThat(tracer.hasUnboundedTraces("X", "Y")).isTrue();
+        assertThat(tracer.hasTrace("P", "Q")).isTrue();
+        assertThat(tracer.hasUnboundedTraces("P", "Q")).isFalse();
+        assertThat(tracer.hasTrace("P", "A")).isFalse();
+        assertThat(tracer.hasTrace("A", "unknown")).isFalse();
+        assertThat(tracer.shortestLatency("A", "X")).isEqualTo("NO SUCH TRACE");
+        assertThat(tracer.countTracesMaxHops("Y", "Y", 5)).isZero();
+        assertThat(tracer.countTracesExactHops("Y", "Y", 0)).isEqualTo(1);
+        assertThat(tracer.countTracesMaxHops("C", "C", 3)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFollowGraphChanges_whenGraphChangesAfterIndexing() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        tracer.addEdge("X", "A", 2);
+        tracer.indexReachability();
+
+        assertThat(tracer.shortestLatency("A", "X")).isEqualTo("NO SUCH TRACE");
+
+        tracer.addEdge("C", "X", 1);
+
+        assertThat(tracer.shortestLatency("A", "X")).isEqualTo("6");
+        assertThat(tracer.hasTrace("A", "X")).isTrue();
+        assertThat(tracer.reachability.graph()).isSameAs(tracer.graph());
+    }
+
+    private static boolean[][] reachesInOneOrMoreHops(CompiledGraph graph) {
+        boolean[][] reaches = new boolean[graph.nodeCount()][];
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            reaches[source] = reachesFrom(graph, source);
+        }
+        return reaches;
+    }
+
+    private static boolean[] reachesFrom(CompiledGraph graph, int source) {
+        boolean[] seen = new boolean[graph.nodeCount()];
+        int[] queue = new int[graph.nodeCount()];
+        int tail = 0;
+        for (int e = graph.offsets[source]; e < graph.offsets[source + 1]; e++) {
+            if (!seen[graph.targets[e]]) {
+                seen[graph.targets[e]] = true;
+                queue[tail++] = graph.targets[e];
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int u = queue[head];
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                if (!seen[graph.targets[e]]) {
+                    seen[graph.targets[e]] = true;
+                    queue[tail++] = graph.targets[e];
+                }
+            }
+        }
+        return seen;
+    }
+
+    private static boolean unbounded(boolean[][] reaches, int source, int target) {
+        for (int v = 0; v < reaches.length; v++) {
+            boolean onTrace = (v == source || reaches[source][v]) && (v == target || reaches[v][target]);
+            if (onTrace && reaches[v][v]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShortestLatencyEngineUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "5,12,1",
+            "50,200,1",
+            "300,1500,1",
+            "300,1500,0",
+            "5000,20000,1"
+    })
+    void shouldMatchReference_whenSearchingRandomGraph(int nodes, int edges, int minLatency) {
+        CompiledGraph graph = randomGraph(nodes, edges, minLatency, nodes * 31L + edges);
+        ShortestLatencyEngine engine = ShortestLatencyEngine.current();
+        Random random = new Random(7);
+        int[] row = new int[nodes];
+
+        for (int i = 0; i < 40; i++) {
+            int source = random.nextInt(nodes);
+            int[] expected = reference(graph, source);
+            engine.latenciesFrom(graph, source, row);
+            assertThat(row).isEqualTo(expected);
+            for (int j = 0; j < 20; j++) {
+                int target = j == 0 ? source : random.nextInt(nodes);
+                assertThat(engine.unidirectional(graph, source, target)).isEqualTo(expected[target]);
+                assertThat(engine.shortestLatency(graph, source, target)).isEqualTo(expected[target]);
+                if (source != target && minLatency > 0) {
+                    assertThat(engine.bidirectional(graph, source, target)).isEqualTo(expected[target]);
+                }
+            }
+        }
+    }
+
+    private static CompiledGraph randomGraph(int nodes, int edges, int minLatency, long seed) {
+        Random random = new Random(seed);
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.names().intern("n" + i);
+        }
+        for (int i = 0; i < edges; i++) {
+            builder.addEdge(random.nextInt(nodes), random.nextInt(nodes), minLatency + random.nextInt(10));
+        }
+        return builder.build();
+    }
+
+    private static int[] reference(CompiledGraph graph, int source) {
+        int n = graph.nodeCount();
+        long[] dist = new long[n];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        dist[source] = 0;
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int u = 0; u < n; u++) {
+                if (dist[u] == Long.MAX_VALUE) {
+                    continue;
+                }
+                for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                    if (dist[u] + graph.latency(e) < dist[graph.target(e)]) {
+                        dist[graph.target(e)] = dist[u] + graph.latency(e);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        int[] result = new int[n];
+        Arrays.fill(result, ShortestLatencyEngine.UNREACHABLE);
+        for (int u = 0; u < n; u++) {
+            if (dist[u] == Long.MAX_VALUE) {
+                continue;
+            }
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                long reached = dist[u] + graph.latency(e);
+                if (reached > 0 && reached < result[graph.target(e)]) {
+                    result[graph.target(e)] = (int) reached;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpanAggregatorUnitTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @CsvSource({
+            "MEAN, 501",
+            "P50,  511",
+            "P99,  1000",
+            "MAX,  1000"
+    })
+    void shouldComputeStatistic_whenSpansRecorded(SpanAggregator.Statistic statistic, int expected) {
+        SpanAggregator spans = new SpanAggregator();
+        for (int duration = 1; duration <= 1000; duration++) {
+            spans.record("A", "B", duration);
+        }
+        spans.record("A", "B", 1000);
+
+        SpanAggregator.EdgeStats stats = spans.stats("A", "B");
+
+        assertThat(stats.latency(statistic)).isEqualTo(expected);
+        assertThat(stats.count()).isEqualTo(1001);
+        assertThat(stats.min()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldBoundPercentileError_whenDurationsSpanManyBuckets() {
+        SpanAggregator spans = new SpanAggregator();
+        for (int duration = 0; duration < 100_000; duration += 7) {
+            spans.record("A", "B", duration);
+        }
+        SpanAggregator.EdgeStats stats = spans.stats("A", "B");
+
+        for (double quantile : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            double exact = quantile * 100_000;
+            assertThat((double) stats.percentile(quantile)).isBetween(exact * 0.99, exact * 1.26);
+        }
+    }
+
+    @Test
+    void shouldCountEverySpan_whenRecordingFromManyThreads() throws Exception {
+        SpanAggregator spans = new SpanAggregator();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        spans.record("S" + i % 4, "S" + (i + 1) % 4, i % 10);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(spans.eventCount()).isEqualTo(800_000);
+        assertThat(spans.edgeCount()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) {
+            SpanAggregator.EdgeStats stats = spans.stats("S" + i, "S" + (i + 1) % 4);
+            assertThat(stats.count()).isEqualTo(200_000);
+            assertThat(stats.max()).isEqualTo(i % 2 == 0 ? 8 : 9);
+        }
+    }
+
+    @Test
+    void shouldAnswerWithObservedLatencies_whenSpansApplied() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        tracer.indexLatencies(true);
+        SpanAggregator spans = new SpanAggregator();
+        spans.record("A", "C", 40);
+        spans.record("A", "C", 60);
+        spans.record("C", "F", 3);
+
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("5");
+
+        tracer.applySpans(spans, SpanAggregator.Statistic.MEAN);
+
+        assertThat(tracer.calculateTraceLatency(new String[]{"A", "C"})).isEqualTo("50");
+        assertThat(tracer.shortestLatency("A", "C")).isEqualTo("7");
+        assertThat(tracer.calculateTraceLatency(new String[]{"A", "B", "C", "F"})).isEqualTo("14");
+    }
+
+    @Test
+    void shouldRecordEveryLine_whenIngestingSpanFile() throws IOException {
+        Path file = directory.resolve("spans.txt");
+        Files.write(file, "A,B,5\nA B 7\n\nB\tC\t2\n".getBytes());
+        SpanAggregator spans = new SpanAggregator();
+
+        spans.ingest(file);
+
+        assertThat(spans.eventCount()).isEqualTo(3);
+        assertThat(spans.stats("A", "B").mean()).isEqualTo(6);
+        assertThat(spans.stats("B", "C").max()).isEqualTo(2);
+        assertThat(spans.stats("C", "A")).isNull();
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "A,B,5",
+            "'  A , B ,\t5  '",
+            "A,,B,5,",
+            "'A  B  5'"
+    })
+    void shouldSplitFields_whenSeparatorsRepeat(String line) {
+        SpanAggregator spans = new SpanAggregator();
+
+        spans.record(line);
+
+        assertThat(spans.stats("A", "B").max()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldRejectSpan_whenMalformed() {
+        SpanAggregator spans = new SpanAggregator();
+
+        assertThatThrownBy(() -> spans.record("A,B")).hasMessage("Malformed span: A,B");
+        assertThatThrownBy(() -> spans.record("A,B,x")).hasMessage("Malformed span: A,B,x");
+        assertThatThrownBy(() -> spans.record(",A,B,5")).hasMessage("Malformed span: ,A,B,5");
+        assertThatThrownBy(() -> spans.record("A,B,5,6")).hasMessage("Malformed span: A,B,5,6");
+        assertThatThrownBy(() -> spans.record("A", "B", -1)).hasMessage("Negative span duration: -1");
+        assertThatThrownBy(() -> SpanAggregator.Statistic.parse("p95")).hasMessage("Unknown statistic: p95");
+        assertThat(SpanAggregator.Statistic.parse("p99")).isEqualTo(SpanAggregator.Statistic.P99);
+    }
+}
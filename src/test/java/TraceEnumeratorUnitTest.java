@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TraceEnumeratorUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt",
+            "testInput11.txt"
+    })
+    void shouldProduceAsManyTracesAsCounted_whenEnumeratingTestInput(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String from = graph.name(source);
+                String to = graph.name(target);
+                assertThat(tracer.tracesMaxHops(from, to, 3)
+                        .peek(trace -> assertTrace(trace, graph, from, to))
+                        .filter(trace -> trace.hops() >= 1 && trace.hops() <= 3).count())
+                        .isEqualTo(tracer.countTracesMaxHops(from, to, 3));
+                assertThat(tracer.tracesExactHops(from, to, 4)
+                        .filter(trace -> trace.hops() == 4).count())
+                        .isEqualTo(tracer.countTracesExactHops(from, to, 4));
+                assertThat(tracer.tracesWithMaxLatency(from, to, 30)
+                        .peek(trace -> assertTrace(trace, graph, from, to))
+                        .filter(trace -> trace.latency() < 30).count())
+                        .isEqualTo(tracer.countTracesWithMaxLatency(from, to, 30));
+            }
+        }
+    }
+
+    @Test
+    void shouldListMatchingTraces_whenEnumeratingSampleGraph() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (String edge : "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7".split(", ")) {
+            builder.addEdge(edge.substring(0, 1), edge.substring(1, 2), Integer.parseInt(edge.substring(2)));
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+
+        List<String> maxHops = tracer.tracesMaxHops("C", "C", 3).map(Trace::toString).collect(Collectors.toList());
+        List<String> exactHops = tracer.tracesExactHops("A", "C", 4).map(Trace::toString)
+                .collect(Collectors.toList());
+
+        assertThat(maxHops).containsExactlyInAnyOrder("C-D-C", "C-E-B-C");
+        assertThat(exactHops).containsExactlyInAnyOrder("A-B-C-D-C", "A-D-C-D-C", "A-D-E-B-C");
+        assertThat(tracer.tracesWithMaxLatency("C", "C", 30).count()).isEqualTo(7);
+    }
+
+    @Test
+    void shouldStopEarly_whenLimitingHugeEnumeration() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 4; i++) {
+            builder.addEdge("A", "A", 1);
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+
+        assertThat(tracer.tracesExactHops("A", "A", 40).limit(5).count()).isEqualTo(5);
+        assertThat(tracer.tracesWithMaxLatency("A", "A", 1_000_000).findFirst()).isPresent();
+    }
+
+    @Test
+    void shouldReject_whenOnlyLatencyBoundsZeroLatencyCycle() {
+        CompiledGraph graph = CompiledGraph.builder()
+                .addEdge("A", "B", 0)
+                .addEdge("B", "A", 0)
+                .addEdge("B", "C", 2)
+                .build();
+
+        assertThatThrownBy(() -> new TraceEnumerator(graph, 0, 2, 1, TraceEnumerator.UNBOUNDED, 3))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> TraceEnumerator.stream(graph, 0, 2, 1, TraceEnumerator.UNBOUNDED, 3).count())
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(TraceEnumerator.stream(graph, 0, 2, 1, 4, 3).count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldProduceNothing_whenTargetIsUnreachableOrUnknown() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+        tracer.addEdge("X", "A", 1);
+
+        assertThat(tracer.tracesMaxHops("A", "X", 10)).isEmpty();
+        assertThat(tracer.tracesWithMaxLatency("A", "unknown", 30)).isEmpty();
+        Iterator<Trace> iterator = new TraceEnumerator(tracer.graph(), 0, tracer.graph().id("X"), 1, 5,
+                TraceEnumerator.UNBOUNDED);
+        assertThat(iterator.hasNext()).isFalse();
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    private static void assertTrace(Trace trace, CompiledGraph graph, String from, String to) {
+        String[] names = trace.nodeNames();
+        assertThat(names[0]).isEqualTo(from);
+        assertThat(names[names.length - 1]).isEqualTo(to);
+        assertThat(trace.hops()).isEqualTo(names.length - 1);
+        for (int i = 0; i < trace.hops(); i++) {
+            assertThat(graph.findEdge(trace.node(i), trace.node(i + 1))).isNotNegative();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TracePatternUnitTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "A .* D .* C,  true,  A-C-D-A-C",
+            "A .* D .* C,  false, A-B-C",
+            "A [^E]* C,    true,  A-B-C",
+            "A [^E]* C,    false, A-B-E-C",
+            "A (B|E)* C,   true,  A-B-E-C",
+            "A (B|E)* C,   false, A-D-C",
+            "A [B E]+ C,   false, A-C",
+            "A B? C,       true,  A-C",
+            "svc.a . C,    true,  svc.a-B-C",
+            "svc.a . C,    false, svc-B-C"
+    })
+    void shouldMatchSequence_whenPatternCompiled(String pattern, boolean expected, String nodes) {
+        assertThat(TracePattern.compile(pattern).matches(nodes.split("-"))).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "A .* D .* C, 15",
+            "A .* E .* C, 7",
+            "A [^E]* C,   5",
+            "A B .* C,    7",
+            "C .* C,      10",
+            "A . . B,     NO SUCH TRACE",
+            "A . . . B,   14"
+    })
+    void shouldFindShortestLatency_whenTracesMatch(String pattern, String expected) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        assertThat(tracer.shortestMatchingLatency(pattern)).isEqualTo(expected);
+        assertThat(tracer.hasMatchingTrace(pattern)).isEqualTo(!expected.equals("NO SUCH TRACE"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt",
+            "testInput2.txt",
+            "testInput5.txt",
+            "testInput8.txt",
+            "testInput10.txt"
+    })
+    void shouldMatchFixedQueries_whenPatternOnlyFixesEndpoints(String fileName) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                String start = graph.name(source);
+                String end = graph.name(target);
+                String pattern = start + " .* " + end;
+                assertThat(tracer.countMatchingTraces(pattern, 5)).isEqualTo(tracer.countTracesMaxHops(start, end, 5));
+                assertThat(tracer.countMatchingTracesWithMaxLatency(pattern, 30))
+                        .isEqualTo(tracer.countTracesWithMaxLatency(start, end, 30));
+                assertThat(tracer.shortestMatchingLatency(pattern)).isEqualTo(tracer.shortestLatency(start, end));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "A .* D .* C",
+            "A [^E]* C",
+            "A (B|E)* C",
+            "(A|B) .* (C|D)",
+            ". . .",
+            "[^A]+ A",
+            "C (D A)* .* C",
+            "(. E)+ .?"
+    })
+    void shouldMatchEnumeration_whenCountingOnTestGraph(String pattern) {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        assertCountsMatchEnumeration(tracer, pattern, 6, 30);
+    }
+
+    @Test
+    void shouldMatchEnumeration_whenGraphIsRandom() {
+        Random random = new Random(24);
+        InstanaTracer tracer = new InstanaTracer();
+        for (int i = 0; i < 12; i++) {
+            for (int d = 0; d < 3; d++) {
+                tracer.addEdge("N" + i, "N" + random.nextInt(12), 1 + random.nextInt(9));
+            }
+        }
+
+        assertCountsMatchEnumeration(tracer, "N0 .* N3 .* N5", 7, 40);
+        assertCountsMatchEnumeration(tracer, ". [^N1 N2]* N4", 6, 30);
+        assertCountsMatchEnumeration(tracer, "(N0|N1) (N2 | . N3)+ .", 7, 35);
+    }
+
+    @Test
+    void shouldFindPositiveLatency_whenMatchFollowsZeroLatencyEdges() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.addEdge("A", "B", 0);
+        tracer.addEdge("B", "C", 2);
+        tracer.addEdge("C", "D", 0);
+
+        assertThat(tracer.shortestMatchingLatency("A B")).isEqualTo("NO SUCH TRACE");
+        assertThat(tracer.shortestMatchingLatency("A .*")).isEqualTo("2");
+        assertThat(tracer.shortestMatchingLatency("B C D")).isEqualTo("2");
+    }
+
+    @Test
+    void shouldCountOncePerTrace_whenAlternativesOverlap() {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/testInput1.txt");
+
+        assertThat(tracer.countMatchingTraces("A (B|.) (C|.)", 2)).isEqualTo(tracer.countMatchingTraces("A . .", 2));
+        assertThat(tracer.countMatchingTraces("A .* | A B .*", 2)).isEqualTo(tracer.countMatchingTraces("A .+", 2));
+    }
+
+    @Test
+    void shouldBuildOnlyReachableProduct_whenNodesTimesStatesIsHuge() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 1_000_000; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1), 1);
+        }
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.liveGraph.replace(builder.build());
+        StringBuilder pattern = new StringBuilder("N0");
+        for (int i = 0; i < 2200; i++) {
+            pattern.append(" .");
+        }
+
+        assertThat(TracePattern.compile(pattern.toString()).stateCount()).isGreaterThan(2200);
+        assertThat(tracer.countMatchingTraces(pattern.toString(), 3000)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectPattern_whenMalformed() {
+        assertThatThrownBy(() -> TracePattern.compile("A (B")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TracePattern.compile("A [B C")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TracePattern.compile("A | * B")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TracePattern.compile("A B)")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertCountsMatchEnumeration(InstanaTracer tracer, String pattern, int maxHops,
+                                                     int maxLatency) {
+        CompiledGraph graph = tracer.graph();
+        TracePattern compiled = TracePattern.compile(pattern);
+        long byHops = 0;
+        long byLatency = 0;
+        long shortest = ShortestLatencyEngine.UNREACHABLE;
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                byHops += TraceEnumerator.stream(graph, source, target, 1, maxHops, TraceEnumerator.UNBOUNDED)
+                        .filter(trace -> compiled.matches(trace.nodeNames())).count();
+                byLatency += TraceEnumerator.stream(graph, source, target, 1, TraceEnumerator.UNBOUNDED, maxLatency)
+                        .filter(trace -> compiled.matches(trace.nodeNames())).count();
+                shortest = Math.min(shortest, TraceEnumerator.stream(graph, source, target, 1,
+                                TraceEnumerator.UNBOUNDED, maxLatency)
+                        .filter(trace -> trace.latency() > 0 && compiled.matches(trace.nodeNames()))
+                        .mapToLong(Trace::latency).min().orElse(ShortestLatencyEngine.UNREACHABLE));
+            }
+        }
+
+        assertThat((long) tracer.countMatchingTraces(pattern, maxHops)).isEqualTo(byHops);
+        assertThat((long) tracer.countMatchingTracesWithMaxLatency(pattern, maxLatency)).isEqualTo(byLatency);
+        if (shortest != ShortestLatencyEngine.UNREACHABLE) {
+            assertThat(tracer.shortestMatchingLatency(pattern)).isEqualTo(Long.toString(shortest));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraceScorerUnitTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @CsvSource({
+            "testInput1.txt, 1024",
+            "testInput2.txt, 64",
+            "testInput5.txt, 7",
+            "testInput8.txt, 1",
+            "testInput11.txt, 1048576"
+    })
+    void shouldMatchTraceLatency_whenScoringTraceFile(String fileName, int blockSize)
+            throws IOException, InterruptedException {
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.readGraphFromFile("src/test/resources/" + fileName);
+        CompiledGraph graph = tracer.graph();
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String[] trace = new String[1 + random.nextInt(6)];
+            for (int j = 0; j < trace.length; j++) {
+                trace[j] = random.nextInt(20) == 0 ? "unknown" : graph.name(random.nextInt(graph.nodeCount()));
+            }
+            lines.add(String.join(i % 2 == 0 ? "," : " ", trace));
+            expected.add(tracer.calculateTraceLatency(trace));
+        }
+        Path file = Files.write(directory.resolve("traces.txt"), lines);
+
+        assertThat(score(graph, file, blockSize)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldTakeFirstParallelEdgeAndSkipBlankLines_whenScoring() throws IOException, InterruptedException {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        builder.addEdge("A", "B", 4);
+        builder.addEdge("A", "B", 1);
+        builder.addEdge("B", "C", 7);
+        builder.addEdge("C", "A", 2);
+        Path file = Files.write(directory.resolve("traces.txt"),
+                "A,B,C\r\n\n  B  C  A  B \nA,C\nC\nA,B,X\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(score(builder.build(), file, 4)).containsExactly("11", "13", "NO SUCH TRACE", "0",
+                "NO SUCH TRACE");
+    }
+
+    @Test
+    void shouldScoreTraceOfIds_whenUsingEdgeIndex() {
+        CompiledGraph.Builder builder = CompiledGraph.builder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.addEdge("N" + i, "N" + (i + 1) % 10_000, i % 13);
+        }
+        CompiledGraph graph = builder.build();
+        TraceScorer scorer = new TraceScorer(graph);
+        int[] trace = {graph.id("N9998"), graph.id("N9999"), graph.id("N0"), graph.id("N1")};
+
+        assertThat(scorer.score(trace, 4)).isEqualTo(9_998 % 13 + 9_999 % 13);
+        assertThat(scorer.score(new int[]{graph.id("N0"), graph.id("N2")}, 2)).isEqualTo(TraceScorer.NO_SUCH_TRACE);
+        assertThat(scorer.score(new int[]{-1, graph.id("N0")}, 2)).isEqualTo(TraceScorer.NO_SUCH_TRACE);
+        assertThat(scorer.score(trace, 1)).isZero();
+    }
+
+    private static List<String> score(CompiledGraph graph, Path file, int blockSize)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long scored = new TraceScorer(graph).score(file, out, pool, blockSize, 3);
+            List<String> results = Arrays.asList(out.toString("UTF-8").split("\n"));
+            assertThat(results).hasSize((int) scored);
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
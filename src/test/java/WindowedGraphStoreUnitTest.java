@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WindowedGraphStoreUnitTest {
+
+    private static final long MINUTE = 60_000;
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 0, A-B-C, 9",
+            "2, 0, A-B-C, 10",
+            "1, 1, A-B-C, 11",
+            "1, 2, A-B-C, NO SUCH TRACE",
+            "3, 0, A-D,   2",
+            "1, 0, A-D,   NO SUCH TRACE"
+    })
+    void shouldAnswerForWindow_whenEpochsRecorded(int epochs, int epochsAgo, String trace, String latency) {
+        WindowedGraphStore store = new WindowedGraphStore(1, TimeUnit.MINUTES, 6);
+        store.record("A", "D", 2, 8 * MINUTE);
+        store.record("A", "B", 6, 9 * MINUTE);
+        store.record("B", "C", 5, 9 * MINUTE + 1);
+        store.record("A", "B", 4, 10 * MINUTE + 59_999);
+        store.record("B", "C", 5, 10 * MINUTE);
+
+        InstanaTracer tracer = new InstanaTracer();
+        tracer.useWindow(store, epochs, epochsAgo);
+
+        assertThat(tracer.calculateTraceLatency(trace.split("-"))).isEqualTo(latency);
+    }
+
+    @Test
+    void shouldExpireOldEpochs_whenRingAdvances() {
+        WindowedGraphStore store = new WindowedGraphStore(1, TimeUnit.MINUTES, 3);
+        store.record("A", "B", 1, 0);
+        store.record("B", "C", 1, 2 * MINUTE);
+
+        assertThat(store.window(3).edgeCount()).isEqualTo(2);
+
+        assertThat(store.record("C", "D", 1, 3 * MINUTE)).isTrue();
+
+        CompiledGraph graph = store.window(3);
+        assertThat(graph.edgeCount()).isEqualTo(2);
+        assertThat(graph.id("A")).isNegative();
+        assertThat(store.record("A", "B", 1, 0)).isFalse();
+        assertThat(store.droppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldMatchRebuiltWindows_whenUpdatedIncrementally() {
+        Random random = new Random(21);
+        WindowedGraphStore store = new WindowedGraphStore(10, TimeUnit.SECONDS, 8);
+        List<long[]> spans = new ArrayList<>();
+        long now = 0;
+        for (int round = 0; round < 60; round++) {
+            for (int i = 0; i < 50; i++) {
+                long timestamp = now - random.nextInt(30_000);
+                int from = random.nextInt(6);
+                int to = random.nextInt(6);
+                int duration = random.nextInt(100);
+                if (store.record("N" + from, "N" + to, duration, timestamp)) {
+                    spans.add(new long[]{from, to, duration, timestamp});
+                }
+            }
+            now += random.nextInt(15_000);
+            long head = Long.MIN_VALUE;
+            for (long[] span : spans) {
+                head = Math.max(head, Math.floorDiv(span[3], 10_000));
+            }
+            for (int epochs = 1; epochs <= 4; epochs++) {
+                for (int epochsAgo = 0; epochsAgo <= 4; epochsAgo++) {
+                    CompiledGraph graph = store.window(epochs, epochsAgo);
+                    Map<String, long[]> expected = new HashMap<>();
+                    for (long[] span : spans) {
+                        long epoch = Math.floorDiv(span[3], 10_000);
+                        if (epoch > head - epochsAgo - epochs && epoch <= head - epochsAgo) {
+                            long[] total = expected.computeIfAbsent(span[0] + "-" + span[1], edge -> new long[2]);
+                            total[0]++;
+                            total[1] += span[2];
+                        }
+                    }
+                    assertThat(graph.edgeCount()).isEqualTo(expected.size());
+                    for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+                        String[] nodes = entry.getKey().split("-");
+                        int edge = graph.findEdge(graph.id("N" + nodes[0]), graph.id("N" + nodes[1]));
+                        long[] total = entry.getValue();
+                        assertThat(graph.latencies[edge]).isEqualTo((int) Math.round((double) total[1] / total[0]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldReuseGraph_whenWindowUnchanged() {
+        WindowedGraphStore store = new WindowedGraphStore(1, TimeUnit.MINUTES, 4);
+        store.record("A", "B", 3, 0);
+        store.record("B", "C", 4, MINUTE);
+
+        CompiledGraph first = store.window(2);
+
+        assertThat(store.window(2)).isSameAs(first);
+        store.record("B", "C", 6, MINUTE);
+        assertThat(store.window(2)).isNotSameAs(first);
+        assertThat(store.window(2, 1)).isSameAs(store.window(2, 1));
+    }
+
+    @Test
+    void shouldRejectWindow_whenBeyondRetention() {
+        WindowedGraphStore store = new WindowedGraphStore(1, TimeUnit.MINUTES, 4);
+
+        assertThat(store.window(4).nodeCount()).isZero();
+        assertThatThrownBy(() -> store.window(3, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> store.window(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new WindowedGraphStore(0, TimeUnit.MINUTES, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}